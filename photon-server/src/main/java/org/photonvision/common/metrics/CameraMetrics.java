@@ -0,0 +1,71 @@
+package org.photonvision.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/** Frame rate and dropped frame counts of a single camera. */
+public class CameraMetrics {
+    // weight of the newest frame interval in the smoothed interval
+    private static final double INTERVAL_SMOOTHING = 0.1;
+
+    public final String cameraName;
+
+    private final AtomicLong processedFrames = new AtomicLong();
+    private volatile long lastFrameNanos;
+    private volatile double smoothedIntervalNanos;
+    private volatile LongSupplier droppedFrameSource = () -> 0;
+
+    CameraMetrics(String cameraName) {
+        this.cameraName = cameraName;
+    }
+
+    /**
+    * Record that a frame finished processing. Only called from the camera's vision thread.
+    *
+    * @param nowNanos The current {@link System#nanoTime()}.
+    */
+    public void onFrameProcessed(long nowNanos) {
+        processedFrames.incrementAndGet();
+
+        long last = lastFrameNanos;
+        lastFrameNanos = nowNanos;
+        if (last == 0) return;
+
+        long interval = nowNanos - last;
+        double smoothed = smoothedIntervalNanos;
+        smoothedIntervalNanos =
+                smoothed == 0 ? interval : smoothed + INTERVAL_SMOOTHING * (interval - smoothed);
+    }
+
+    /**
+    * Set where dropped frames are counted, e.g. by the frame provider or the vision runner.
+    *
+    * @param droppedFrameSource Supplier of the total number of dropped frames.
+    */
+    public void setDroppedFrameSource(LongSupplier droppedFrameSource) {
+        this.droppedFrameSource = droppedFrameSource;
+    }
+
+    /** @return Number of frames processed so far. */
+    public long getProcessedFrameCount() {
+        return processedFrames.get();
+    }
+
+    /** @return Number of frames dropped before processing so far. */
+    public long getDroppedFrameCount() {
+        return droppedFrameSource.getAsLong();
+    }
+
+    /** @return The smoothed processing frame rate, or 0 before two frames have been processed. */
+    public double getFps() {
+        double interval = smoothedIntervalNanos;
+        return interval == 0 ? 0 : 1e9 / interval;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s: %.1f fps, %d processed, %d dropped",
+                cameraName, getFps(), getProcessedFrameCount(), getDroppedFrameCount());
+    }
+}
@@ -0,0 +1,144 @@
+package org.photonvision.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.photonvision.common.util.math.MathUtils;
+
+/**
+* A fixed-size histogram of latencies in nanoseconds. <br>
+* <br>
+* Buckets are spaced logarithmically, with {@link #SUB_BUCKETS} buckets per power of two, so
+* reported percentiles are within about 1/{@link #SUB_BUCKETS} of the true value. Recording never
+* allocates or locks, and {@link #snapshot()} can be taken from any thread while the vision thread
+* keeps recording.
+*/
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // enough powers of two to cover a bit over a minute in nanoseconds
+    private static final int MAX_POWER = 36;
+    private static final int BUCKET_COUNT = (MAX_POWER + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+    * Record a single latency.
+    *
+    * @param nanos The latency in nanoseconds.
+    */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        if (nanos > maxNanos.get()) {
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /** Forget every recorded latency. Latencies recorded concurrently may be partially kept. */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+    * Take a consistent-enough copy of this histogram. Latencies recorded while the copy is being
+    * taken may or may not be included.
+    *
+    * @return The snapshot.
+    */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+
+        long max = maxNanos.get();
+        long recorded = totalCount.get();
+        long mean = recorded == 0 ? 0 : totalNanos.get() / recorded;
+        return new Snapshot(
+                count,
+                mean,
+                percentile(copy, count, 0.50, max),
+                percentile(copy, count, 0.95, max),
+                percentile(copy, count, 0.99, max),
+                max);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+
+        int power = 63 - Long.numberOfLeadingZeros(nanos);
+        if (power > MAX_POWER) return BUCKET_COUNT - 1;
+
+        // the bits just below the leading one pick the sub-bucket
+        int subBucket = (int) (nanos >>> (power - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (power - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        int power = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (power - SUB_BUCKET_BITS);
+        return (1L << power) + (subBucket + 1) * width - 1;
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long max) {
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /** An immutable copy of a {@link LatencyHistogram}. All times are in nanoseconds. */
+    public static class Snapshot {
+        public final long count;
+        public final long meanNanos;
+        public final long p50Nanos;
+        public final long p95Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+
+        Snapshot(
+                long count, long meanNanos, long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos) {
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p95Nanos = p95Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "n=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                    count,
+                    MathUtils.nanosToMillis(meanNanos),
+                    MathUtils.nanosToMillis(p50Nanos),
+                    MathUtils.nanosToMillis(p95Nanos),
+                    MathUtils.nanosToMillis(p99Nanos),
+                    MathUtils.nanosToMillis(maxNanos));
+        }
+    }
+}
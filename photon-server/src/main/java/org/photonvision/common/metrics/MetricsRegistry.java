@@ -0,0 +1,85 @@
+package org.photonvision.common.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+* Holds the latency histograms and camera metrics of every vision process. <br>
+* <br>
+* Latencies are named "camera/pipeline" for whole pipeline runs and "camera/pipeline/pipe" for
+* single pipes. Histograms are created on first use and live for the lifetime of the registry, so
+* the vision thread can hold on to them and record without looking them up every frame.
+*/
+public class MetricsRegistry {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CameraMetrics> cameras = new ConcurrentHashMap<>();
+
+    /**
+    * Builds a metric name out of its scopes.
+    *
+    * @param scopes The scopes, outermost first, e.g. camera, pipeline and pipe.
+    * @return The scopes joined by "/".
+    */
+    public static String name(String... scopes) {
+        return String.join("/", scopes);
+    }
+
+    /**
+    * Get or create the latency histogram with the given name.
+    *
+    * @param name The name of the histogram, see {@link #name(String...)}.
+    * @return The histogram.
+    */
+    public LatencyHistogram getHistogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+    * Get or create the metrics of a camera.
+    *
+    * @param cameraName The name of the camera.
+    * @return The camera's metrics.
+    */
+    public CameraMetrics getCameraMetrics(String cameraName) {
+        return cameras.computeIfAbsent(cameraName, CameraMetrics::new);
+    }
+
+    /**
+    * Snapshot every latency histogram whose name starts with a prefix. Never blocks recording.
+    *
+    * @param prefix The prefix, e.g. a camera name. Empty to include everything.
+    * @return A map of histogram name to snapshot, sorted by name.
+    */
+    public Map<String, LatencyHistogram.Snapshot> snapshot(String prefix) {
+        var snapshots = new TreeMap<String, LatencyHistogram.Snapshot>();
+        histograms.forEach(
+                (name, histogram) -> {
+                    if (name.startsWith(prefix)) {
+                        snapshots.put(name, histogram.snapshot());
+                    }
+                });
+        return snapshots;
+    }
+
+    /** @return A snapshot of every latency histogram, sorted by name. */
+    public Map<String, LatencyHistogram.Snapshot> snapshot() {
+        return snapshot("");
+    }
+
+    /** @return The metrics of every camera, sorted by name. */
+    public Map<String, CameraMetrics> getAllCameraMetrics() {
+        return new TreeMap<>(cameras);
+    }
+
+    /** Clears every histogram. Camera metrics are kept. */
+    public void resetHistograms() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+}
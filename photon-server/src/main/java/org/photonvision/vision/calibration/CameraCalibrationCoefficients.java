@@ -18,6 +18,9 @@ public class CameraCalibrationCoefficients implements Releasable {
     @JsonProperty("cameraExtrinsics")
     public final JsonMat cameraExtrinsics;
 
+    // built for the last resolution asked for, which rarely changes
+    @JsonIgnore private PointUndistorter m_pointUndistorter;
+
     @JsonCreator
     public CameraCalibrationCoefficients(
             @JsonProperty("resolution") Size resolution,
@@ -38,6 +41,24 @@ public class CameraCalibrationCoefficients implements Releasable {
         return cameraExtrinsics.getAsMatOfDouble();
     }
 
+    /**
+    * Get a {@link PointUndistorter} for frames of the given size, building it only if the size
+    * changed since the last call.
+    *
+    * @param width The width of the frames.
+    * @param height The height of the frames.
+    * @return The undistorter.
+    */
+    @JsonIgnore
+    public synchronized PointUndistorter getPointUndistorter(int width, int height) {
+        if (m_pointUndistorter == null
+                || m_pointUndistorter.width != width
+                || m_pointUndistorter.height != height) {
+            m_pointUndistorter = new PointUndistorter(this, width, height);
+        }
+        return m_pointUndistorter;
+    }
+
     @Override
     public void release() {
         cameraIntrinsics.release();
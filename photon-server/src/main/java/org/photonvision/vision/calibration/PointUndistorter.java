@@ -0,0 +1,213 @@
+package org.photonvision.vision.calibration;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.vision.pipe.ImageTransform;
+
+/**
+* Removes lens distortion from single points, rather than whole frames. Where every point on a
+* coarse grid ends up once undistorted is worked out once, for one resolution, and points in
+* between are interpolated, so undistorting a point is a few multiplies with no calls into OpenCV.
+* Undistorted points are in pixels of an ideal camera with the same intrinsics. <br>
+* <br>
+* The distortion is calibrated in the camera's native orientation, so points from a rotated or
+* flipped image are mapped back into it to be undistorted, and then out again.
+*/
+public class PointUndistorter {
+    // distortion changes slowly enough over this many pixels that interpolating is accurate to
+    // a small fraction of a pixel
+    private static final int GRID_STEP = 8;
+
+    public final int width;
+    public final int height;
+
+    private final double m_focalLengthX;
+    private final double m_focalLengthY;
+
+    // how points get from the native image to the frames they come from, or null if they come
+    // from the native image
+    private final ImageTransform m_transform;
+    private final int m_nativeWidth;
+    private final int m_nativeHeight;
+
+    private final int m_gridCols;
+    private final int m_gridRows;
+    // undistorted x and y of every grid point, row by row
+    private final float[] m_grid;
+
+    /**
+    * Creates a PointUndistorter.
+    *
+    * @param calibration The calibration, which may be for another resolution of the same camera.
+    * @param width The width of the frames points will come from.
+    * @param height The height of the frames points will come from.
+    */
+    public PointUndistorter(CameraCalibrationCoefficients calibration, int width, int height) {
+        this.width = width;
+        this.height = height;
+        m_transform = null;
+        m_nativeWidth = width;
+        m_nativeHeight = height;
+
+        // the intrinsics scale with the resolution, the distortion coefficients don't
+        double scaleX = width / calibration.resolution.width;
+        double scaleY = height / calibration.resolution.height;
+        double[] intrinsics = calibration.cameraIntrinsics.data.clone();
+        intrinsics[0] *= scaleX;
+        intrinsics[2] *= scaleX;
+        intrinsics[4] *= scaleY;
+        intrinsics[5] *= scaleY;
+        m_focalLengthX = intrinsics[0];
+        m_focalLengthY = intrinsics[4];
+
+        // one grid point past the last pixel in each direction, so every pixel has a cell
+        m_gridCols = (width - 1) / GRID_STEP + 2;
+        m_gridRows = (height - 1) / GRID_STEP + 2;
+        m_grid = new float[m_gridCols * m_gridRows * 2];
+        for (int row = 0; row < m_gridRows; row++) {
+            for (int col = 0; col < m_gridCols; col++) {
+                int index = (row * m_gridCols + col) * 2;
+                m_grid[index] = col * GRID_STEP;
+                m_grid[index + 1] = row * GRID_STEP;
+            }
+        }
+
+        var cameraMatrix = new Mat(3, 3, CvType.CV_64FC1);
+        cameraMatrix.put(0, 0, intrinsics);
+        var distortion = new MatOfDouble(calibration.cameraExtrinsics.data);
+        var distorted = new MatOfPoint2f();
+        distorted.create(m_grid.length / 2, 1, CvType.CV_32FC2);
+        distorted.put(0, 0, m_grid);
+        var undistorted = new MatOfPoint2f();
+        var noRectification = new Mat();
+
+        // projecting back through the same camera matrix keeps the points in pixels
+        Imgproc.undistortPoints(
+                distorted, undistorted, cameraMatrix, distortion, noRectification, cameraMatrix);
+        undistorted.get(0, 0, m_grid);
+
+        cameraMatrix.release();
+        distortion.release();
+        distorted.release();
+        undistorted.release();
+        noRectification.release();
+    }
+
+    private PointUndistorter(PointUndistorter nativeUndistorter, ImageTransform transform) {
+        var transformed = transform.getTransformedProperties();
+        width = transformed.imageWidth;
+        height = transformed.imageHeight;
+        m_transform = transform;
+        m_nativeWidth = nativeUndistorter.m_nativeWidth;
+        m_nativeHeight = nativeUndistorter.m_nativeHeight;
+
+        // the transform is a rotation or reflection, so distances along each axis only swap
+        boolean swap = transform.swapsAxes();
+        m_focalLengthX = swap ? nativeUndistorter.m_focalLengthY : nativeUndistorter.m_focalLengthX;
+        m_focalLengthY = swap ? nativeUndistorter.m_focalLengthX : nativeUndistorter.m_focalLengthY;
+
+        // the grid is never written after it's built, so it's shared
+        m_gridCols = nativeUndistorter.m_gridCols;
+        m_gridRows = nativeUndistorter.m_gridRows;
+        m_grid = nativeUndistorter.m_grid;
+    }
+
+    /**
+    * Get an undistorter for points from the native image transformed by an {@link ImageTransform}.
+    *
+    * @param transform How the frames points come from were transformed, from images the size this
+    *     undistorter was built for. May be null.
+    * @return The undistorter, which is this one if the transform does nothing.
+    */
+    public PointUndistorter transformed(ImageTransform transform) {
+        if (transform == null || transform.isIdentity()) return this;
+        if (m_transform != null) {
+            throw new IllegalStateException("Points are already transformed!");
+        }
+        var nativeProperties = transform.getNativeProperties();
+        if (nativeProperties.imageWidth != width || nativeProperties.imageHeight != height) {
+            throw new IllegalArgumentException(
+                    "Transform is for "
+                            + nativeProperties.imageWidth
+                            + "x"
+                            + nativeProperties.imageHeight
+                            + " images, not "
+                            + width
+                            + "x"
+                            + height);
+        }
+        return new PointUndistorter(this, transform);
+    }
+
+    /**
+    * @param point A point in the distorted frame.
+    * @return Where the point would be without distortion.
+    */
+    public Point undistort(Point point) {
+        var undistorted = new Point();
+        undistort(point.x, point.y, undistorted);
+        return undistorted;
+    }
+
+    /**
+    * Undistort a point into an existing Point, so nothing is allocated.
+    *
+    * @param x The x of the point in the distorted frame.
+    * @param y The y of the point in the distorted frame.
+    * @param out Set to where the point would be without distortion.
+    */
+    public void undistort(double x, double y, Point out) {
+        if (m_transform == null) {
+            undistortNative(x, y, out);
+        } else {
+            // back into the image the distortion was calibrated in, and out again
+            m_transform.invert(x, y, out);
+            undistortNative(out.x, out.y, out);
+            m_transform.apply(out.x, out.y, out);
+        }
+    }
+
+    private void undistortNative(double x, double y, Point out) {
+        double gridX = Math.max(0, Math.min(x, m_nativeWidth - 1)) / GRID_STEP;
+        double gridY = Math.max(0, Math.min(y, m_nativeHeight - 1)) / GRID_STEP;
+        int col = Math.min((int) gridX, m_gridCols - 2);
+        int row = Math.min((int) gridY, m_gridRows - 2);
+        double fracX = gridX - col;
+        double fracY = gridY - row;
+
+        int topLeft = (row * m_gridCols + col) * 2;
+        int bottomLeft = topLeft + m_gridCols * 2;
+        double w00 = (1 - fracX) * (1 - fracY);
+        double w10 = fracX * (1 - fracY);
+        double w01 = (1 - fracX) * fracY;
+        double w11 = fracX * fracY;
+        double undistortedX =
+                w00 * m_grid[topLeft]
+                        + w10 * m_grid[topLeft + 2]
+                        + w01 * m_grid[bottomLeft]
+                        + w11 * m_grid[bottomLeft + 2];
+        double undistortedY =
+                w00 * m_grid[topLeft + 1]
+                        + w10 * m_grid[topLeft + 3]
+                        + w01 * m_grid[bottomLeft + 1]
+                        + w11 * m_grid[bottomLeft + 3];
+
+        // points outside the frame, like an offset point past the edge, move with the nearest edge
+        out.x = undistortedX + (x - Math.max(0, Math.min(x, m_nativeWidth - 1)));
+        out.y = undistortedY + (y - Math.max(0, Math.min(y, m_nativeHeight - 1)));
+    }
+
+    /** @return The horizontal focal length of the frames points come from, in pixels. */
+    public double getFocalLengthX() {
+        return m_focalLengthX;
+    }
+
+    /** @return The vertical focal length of the frames points come from, in pixels. */
+    public double getFocalLengthY() {
+        return m_focalLengthY;
+    }
+}
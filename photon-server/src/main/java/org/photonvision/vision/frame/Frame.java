@@ -23,13 +23,26 @@ public class Frame implements Releasable {
         image.getMat().copyTo(destMat);
     }
 
+    /**
+    * Add a holder to this frame's image, e.g. a stream or snapshot that needs the frame after the
+    * call that handed it over has returned. Must be matched by a call to {@link #release()}.
+    *
+    * @return This frame.
+    */
+    public Frame retain() {
+        image.retain();
+        return this;
+    }
+
     public static Frame copyFrom(Frame frame) {
-        Mat newMat = new Mat();
-        frame.image.getMat().copyTo(newMat);
+        Mat src = frame.image.getMat();
+        CVMat newMat = CVMat.borrow(src.rows(), src.cols(), src.type());
+        src.copyTo(newMat.getMat());
         frame.release();
-        return new Frame(new CVMat(newMat), frame.timestampNanos, frame.frameStaticProperties);
+        return new Frame(newMat, frame.timestampNanos, frame.frameStaticProperties);
     }
 
+    /** Drop a holder of this frame's image, freeing it if it was the last one. */
     @Override
     public void release() {
         image.release();
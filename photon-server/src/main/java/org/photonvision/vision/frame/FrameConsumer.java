@@ -2,4 +2,14 @@ package org.photonvision.vision.frame;
 
 import java.util.function.Consumer;
 
-public interface FrameConsumer extends Consumer<Frame> {}
+public interface FrameConsumer extends Consumer<Frame> {
+    /**
+    * Whether this consumer currently does anything with the frames it is given, e.g. whether a
+    * stream has any clients. Pipelines skip drawing their output when no consumer is active.
+    *
+    * @return True if frames should be produced for this consumer.
+    */
+    default boolean isActive() {
+        return true;
+    }
+}
@@ -2,6 +2,15 @@ package org.photonvision.vision.frame;
 
 import java.util.function.Supplier;
 
+/**
+* Supplies frames to a vision runner. {@link #get()} may return null if no new frame is available,
+* in which case the caller should skip the iteration rather than process a frame twice.
+*/
 public interface FrameProvider extends Supplier<Frame> {
     String getName();
+
+    /** @return Number of frames this provider captured but replaced before they were used. */
+    default long getDroppedFrameCount() {
+        return 0;
+    }
 }
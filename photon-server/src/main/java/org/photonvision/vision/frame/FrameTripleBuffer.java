@@ -0,0 +1,122 @@
+package org.photonvision.vision.frame;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.photonvision.vision.opencv.CVMat;
+import org.photonvision.vision.opencv.Releasable;
+
+/**
+* A lock-free triple buffer of pooled {@link CVMat}s with "latest frame wins" semantics. <br>
+* <br>
+* A single writer fills the back buffer and publishes it, and a single reader takes the most
+* recently published buffer. Neither side ever waits on the other to finish copying: frames that
+* are published but never read are dropped, and a reader that finds nothing new within the
+* timeout gets nothing, as the frame it already has may have been modified in place.
+*/
+public class FrameTripleBuffer implements Releasable {
+    // the index of the shared (middle) slot, with this bit set if it holds an unread frame
+    private static final int FRESH_BIT = 0b100;
+    private static final int INDEX_MASK = 0b011;
+
+    private final CVMat[] mats = {new CVMat(), new CVMat(), new CVMat()};
+    private final long[] timestamps = new long[3];
+
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int backIndex = 0; // owned by the writer
+    private int frontIndex = 2; // owned by the reader
+
+    private volatile Thread waitingReader;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+
+    /**
+    * Get the buffer the writer should fill next. Only valid until the next call to {@link
+    * #publish(long)}.
+    *
+    * @return The back buffer.
+    */
+    public CVMat getBackBuffer() {
+        return mats[backIndex];
+    }
+
+    /**
+    * Publish the back buffer as the latest frame and take a new back buffer. Writer side only.
+    *
+    * @param timestampNanos The capture time of the frame in the back buffer.
+    */
+    public void publish(long timestampNanos) {
+        timestamps[backIndex] = timestampNanos;
+        int previous = middle.getAndSet(backIndex | FRESH_BIT);
+        if ((previous & FRESH_BIT) != 0) {
+            droppedCount.incrementAndGet();
+        }
+        backIndex = previous & INDEX_MASK;
+        publishedCount.incrementAndGet();
+
+        var reader = waitingReader;
+        if (reader != null) LockSupport.unpark(reader);
+    }
+
+    /**
+    * Take the most recently published frame. Reader side only. <br>
+    * <br>
+    * The returned image belongs to the reader until the next call to this method. A frame is only
+    * ever returned once.
+    *
+    * @param timeoutMillis How long to wait for a new frame.
+    * @param frameStaticProperties The properties of the returned frame.
+    * @return The latest frame, or null if none was published within the timeout.
+    */
+    public Frame take(long timeoutMillis, FrameStaticProperties frameStaticProperties) {
+        if (!swapIfFresh()) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            waitingReader = Thread.currentThread();
+            try {
+                while (!swapIfFresh()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                        timedOutCount.incrementAndGet();
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            } finally {
+                waitingReader = null;
+            }
+        }
+
+        return new Frame(mats[frontIndex], timestamps[frontIndex], frameStaticProperties);
+    }
+
+    private boolean swapIfFresh() {
+        if ((middle.get() & FRESH_BIT) == 0) return false;
+        frontIndex = middle.getAndSet(frontIndex) & INDEX_MASK;
+        return true;
+    }
+
+    /** @return Number of frames published by the writer. */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /** @return Number of published frames that were replaced before the reader took them. */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /** @return Number of times the reader gave up waiting for a new frame. */
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    @Override
+    public void release() {
+        for (var mat : mats) {
+            mat.release();
+        }
+    }
+}
@@ -6,6 +6,11 @@ import org.photonvision.vision.frame.FrameConsumer;
 public class DummyFrameConsumer implements FrameConsumer {
     @Override
     public void accept(Frame frame) {
-        frame.release(); // lol ez
+        // nothing to do, the frame is released along with its result
+    }
+
+    @Override
+    public boolean isActive() {
+        return false;
     }
 }
@@ -1,30 +1,95 @@
 package org.photonvision.vision.frame.provider;
 
 import edu.wpi.cscore.CvSink;
+import org.photonvision.common.logging.LogGroup;
+import org.photonvision.common.logging.Logger;
 import org.photonvision.vision.frame.Frame;
 import org.photonvision.vision.frame.FrameProvider;
 import org.photonvision.vision.frame.FrameStaticProperties;
-import org.photonvision.vision.opencv.CVMat;
+import org.photonvision.vision.frame.FrameTripleBuffer;
+import org.photonvision.vision.opencv.Releasable;
+
+/**
+* A {@link FrameProvider} that grabs frames from a {@link CvSink} on its own capture thread, so
+* that grabbing the next frame overlaps with processing the current one.
+*/
+public class USBFrameProvider implements FrameProvider, Releasable {
+    private static final Logger logger = new Logger(USBFrameProvider.class, LogGroup.Camera);
+
+    /** How long {@link #get()} waits for a new frame before giving up. */
+    private static final long STALE_FRAME_TIMEOUT_MILLIS = 500;
+
+    /** How long {@link #release()} waits for an in-progress grab to finish. */
+    private static final long CAPTURE_STOP_TIMEOUT_MILLIS = 1000;
 
-public class USBFrameProvider implements FrameProvider {
     private static int count = 0;
-    private CvSink cvSink;
-    private FrameStaticProperties frameStaticProperties;
-    private CVMat mat;
+    private final CvSink cvSink;
+    private final FrameStaticProperties frameStaticProperties;
+    private final FrameTripleBuffer frameBuffer = new FrameTripleBuffer();
+    private final Thread captureThread;
 
     public USBFrameProvider(CvSink sink, FrameStaticProperties frameStaticProperties) {
         cvSink = sink;
         this.frameStaticProperties = frameStaticProperties;
-        mat = new CVMat();
+
+        captureThread = new Thread(this::captureLoop);
+        captureThread.setName("USBFrameProvider Capture - " + sink.getName());
+        captureThread.setDaemon(true);
+        captureThread.start();
     }
 
+    private void captureLoop() {
+        boolean hasErrored = false;
+        while (!Thread.interrupted()) {
+            long time = cvSink.grabFrame(frameBuffer.getBackBuffer().getMat());
+            if (time == 0) {
+                if (!hasErrored) {
+                    logger.error("Error grabbing frame: " + cvSink.getError());
+                    hasErrored = true;
+                }
+                continue;
+            }
+            hasErrored = false;
+            frameBuffer.publish(time);
+        }
+    }
+
+    /**
+    * Get the latest captured frame, waiting for it if it hasn't arrived yet.
+    *
+    * @return The latest frame, or null if no new frame arrived within the timeout.
+    */
     @Override
     public Frame get() {
-        if (mat != null && mat.getMat() != null) {
-            mat.release();
+        return frameBuffer.take(STALE_FRAME_TIMEOUT_MILLIS, frameStaticProperties);
+    }
+
+    /** @return Number of captured frames that were replaced before being processed. */
+    @Override
+    public long getDroppedFrameCount() {
+        return frameBuffer.getDroppedCount();
+    }
+
+    /** @return Number of times {@link #get()} gave up waiting for a new frame. */
+    public long getTimedOutFrameCount() {
+        return frameBuffer.getTimedOutCount();
+    }
+
+    /** Stop the capture thread and free the frame buffers. */
+    @Override
+    public void release() {
+        captureThread.interrupt();
+        try {
+            captureThread.join(CAPTURE_STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // the buffers can't be freed out from under a grab that is somehow still running
+        if (captureThread.isAlive()) {
+            logger.error("Capture thread did not stop, not releasing its buffers");
+            return;
         }
-        long time = cvSink.grabFrame(mat.getMat());
-        return new Frame(mat, time, frameStaticProperties);
+        frameBuffer.release();
     }
 
     @Override
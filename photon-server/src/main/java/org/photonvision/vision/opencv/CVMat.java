@@ -1,18 +1,18 @@
 package org.photonvision.vision.opencv;
 
-import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.opencv.core.Mat;
-import org.photonvision.common.util.ReflectionUtils;
 
 public class CVMat implements Releasable {
-    private static final HashSet<Mat> allMats = new HashSet<>();
-
-    private static boolean shouldPrint;
-
     private final Mat mat;
+    private final boolean pooled;
+    private final MatTracker.Allocation allocation;
+
+    // a CVMat starts out with a single holder, its creator
+    private final AtomicInteger refCount = new AtomicInteger(1);
 
     public CVMat() {
-        this.mat = new Mat();
+        this(new Mat(), false);
     }
 
     public void copyTo(CVMat srcMat) {
@@ -24,31 +24,80 @@ public class CVMat implements Releasable {
     }
 
     public CVMat(Mat mat) {
+        this(mat, false);
+    }
+
+    private CVMat(Mat mat, boolean pooled) {
         this.mat = mat;
-        if (allMats.add(mat) && shouldPrint) {
-            System.out.println(
-                    "(CVMat) Added new Mat (count: "
-                            + allMats.size()
-                            + ") from: "
-                            + ReflectionUtils.getNthCaller(3));
+        this.pooled = pooled;
+        this.allocation = MatTracker.onAllocate(mat);
+    }
+
+    /**
+    * Create a CVMat backed by a Mat borrowed from the {@link MatPool}. Releasing it gives the Mat
+    * back to the pool instead of freeing it.
+    *
+    * @param rows The number of rows.
+    * @param cols The number of columns.
+    * @param type The OpenCV type.
+    * @return The pooled CVMat.
+    */
+    public static CVMat borrow(int rows, int cols, int type) {
+        return new CVMat(MatPool.getInstance().borrow(rows, cols, type), true);
+    }
+
+    /**
+    * Add a holder to this CVMat. Every call must be matched by a call to {@link #release()}; the
+    * underlying Mat is only freed (or given back to the pool) once the last holder releases it.
+    *
+    * @return This CVMat.
+    */
+    public CVMat retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            refCount.getAndDecrement();
+            throw new IllegalStateException("Cannot retain a CVMat that has already been released");
         }
+        return this;
     }
 
+    /**
+    * Drop a holder of this CVMat, freeing the Mat if it was the last one. Releasing it again after
+    * that is a bug, which is reported by the {@link MatTracker} and otherwise ignored.
+    */
     @Override
     public void release() {
-        allMats.remove(mat);
-        mat.release();
+        int remaining = refCount.decrementAndGet();
+        if (remaining > 0) return;
+        if (remaining < 0) {
+            // a pooled Mat given back twice would be handed out to two borrowers
+            refCount.incrementAndGet();
+            MatTracker.onOverRelease(allocation);
+            return;
+        }
+
+        MatTracker.onRelease(allocation);
+        if (pooled) {
+            MatPool.getInstance().giveBack(mat);
+        } else {
+            mat.release();
+        }
+    }
+
+    /** @return The number of holders of this CVMat. */
+    public int getRefCount() {
+        return refCount.get();
     }
 
     public Mat getMat() {
         return mat;
     }
 
+    /** @return Number of live CVMats, as counted by the {@link MatTracker}. */
     public static int getMatCount() {
-        return allMats.size();
+        return (int) MatTracker.getLiveCount();
     }
 
     public static void enablePrint(boolean enabled) {
-        shouldPrint = enabled;
+        MatTracker.enablePrint(enabled);
     }
 }
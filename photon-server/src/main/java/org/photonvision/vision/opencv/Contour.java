@@ -1,6 +1,7 @@
 package org.photonvision.vision.opencv;
 
 import java.util.Comparator;
+import java.util.List;
 import org.opencv.core.CvType;
 import org.opencv.core.MatOfInt;
 import org.opencv.core.MatOfPoint;
@@ -12,31 +13,112 @@ import org.opencv.imgproc.Imgproc;
 import org.opencv.imgproc.Moments;
 import org.photonvision.common.util.math.MathUtils;
 
+/**
+* A closed contour. <br>
+* <br>
+* The points are kept in a Java int array of interleaved x and y coordinates. Area, perimeter,
+* bounding rect and moments are all computed from it in a single pass, with the same arithmetic
+* OpenCV uses, so they match {@code contourArea}, {@code arcLength}, {@code boundingRect} and
+* {@code moments} exactly without crossing JNI. Native Mats of the points are only created when an
+* OpenCV call actually needs one.
+*/
 public class Contour implements Releasable {
 
     public static final Comparator<Contour> SortByMomentsX =
             Comparator.comparingDouble(
                     (contour) -> contour.getMoments().get_m10() / contour.getMoments().get_m00());
 
-    public final MatOfPoint mat;
+    // interleaved x, y. Null until read from mat, if the contour was made from one
+    private int[] points;
 
-    private Double area = Double.NaN;
-    private Double perimeter = Double.NaN;
+    private MatOfPoint mat = null;
     private MatOfPoint2f mat2f = null;
+    private MatOfPoint2f convexHull = null;
+
+    private boolean hasGeometry = false;
+    private double area;
+    private double perimeter;
+    private Rect boundingRect;
+    private Moments moments;
+
     private RotatedRect minAreaRect = null;
-    private Rect boundingRect = null;
-    private Moments moments = null;
 
-    private MatOfPoint2f convexHull = null;
+    // fitEllipse fails on fewer than 5 points, which is remembered as a null ellipse
+    private boolean hasFittedEllipse = false;
+    private RotatedRect fittedEllipse = null;
 
+    /**
+    * Create a contour from a native Mat, which it takes ownership of.
+    *
+    * @param mat The points, as {@link CvType#CV_32SC2}.
+    */
     public Contour(MatOfPoint mat) {
         this.mat = mat;
     }
 
+    /**
+    * Create a contour from an array of points.
+    *
+    * @param points The points, as interleaved x and y coordinates. Not copied, so must not be
+    *     modified afterwards.
+    */
+    public Contour(int[] points) {
+        this.points = points;
+    }
+
+    /**
+    * Read the points of a native Mat into a new contour, in a single copy. The Mat is not
+    * released.
+    *
+    * @param mat The points, as {@link CvType#CV_32SC2}.
+    * @return The contour.
+    */
+    public static Contour copyOf(MatOfPoint mat) {
+        var points = new int[(int) mat.total() * 2];
+        if (points.length > 0) mat.get(0, 0, points);
+        return new Contour(points);
+    }
+
+    /** @return The points, as interleaved x and y coordinates. Must not be modified. */
+    public int[] getPoints() {
+        if (points == null) {
+            points = new int[(int) mat.total() * 2];
+            if (points.length > 0) mat.get(0, 0, points);
+        }
+        return points;
+    }
+
+    /** @return The number of points. */
+    public int getPointCount() {
+        return getPoints().length / 2;
+    }
+
+    /** @return The points as a native Mat, created on first use and owned by this contour. */
+    public MatOfPoint getMat() {
+        if (mat == null) {
+            mat = new MatOfPoint();
+            int count = points.length / 2;
+            if (count > 0) {
+                mat.alloc(count);
+                mat.put(0, 0, points);
+            }
+        }
+        return mat;
+    }
+
+    /** @return The points as a native float Mat, created on first use and owned by this contour. */
     public MatOfPoint2f getMat2f() {
         if (mat2f == null) {
-            mat2f = new MatOfPoint2f(mat.toArray());
-            mat.convertTo(mat2f, CvType.CV_32F);
+            var ints = getPoints();
+            var floats = new float[ints.length];
+            for (int i = 0; i < ints.length; i++) {
+                floats[i] = ints[i];
+            }
+            mat2f = new MatOfPoint2f();
+            if (floats.length > 0) {
+                mat2f.alloc(floats.length / 2);
+                mat2f.put(0, 0, floats);
+            }
         }
         return mat2f;
     }
@@ -44,24 +126,20 @@ public class Contour implements Releasable {
     public MatOfPoint2f getConvexHull() {
         if (this.convexHull == null) {
             var ints = new MatOfInt();
-            Imgproc.convexHull(mat, ints);
-            this.convexHull = Contour.convertIndexesToPoints(mat, ints);
+            Imgproc.convexHull(getMat(), ints);
+            this.convexHull = convertIndexesToPoints(getPoints(), ints);
             ints.release();
         }
         return convexHull;
     }
 
     public double getArea() {
-        if (Double.isNaN(area)) {
-            area = Imgproc.contourArea(mat);
-        }
+        computeGeometry();
         return area;
     }
 
     public double getPerimeter() {
-        if (Double.isNaN(perimeter)) {
-            perimeter = Imgproc.arcLength(getMat2f(), true);
-        }
+        computeGeometry();
         return perimeter;
     }
 
@@ -72,26 +150,140 @@ public class Contour implements Releasable {
         return minAreaRect;
     }
 
-    public Rect getBoundingRect() {
-        if (boundingRect == null) {
-            boundingRect = Imgproc.boundingRect(mat);
+    /**
+    * Fit an ellipse to the points, the first time this is called.
+    *
+    * @return The ellipse, or null if one can't be fitted.
+    */
+    public RotatedRect getFittedEllipse() {
+        if (!hasFittedEllipse) {
+            hasFittedEllipse = true;
+            try {
+                fittedEllipse = Imgproc.fitEllipse(getMat2f());
+            } catch (Exception e) {
+                fittedEllipse = null;
+            }
         }
+        return fittedEllipse;
+    }
+
+    public Rect getBoundingRect() {
+        computeGeometry();
         return boundingRect;
     }
 
     public Moments getMoments() {
-        if (moments == null) {
-            moments = Imgproc.moments(mat);
-        }
+        computeGeometry();
         return moments;
     }
 
+    /** @return The centroid, from the moments, or the first point if the contour has no area. */
+    public Point getCentroid() {
+        computeGeometry();
+        if (moments.m00 == 0) {
+            var pts = getPoints();
+            return pts.length == 0 ? new Point() : new Point(pts[0], pts[1]);
+        }
+        return new Point(moments.m10 / moments.m00, moments.m01 / moments.m00);
+    }
+
     public Point getCenterPoint() {
         return getMinAreaRect().center;
     }
 
     public boolean isEmpty() {
-        return mat.empty();
+        return getPoints().length == 0;
+    }
+
+    // a port of the polygon moments in OpenCV's contourMoments, with contourArea, arcLength and
+    // boundingRect folded into the same loop
+    private void computeGeometry() {
+        if (hasGeometry) return;
+        hasGeometry = true;
+
+        var pts = getPoints();
+        int count = pts.length / 2;
+        if (count == 0) {
+            area = 0;
+            perimeter = 0;
+            boundingRect = new Rect();
+            moments = new Moments();
+            return;
+        }
+
+        double a00 = 0, a10 = 0, a01 = 0, a20 = 0, a11 = 0, a02 = 0;
+        double a30 = 0, a21 = 0, a12 = 0, a03 = 0;
+        double length = 0;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+        int prevX = pts[pts.length - 2];
+        int prevY = pts[pts.length - 1];
+        double xi_1 = prevX, yi_1 = prevY;
+        double xi_12 = xi_1 * xi_1, yi_12 = yi_1 * yi_1;
+        for (int i = 0; i < pts.length; i += 2) {
+            int x = pts[i];
+            int y = pts[i + 1];
+
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+
+            // arcLength works in floats. The squared length of an integer step is exact as an int,
+            // and a float square root is the double one rounded
+            int dx = x - prevX;
+            int dy = y - prevY;
+            length += (float) Math.sqrt((float) (dx * dx + dy * dy));
+            prevX = x;
+            prevY = y;
+
+            double xi = x, yi = y;
+            double xi2 = xi * xi, yi2 = yi * yi;
+            double dxy = xi_1 * yi - xi * yi_1;
+            double xii_1 = xi_1 + xi;
+            double yii_1 = yi_1 + yi;
+
+            a00 += dxy;
+            a10 += dxy * xii_1;
+            a01 += dxy * yii_1;
+            a20 += dxy * (xi_1 * xii_1 + xi2);
+            a11 += dxy * (xi_1 * (yii_1 + yi_1) + xi * (yii_1 + yi));
+            a02 += dxy * (yi_1 * yii_1 + yi2);
+            a30 += dxy * xii_1 * (xi_12 + xi2);
+            a03 += dxy * yii_1 * (yi_12 + yi2);
+            a21 += dxy * (xi_12 * (3 * yi_1 + yi) + 2 * xi * xi_1 * yii_1 + xi2 * (yi_1 + 3 * yi));
+            a12 += dxy * (yi_12 * (3 * xi_1 + xi) + 2 * yi * yi_1 * xii_1 + yi2 * (xi_1 + 3 * xi));
+
+            xi_1 = xi;
+            yi_1 = yi;
+            xi_12 = xi2;
+            yi_12 = yi2;
+        }
+
+        area = Math.abs(a00) * 0.5;
+        perimeter = length;
+        boundingRect = new Rect(minX, minY, maxX - minX + 1, maxY - minY + 1);
+
+        if (Math.abs(a00) > Math.ulp(1f)) {
+            // moments are independent of the winding direction. OpenCV multiplies by these
+            // reciprocals rather than dividing, and so does this to give the same bits
+            double sign = a00 > 0 ? 1 : -1;
+            moments =
+                    new Moments(
+                            a00 * (sign / 2),
+                            a10 * (sign / 6),
+                            a01 * (sign / 6),
+                            a20 * (sign / 12),
+                            a11 * (sign / 24),
+                            a02 * (sign / 12),
+                            a30 * (sign / 20),
+                            a21 * (sign / 60),
+                            a12 * (sign / 60),
+                            a03 * (sign / 20));
+        } else {
+            moments = new Moments();
+        }
     }
 
     public boolean isIntersecting(
@@ -101,43 +293,34 @@ public class Contour implements Releasable {
         if (intersectionDirection == ContourIntersectionDirection.None) {
             isIntersecting = true;
         } else {
-            try {
-                MatOfPoint2f intersectMatA = new MatOfPoint2f();
-                MatOfPoint2f intersectMatB = new MatOfPoint2f();
-
-                mat.convertTo(intersectMatA, CvType.CV_32F);
-                secondContour.mat.convertTo(intersectMatB, CvType.CV_32F);
-
-                RotatedRect a = Imgproc.fitEllipse(intersectMatA);
-                RotatedRect b = Imgproc.fitEllipse(intersectMatB);
-                double mA = MathUtils.toSlope(a.angle);
-                double mB = MathUtils.toSlope(b.angle);
-                double x0A = a.center.x;
-                double y0A = a.center.y;
-                double x0B = b.center.x;
-                double y0B = b.center.y;
-                double intersectionX = ((mA * x0A) - y0A - (mB * x0B) + y0B) / (mA - mB);
-                double intersectionY = (mA * (intersectionX - x0A)) + y0A;
-                double massX = (x0A + x0B) / 2;
-                double massY = (y0A + y0B) / 2;
-                switch (intersectionDirection) {
-                    case Up:
-                        if (intersectionY < massY) isIntersecting = true;
-                        break;
-                    case Down:
-                        if (intersectionY > massY) isIntersecting = true;
-                        break;
-                    case Left:
-                        if (intersectionX < massX) isIntersecting = true;
-                        break;
-                    case Right:
-                        if (intersectionX > massX) isIntersecting = true;
-                        break;
-                }
-                intersectMatA.release();
-                intersectMatB.release();
-            } catch (Exception e) {
-                // defaults to false
+            // the fits are cached, so testing a contour against many others only fits it once
+            RotatedRect a = getFittedEllipse();
+            RotatedRect b = secondContour.getFittedEllipse();
+            if (a == null || b == null) return false;
+
+            double mA = MathUtils.toSlope(a.angle);
+            double mB = MathUtils.toSlope(b.angle);
+            double x0A = a.center.x;
+            double y0A = a.center.y;
+            double x0B = b.center.x;
+            double y0B = b.center.y;
+            double intersectionX = ((mA * x0A) - y0A - (mB * x0B) + y0B) / (mA - mB);
+            double intersectionY = (mA * (intersectionX - x0A)) + y0A;
+            double massX = (x0A + x0B) / 2;
+            double massY = (y0A + y0B) / 2;
+            switch (intersectionDirection) {
+                case Up:
+                    if (intersectionY < massY) isIntersecting = true;
+                    break;
+                case Down:
+                    if (intersectionY > massY) isIntersecting = true;
+                    break;
+                case Left:
+                    if (intersectionX < massX) isIntersecting = true;
+                    break;
+                case Right:
+                    if (intersectionX > massX) isIntersecting = true;
+                    break;
             }
         }
 
@@ -162,37 +345,66 @@ public class Contour implements Releasable {
                 || secondContour.isIntersecting(firstContour, intersectionDirection);
     }
 
-    private static Contour combineContours(Contour... contours) {
-        var points = new MatOfPoint();
+    /**
+    * Combine contours into one, made of all of their points.
+    *
+    * @param contours The contours.
+    * @return The combined contour, or null if there are no points.
+    */
+    public static Contour combineContours(List<Contour> contours) {
+        return combineContours(contours.toArray(new Contour[0]));
+    }
 
+    private static Contour combineContours(Contour... contours) {
+        int length = 0;
         for (var contour : contours) {
-            points.push_back(contour.mat);
+            length += contour.getPoints().length;
         }
+        if (length == 0) return null;
 
-        var finalContour = new Contour(points);
-
-        boolean contourEmpty = finalContour.isEmpty();
-        return contourEmpty ? null : finalContour;
+        var points = new int[length];
+        int offset = 0;
+        for (var contour : contours) {
+            var contourPoints = contour.getPoints();
+            System.arraycopy(contourPoints, 0, points, offset, contourPoints.length);
+            offset += contourPoints.length;
+        }
+        return new Contour(points);
     }
 
     @Override
     public void release() {
+        // make sure the points survive, in case the contour is used again
+        getPoints();
         if (mat != null) mat.release();
         if (mat2f != null) mat2f.release();
         if (convexHull != null) convexHull.release();
+        mat = null;
+        mat2f = null;
+        convexHull = null;
     }
 
     public static MatOfPoint2f convertIndexesToPoints(MatOfPoint contour, MatOfInt indexes) {
-        int[] arrIndex = indexes.toArray();
-        Point[] arrContour = contour.toArray();
-        Point[] arrPoints = new Point[arrIndex.length];
+        var ints = new int[(int) contour.total() * 2];
+        if (ints.length > 0) contour.get(0, 0, ints);
+        return convertIndexesToPoints(ints, indexes);
+    }
+
+    private static MatOfPoint2f convertIndexesToPoints(int[] points, MatOfInt indexes) {
+        var arrIndex = new int[(int) indexes.total()];
+        if (arrIndex.length > 0) indexes.get(0, 0, arrIndex);
 
+        var floats = new float[arrIndex.length * 2];
         for (int i = 0; i < arrIndex.length; i++) {
-            arrPoints[i] = arrContour[arrIndex[i]];
+            floats[2 * i] = points[2 * arrIndex[i]];
+            floats[2 * i + 1] = points[2 * arrIndex[i] + 1];
         }
 
         var hull = new MatOfPoint2f();
-        hull.fromArray(arrPoints);
+        if (floats.length > 0) {
+            hull.alloc(arrIndex.length);
+            hull.put(0, 0, floats);
+        }
         return hull;
     }
 }
@@ -2,7 +2,9 @@ package org.photonvision.vision.opencv;
 
 public enum ContourGroupingMode {
     Single(1),
-    Dual(2);
+    Dual(2),
+    Triple(3),
+    Quadruple(4);
 
     public final int count;
 
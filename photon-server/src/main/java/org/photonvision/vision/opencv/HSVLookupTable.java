@@ -0,0 +1,176 @@
+package org.photonvision.vision.opencv;
+
+import java.util.stream.IntStream;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+/**
+* A bit-packed table saying, for every 8-bit BGR color, whether it falls within a set of HSV
+* bounds. <br>
+* <br>
+* Building the table converts all 2^24 colors exactly the way OpenCV's 8-bit {@code COLOR_BGR2HSV}
+* does, so thresholding with it gives the same mask as {@code cvtColor} followed by {@code
+* inRange}, but in a single pass over the image and without an HSV temporary. The table is 2 MiB
+* and takes tens of milliseconds to build, so it should only be rebuilt when the bounds change.
+*/
+public class HSVLookupTable {
+    // fixed point shift used by OpenCV's RGB2HSV_b
+    private static final int HSV_SHIFT = 12;
+    private static final int HSV_ROUND = 1 << (HSV_SHIFT - 1);
+    private static final int HUE_RANGE = 180;
+
+    private static final int[] S_DIV_TABLE = new int[256];
+    private static final int[] H_DIV_TABLE = new int[256];
+
+    static {
+        for (int i = 1; i < 256; i++) {
+            S_DIV_TABLE[i] = (int) Math.rint((255 << HSV_SHIFT) / (1. * i));
+            H_DIV_TABLE[i] = (int) Math.rint((HUE_RANGE << HSV_SHIFT) / (6. * i));
+        }
+    }
+
+    // one bit per color, indexed by (b << 16) | (g << 8) | r
+    private final long[] bits = new long[1 << 18];
+
+    private int hLow = -1, sLow, vLow, hHigh, sHigh, vHigh;
+
+    // per-band pixel buffers, reused between frames
+    private byte[][] bgrBuffers = new byte[0][];
+    private byte[][] maskBuffers = new byte[0][];
+
+    /**
+    * Rebuild the table for new bounds. Does nothing if the bounds are unchanged.
+    *
+    * @param hsvLower The inclusive lower H, S and V bounds.
+    * @param hsvUpper The inclusive upper H, S and V bounds.
+    */
+    public void setBounds(Scalar hsvLower, Scalar hsvUpper) {
+        // inRange on 8-bit images rounds the bounds inwards
+        int hl = (int) Math.ceil(hsvLower.val[0]);
+        int sl = (int) Math.ceil(hsvLower.val[1]);
+        int vl = (int) Math.ceil(hsvLower.val[2]);
+        int hh = (int) Math.floor(hsvUpper.val[0]);
+        int sh = (int) Math.floor(hsvUpper.val[1]);
+        int vh = (int) Math.floor(hsvUpper.val[2]);
+        if (hl == hLow && sl == sLow && vl == vLow && hh == hHigh && sh == sHigh && vh == vHigh) {
+            return;
+        }
+
+        // each blue value owns a disjoint 1024 long slice of the table
+        IntStream.range(0, 256)
+                .parallel()
+                .forEach(
+                        b -> {
+                            int base = b << 10;
+                            for (int g = 0; g < 256; g++) {
+                                for (int r = 0; r < 256; r += 64) {
+                                    long word = 0;
+                                    for (int i = 0; i < 64; i++) {
+                                        if (inBounds(b, g, r + i, hl, sl, vl, hh, sh, vh)) {
+                                            word |= 1L << i;
+                                        }
+                                    }
+                                    bits[base + (g << 2) + (r >> 6)] = word;
+                                }
+                            }
+                        });
+
+        hLow = hl;
+        sLow = sl;
+        vLow = vl;
+        hHigh = hh;
+        sHigh = sh;
+        vHigh = vh;
+    }
+
+    private static boolean inBounds(
+            int b, int g, int r, int hl, int sl, int vl, int hh, int sh, int vh) {
+        // a straight port of OpenCV's RGB2HSV_b, so that results are bit-exact
+        int v = Math.max(b, Math.max(g, r));
+        if (v < vl || v > vh) return false;
+
+        int vmin = Math.min(b, Math.min(g, r));
+        int diff = v - vmin;
+        int vr = v == r ? -1 : 0;
+        int vg = v == g ? -1 : 0;
+
+        int s = (diff * S_DIV_TABLE[v] + HSV_ROUND) >> HSV_SHIFT;
+        if (s < sl || s > sh) return false;
+
+        int h = (vr & (g - b)) + (~vr & ((vg & (b - r + 2 * diff)) + ((~vg) & (r - g + 4 * diff))));
+        h = (h * H_DIV_TABLE[diff] + HSV_ROUND) >> HSV_SHIFT;
+        h += h < 0 ? HUE_RANGE : 0;
+        return h >= hl && h <= hh;
+    }
+
+    /**
+    * Whether a color is within the bounds.
+    *
+    * @param b Blue, 0-255.
+    * @param g Green, 0-255.
+    * @param r Red, 0-255.
+    * @return True if the color's HSV is within the bounds.
+    */
+    public boolean matches(int b, int g, int r) {
+        int index = (b << 16) | (g << 8) | r;
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+    * Threshold a BGR image into a binary mask, splitting the rows into bands processed in parallel.
+    *
+    * @param bgr The {@link CvType#CV_8UC3} input. May be a submat.
+    * @param mask The output, (re)allocated as {@link CvType#CV_8UC1} of the same size if needed.
+    *     May be a submat of the right size, which is then written in place.
+    */
+    public void apply(Mat bgr, Mat mask) {
+        if (bgr.type() != CvType.CV_8UC3) {
+            throw new IllegalArgumentException("Expected an 8-bit BGR image");
+        }
+
+        int rows = bgr.rows();
+        int cols = bgr.cols();
+        mask.create(rows, cols, CvType.CV_8UC1);
+        if (rows == 0 || cols == 0) return;
+
+        int bandCount = Math.min(rows, Runtime.getRuntime().availableProcessors() * 2);
+        int rowsPerBand = (rows + bandCount - 1) / bandCount;
+        ensureBuffers(bandCount, rowsPerBand * cols);
+
+        IntStream.range(0, bandCount)
+                .parallel()
+                .forEach(
+                        band -> {
+                            int firstRow = band * rowsPerBand;
+                            int bandRows = Math.min(rowsPerBand, rows - firstRow);
+                            if (bandRows <= 0) return;
+
+                            int pixels = bandRows * cols;
+                            byte[] bgrBuffer = bgrBuffers[band];
+                            byte[] maskBuffer = maskBuffers[band];
+                            bgr.get(firstRow, 0, bgrBuffer);
+                            for (int i = 0, j = 0; i < pixels; i++, j += 3) {
+                                int index =
+                                        ((bgrBuffer[j] & 0xFF) << 16)
+                                                | ((bgrBuffer[j + 1] & 0xFF) << 8)
+                                                | (bgrBuffer[j + 2] & 0xFF);
+                                // 0 or -1, i.e. 0 or 255 as an unsigned byte
+                                maskBuffer[i] = (byte) -((bits[index >>> 6] >>> index) & 1);
+                            }
+                            // get and put copy row by row when the Mats aren't continuous.
+                            // Bands cover disjoint rows, so these writes never overlap
+                            mask.put(firstRow, 0, maskBuffer);
+                        });
+    }
+
+    private void ensureBuffers(int bandCount, int pixelsPerBand) {
+        if (bgrBuffers.length == bandCount
+                && bandCount > 0
+                && maskBuffers[0].length == pixelsPerBand) {
+            return;
+        }
+        bgrBuffers = new byte[bandCount][pixelsPerBand * 3];
+        maskBuffers = new byte[bandCount][pixelsPerBand];
+    }
+}
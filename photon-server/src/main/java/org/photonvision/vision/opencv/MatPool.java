@@ -0,0 +1,165 @@
+package org.photonvision.vision.opencv;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.opencv.core.Mat;
+
+/**
+* A pool of native {@link Mat}s keyed by rows, cols and type. <br>
+* <br>
+* Per-frame buffers with a known shape should be borrowed from here and given back once they are
+* no longer needed, so that after warm-up no native memory is allocated or freed per frame. At most
+* {@link #getMaxRetainedPerShape()} Mats of each shape are kept; anything beyond that is released.
+*/
+public class MatPool {
+    private static final int DEFAULT_MAX_RETAINED_PER_SHAPE = 8;
+
+    private static final MatPool INSTANCE = new MatPool(DEFAULT_MAX_RETAINED_PER_SHAPE);
+
+    public static MatPool getInstance() {
+        return INSTANCE;
+    }
+
+    // there are only ever a handful of distinct shapes, so a linear scan beats hashing (and boxing)
+    private final List<Bucket> buckets = new ArrayList<>();
+    private final int maxRetainedPerShape;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public MatPool(int maxRetainedPerShape) {
+        this.maxRetainedPerShape = maxRetainedPerShape;
+    }
+
+    /**
+    * Borrow a Mat of the given shape. Its contents are undefined.
+    *
+    * @param rows The number of rows.
+    * @param cols The number of columns.
+    * @param type The OpenCV type, e.g. {@link org.opencv.core.CvType#CV_8UC3}.
+    * @return A pooled Mat if one is available, otherwise a newly allocated one.
+    */
+    public Mat borrow(int rows, int cols, int type) {
+        Mat mat = null;
+        synchronized (buckets) {
+            var bucket = findBucket(rows, cols, type);
+            if (bucket != null) mat = bucket.mats.pollLast();
+        }
+
+        if (mat != null) {
+            hits.incrementAndGet();
+            return mat;
+        }
+        misses.incrementAndGet();
+        return new Mat(rows, cols, type);
+    }
+
+    /**
+    * Borrow a Mat with the same shape as another.
+    *
+    * @param like The Mat whose shape to match.
+    * @return A Mat with the same rows, cols and type as {@code like}.
+    */
+    public Mat borrowLike(Mat like) {
+        return borrow(like.rows(), like.cols(), like.type());
+    }
+
+    /**
+    * Give a Mat back to the pool. The caller must not use it afterwards.
+    *
+    * @param mat The Mat to return.
+    */
+    public void giveBack(Mat mat) {
+        if (mat == null) return;
+        if (mat.empty()) {
+            mat.release();
+            return;
+        }
+
+        int rows = mat.rows();
+        int cols = mat.cols();
+        int type = mat.type();
+        synchronized (buckets) {
+            var bucket = findBucket(rows, cols, type);
+            if (bucket == null) {
+                bucket = new Bucket(rows, cols, type);
+                buckets.add(bucket);
+            }
+            if (bucket.mats.size() < maxRetainedPerShape) {
+                bucket.mats.addLast(mat);
+                return;
+            }
+        }
+
+        evictions.incrementAndGet();
+        mat.release();
+    }
+
+    /** Releases every retained Mat. */
+    public void clear() {
+        synchronized (buckets) {
+            for (var bucket : buckets) {
+                for (var mat : bucket.mats) {
+                    mat.release();
+                }
+                bucket.mats.clear();
+            }
+        }
+    }
+
+    private Bucket findBucket(int rows, int cols, int type) {
+        for (int i = 0; i < buckets.size(); i++) {
+            var bucket = buckets.get(i);
+            if (bucket.rows == rows && bucket.cols == cols && bucket.type == type) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    /** @return Number of borrows satisfied from the pool. */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** @return Number of borrows that had to allocate a new Mat. */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** @return Number of given back Mats released because their shape's bucket was full. */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /** @return Number of Mats currently retained by the pool. */
+    public int getRetainedCount() {
+        int count = 0;
+        synchronized (buckets) {
+            for (var bucket : buckets) {
+                count += bucket.mats.size();
+            }
+        }
+        return count;
+    }
+
+    public int getMaxRetainedPerShape() {
+        return maxRetainedPerShape;
+    }
+
+    private static class Bucket {
+        final int rows;
+        final int cols;
+        final int type;
+        final ArrayDeque<Mat> mats = new ArrayDeque<>();
+
+        Bucket(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.photonvision.vision.opencv;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.opencv.core.Mat;
+import org.photonvision.common.logging.LogGroup;
+import org.photonvision.common.logging.Logger;
+
+/**
+* Tracks the native Mats owned by {@link CVMat}s to help find leaks. <br>
+* <br>
+* The {@link Mode} is read once when a CVMat is created, so switching modes only affects Mats
+* created afterwards. With {@link Mode#OFF} a CVMat carries no tracking state at all.
+*/
+public class MatTracker {
+    private static final Logger logger = new Logger(MatTracker.class, LogGroup.VisionProcess);
+
+    public enum Mode {
+        /** Nothing is tracked. */
+        OFF,
+        /** Only the number of allocated and released Mats is counted. */
+        COUNT,
+        /**
+        * Mats are counted, and every {@link #getSampleInterval()}th one on average also records the
+        * class and line that allocated it.
+        */
+        SAMPLED
+    }
+
+    private static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+    private static volatile Mode mode = Mode.COUNT;
+    private static volatile int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+    private static volatile boolean shouldPrint;
+    private static volatile boolean throwOnOverRelease;
+
+    // LongAdders are striped, so cameras allocating on different threads don't contend
+    private static final LongAdder allocated = new LongAdder();
+    private static final LongAdder released = new LongAdder();
+    private static final LongAdder overReleased = new LongAdder();
+    private static final Set<Sample> liveSamples = ConcurrentHashMap.newKeySet();
+
+    private MatTracker() {}
+
+    /** The tracking state of one CVMat. */
+    static class Allocation {
+        static final Allocation COUNTED = new Allocation();
+    }
+
+    /** A sampled, still live allocation. Compared by identity. */
+    private static class Sample extends Allocation {
+        final Mat mat;
+        final String className;
+        final String site;
+        final int weight;
+
+        Sample(Mat mat, StackWalker.StackFrame frame, int weight) {
+            this.mat = mat;
+            this.className = frame != null ? frame.getClassName() : "unknown";
+            this.site =
+                    frame != null ? frame.getClassName() + ":" + frame.getLineNumber() : "unknown";
+            this.weight = weight;
+        }
+    }
+
+    /**
+    * Called when a CVMat takes ownership of a Mat.
+    *
+    * @param mat The Mat.
+    * @return The tracking state to hand back to {@link #onRelease(Allocation)}, or null if the Mat
+    *     is not tracked.
+    */
+    static Allocation onAllocate(Mat mat) {
+        var currentMode = mode;
+        if (currentMode == Mode.OFF) return null;
+
+        allocated.increment();
+        if (currentMode == Mode.COUNT) return Allocation.COUNTED;
+
+        int interval = sampleInterval;
+        if (interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0) {
+            return Allocation.COUNTED;
+        }
+
+        var sample = new Sample(mat, findAllocatingFrame(), interval);
+        liveSamples.add(sample);
+        if (shouldPrint) {
+            logger.debug("Sampled new Mat (live: " + getLiveCount() + ") from: " + sample.site);
+        }
+        return sample;
+    }
+
+    /**
+    * Called when a CVMat frees (or pools) its Mat.
+    *
+    * @param allocation The state returned by {@link #onAllocate(Mat)}.
+    */
+    static void onRelease(Allocation allocation) {
+        if (allocation == null) return;
+
+        released.increment();
+        if (allocation instanceof Sample) {
+            liveSamples.remove(allocation);
+        }
+    }
+
+    /**
+    * Called when a CVMat is released more times than it had holders. The CVMat ignores the extra
+    * release, so a pooled Mat isn't handed out twice, but some holder used the Mat after its last
+    * release, so it's reported along with where the Mat was allocated, if that was sampled.
+    *
+    * @param allocation The state returned by {@link #onAllocate(Mat)}, or null if not tracked.
+    * @throws IllegalStateException If {@link #setThrowOnOverRelease(boolean)} is on.
+    */
+    static void onOverRelease(Allocation allocation) {
+        overReleased.increment();
+        String site =
+                allocation instanceof Sample
+                        ? ((Sample) allocation).site
+                        : "unknown (only sampled Mats record it)";
+        var error =
+                new IllegalStateException(
+                        "CVMat released more times than it was retained, allocated at " + site);
+        if (throwOnOverRelease) throw error;
+
+        logger.error(error.getMessage());
+        error.printStackTrace();
+    }
+
+    private static StackWalker.StackFrame findAllocatingFrame() {
+        return StackWalker.getInstance()
+                .walk(
+                        frames ->
+                                frames
+                                        .filter(
+                                                f ->
+                                                        !f.getClassName().equals(MatTracker.class.getName())
+                                                                && !f.getClassName().equals(CVMat.class.getName()))
+                                        .findFirst()
+                                        .orElse(null));
+    }
+
+    public static Mode getMode() {
+        return mode;
+    }
+
+    public static void setMode(Mode mode) {
+        MatTracker.mode = mode;
+    }
+
+    public static int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+    * Set how many allocations there are per sampled allocation in {@link Mode#SAMPLED}.
+    *
+    * @param sampleInterval The interval; 1 samples every allocation.
+    */
+    public static void setSampleInterval(int sampleInterval) {
+        MatTracker.sampleInterval = Math.max(1, sampleInterval);
+    }
+
+    /**
+    * Log every sampled allocation as it happens.
+    *
+    * @param enabled Whether to log.
+    */
+    public static void enablePrint(boolean enabled) {
+        shouldPrint = enabled;
+    }
+
+    /**
+    * Throw from the extra release of an over-released CVMat instead of logging it, so tests fail
+    * where it happens.
+    *
+    * @param enabled Whether to throw.
+    */
+    public static void setThrowOnOverRelease(boolean enabled) {
+        throwOnOverRelease = enabled;
+    }
+
+    /** @return Number of times a CVMat was released more times than it was retained. */
+    public static long getOverReleasedCount() {
+        return overReleased.sum();
+    }
+
+    /** @return Number of tracked Mats allocated so far. */
+    public static long getAllocatedCount() {
+        return allocated.sum();
+    }
+
+    /** @return Number of tracked Mats released so far. */
+    public static long getReleasedCount() {
+        return released.sum();
+    }
+
+    /** @return Number of tracked Mats that have not been released yet. */
+    public static long getLiveCount() {
+        return allocated.sum() - released.sum();
+    }
+
+    /**
+    * Estimate the native memory held by live Mats, grouped by the class that allocated them. Only
+    * Mats created in {@link Mode#SAMPLED} are included; each sample is scaled by the sample interval
+    * it was taken at. Sizes are read now, so Mats that were reallocated after creation are
+    * reported at their current size.
+    *
+    * @return A map of class name to estimated live bytes.
+    */
+    public static Map<String, Long> getLiveBytesByClass() {
+        var bytesByClass = new HashMap<String, Long>();
+        for (var sample : liveSamples) {
+            long bytes = sample.mat.total() * sample.mat.elemSize() * sample.weight;
+            bytesByClass.merge(sample.className, bytes, Long::sum);
+        }
+        return bytesByClass;
+    }
+
+    /**
+    * Count the live sampled Mats by allocation site.
+    *
+    * @return A map of "class:line" to the number of live samples allocated there.
+    */
+    public static Map<String, Long> getLiveSamplesBySite() {
+        var samplesBySite = new HashMap<String, Long>();
+        for (var sample : liveSamples) {
+            samplesBySite.merge(sample.site, 1L, Long::sum);
+        }
+        return samplesBySite;
+    }
+
+    /** Forget all counts and samples. */
+    public static void reset() {
+        allocated.reset();
+        released.reset();
+        overReleased.reset();
+        liveSamples.clear();
+    }
+}
@@ -0,0 +1,90 @@
+package org.photonvision.vision.opencv;
+
+import java.util.List;
+import org.opencv.core.Rect;
+
+/** Helpers for the rectangular regions of interest pipes can be restricted to. */
+public final class Regions {
+    private Regions() {}
+
+    /**
+    * Clip a rectangle to the bounds of a frame.
+    *
+    * @param x The left edge, which may be outside the frame.
+    * @param y The top edge, which may be outside the frame.
+    * @param width The width.
+    * @param height The height.
+    * @param frameWidth The width of the frame.
+    * @param frameHeight The height of the frame.
+    * @return The part of the rectangle within the frame, or null if there is none.
+    */
+    public static Rect clip(int x, int y, int width, int height, int frameWidth, int frameHeight) {
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = Math.min(frameWidth, x + width);
+        int bottom = Math.min(frameHeight, y + height);
+        if (right <= left || bottom <= top) return null;
+        return new Rect(left, top, right - left, bottom - top);
+    }
+
+    /**
+    * Merge overlapping regions into their bounding rectangle until no two regions overlap, so that
+    * no pixel is processed twice.
+    *
+    * @param regions The regions, modified in place.
+    */
+    public static void mergeOverlapping(List<Rect> regions) {
+        // there are only ever a handful of regions, so merge pairwise until nothing overlaps
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < regions.size() && !merged; i++) {
+                for (int j = i + 1; j < regions.size(); j++) {
+                    var a = regions.get(i);
+                    var b = regions.get(j);
+                    if (a.x < b.x + b.width
+                            && b.x < a.x + a.width
+                            && a.y < b.y + b.height
+                            && b.y < a.y + a.height) {
+                        int left = Math.min(a.x, b.x);
+                        int top = Math.min(a.y, b.y);
+                        int right = Math.max(a.x + a.width, b.x + b.width);
+                        int bottom = Math.max(a.y + a.height, b.y + b.height);
+                        regions.set(i, new Rect(left, top, right - left, bottom - top));
+                        regions.remove(j);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+    * @param regions The regions.
+    * @return The total area of the regions.
+    */
+    public static long area(List<Rect> regions) {
+        long area = 0;
+        for (var region : regions) {
+            area += region.area();
+        }
+        return area;
+    }
+
+    /**
+    * Split the rows of an image into bands of nearly equal height.
+    *
+    * @param rows The number of rows.
+    * @param bandCount The number of bands.
+    * @return bandCount + 1 row indexes. Band i covers rows [bounds[i], bounds[i + 1]), and may be
+    *     empty if there are fewer rows than bands.
+    */
+    public static int[] splitRows(int rows, int bandCount) {
+        var bounds = new int[bandCount + 1];
+        for (int i = 0; i <= bandCount; i++) {
+            bounds[i] = (int) ((long) rows * i / bandCount);
+        }
+        return bounds;
+    }
+}
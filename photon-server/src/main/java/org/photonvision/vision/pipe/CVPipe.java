@@ -1,6 +1,7 @@
 package org.photonvision.vision.pipe;
 
 import java.util.function.Function;
+import org.photonvision.common.metrics.LatencyHistogram;
 
 /**
 * Defines a pipe. A pipe is a single step in a pipeline. This class is to be extended, never used
@@ -14,11 +15,21 @@ public abstract class CVPipe<I, O, P> implements Function<I, CVPipeResult<O>> {
 
     protected CVPipeResult<O> result = new CVPipeResult<>();
     protected P params;
+    private LatencyHistogram latencyHistogram;
 
     public void setParams(P params) {
         this.params = params;
     }
 
+    /**
+    * Set the histogram every run of this pipe is recorded in.
+    *
+    * @param latencyHistogram The histogram, or null to stop recording.
+    */
+    public void setLatencyHistogram(LatencyHistogram latencyHistogram) {
+        this.latencyHistogram = latencyHistogram;
+    }
+
     /**
     * Runs the process for the pipe.
     *
@@ -36,6 +47,7 @@ public abstract class CVPipe<I, O, P> implements Function<I, CVPipeResult<O>> {
         long pipeStartNanos = System.nanoTime();
         result.result = process(in);
         result.nanosElapsed = System.nanoTime() - pipeStartNanos;
+        if (latencyHistogram != null) latencyHistogram.record(result.nanosElapsed);
         return result;
     }
 }
@@ -0,0 +1,211 @@
+package org.photonvision.vision.pipe;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.photonvision.vision.frame.FrameStaticProperties;
+import org.photonvision.vision.opencv.CVMat;
+
+/**
+* Maps coordinates between a camera's native image and the image as it would look rotated and
+* then flipped, without touching any pixels. Rotating by multiples of 90 degrees and flipping map
+* every pixel onto exactly one other, so integer points stay integers and nothing is lost going
+* back and forth.
+*/
+public class ImageTransform {
+    private final ImageRotationMode m_rotation;
+    private final ImageFlipMode m_flip;
+    private final FrameStaticProperties m_nativeProperties;
+    private final FrameStaticProperties m_transformedProperties;
+
+    // transformed x = m_xx * x + m_xy * y + m_x0, and likewise for y. The linear part is a
+    // rotation or reflection, so its inverse is its transpose.
+    private final int m_xx;
+    private final int m_xy;
+    private final int m_x0;
+    private final int m_yx;
+    private final int m_yy;
+    private final int m_y0;
+
+    /**
+    * Creates an ImageTransform.
+    *
+    * @param rotation How to rotate the native image.
+    * @param flip How to flip the image, after rotating it.
+    * @param nativeProperties The properties of the camera's native image.
+    */
+    public ImageTransform(
+            ImageRotationMode rotation,
+            ImageFlipMode flip,
+            FrameStaticProperties nativeProperties) {
+        m_rotation = rotation;
+        m_flip = flip;
+
+        int width = nativeProperties.imageWidth;
+        int height = nativeProperties.imageHeight;
+        int xx = 1, xy = 0, x0 = 0, yx = 0, yy = 1, y0 = 0;
+        switch (rotation) {
+            case DEG_90: // clockwise
+                xx = 0;
+                xy = -1;
+                x0 = height - 1;
+                yx = 1;
+                yy = 0;
+                break;
+            case DEG_180:
+                xx = -1;
+                x0 = width - 1;
+                yy = -1;
+                y0 = height - 1;
+                break;
+            case DEG_270:
+                xx = 0;
+                xy = 1;
+                yx = -1;
+                yy = 0;
+                y0 = width - 1;
+                break;
+            default:
+                break;
+        }
+
+        int transformedWidth = rotation.isRotated() ? height : width;
+        int transformedHeight = rotation.isRotated() ? width : height;
+        // flip codes are OpenCV's: 1 mirrors x, 0 mirrors y, and -1 both
+        if (flip == ImageFlipMode.VERTICAL || flip == ImageFlipMode.BOTH) {
+            xx = -xx;
+            xy = -xy;
+            x0 = transformedWidth - 1 - x0;
+        }
+        if (flip == ImageFlipMode.HORIZONTAL || flip == ImageFlipMode.BOTH) {
+            yx = -yx;
+            yy = -yy;
+            y0 = transformedHeight - 1 - y0;
+        }
+        m_xx = xx;
+        m_xy = xy;
+        m_x0 = x0;
+        m_yx = yx;
+        m_yy = yy;
+        m_y0 = y0;
+
+        // the diagonal field of view doesn't change, and swapping the sides swaps the focal lengths
+        double fov = nativeProperties.fov;
+        m_nativeProperties = nativeProperties;
+        m_transformedProperties =
+                rotation.isRotated()
+                        ? new FrameStaticProperties(transformedWidth, transformedHeight, fov)
+                        : nativeProperties;
+    }
+
+    /** @return Whether this transform leaves everything where it is. */
+    public boolean isIdentity() {
+        return m_rotation == ImageRotationMode.DEG_0 && m_flip == ImageFlipMode.NONE;
+    }
+
+    /** @return Whether the transformed image's x and y run along the native image's y and x. */
+    public boolean swapsAxes() {
+        return m_rotation.isRotated();
+    }
+
+    /** @return The properties of the camera's native image. */
+    public FrameStaticProperties getNativeProperties() {
+        return m_nativeProperties;
+    }
+
+    /** @return The properties of the image as it would look transformed. */
+    public FrameStaticProperties getTransformedProperties() {
+        return m_transformedProperties;
+    }
+
+    /**
+    * Transform interleaved integer points in place.
+    *
+    * @param points x and y of each point, in the native image.
+    */
+    public void apply(int[] points) {
+        for (int i = 0; i < points.length; i += 2) {
+            int x = points[i];
+            int y = points[i + 1];
+            points[i] = m_xx * x + m_xy * y + m_x0;
+            points[i + 1] = m_yx * x + m_yy * y + m_y0;
+        }
+    }
+
+    /**
+    * Transform a point from the native image.
+    *
+    * @param out Set to where the point is in the transformed image.
+    */
+    public void apply(double x, double y, Point out) {
+        out.x = m_xx * x + m_xy * y + m_x0;
+        out.y = m_yx * x + m_yy * y + m_y0;
+    }
+
+    /**
+    * Transform a point back into the native image.
+    *
+    * @param out Set to where the point is in the native image.
+    */
+    public void invert(double x, double y, Point out) {
+        double dx = x - m_x0;
+        double dy = y - m_y0;
+        out.x = m_xx * dx + m_yx * dy;
+        out.y = m_xy * dx + m_yy * dy;
+    }
+
+    /**
+    * @param rect A rectangle of pixels in the transformed image.
+    * @return The same pixels in the native image.
+    */
+    public Rect invert(Rect rect) {
+        var corner = new Point();
+        invert(rect.x, rect.y, corner);
+        double x1 = corner.x;
+        double y1 = corner.y;
+        invert(rect.x + rect.width - 1, rect.y + rect.height - 1, corner);
+        int left = (int) Math.min(x1, corner.x);
+        int top = (int) Math.min(y1, corner.y);
+        int right = (int) Math.max(x1, corner.x);
+        int bottom = (int) Math.max(y1, corner.y);
+        return new Rect(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    /**
+    * Transform the pixels of an image, for when it will actually be looked at.
+    *
+    * @param src The native image.
+    * @param dst The transformed image. May be src only if the rotation is 0 or 180 degrees.
+    */
+    public void apply(Mat src, Mat dst) {
+        Mat flipSrc = src;
+        if (m_rotation != ImageRotationMode.DEG_0) {
+            Core.rotate(src, dst, m_rotation.value);
+            flipSrc = dst;
+        }
+        if (m_flip != ImageFlipMode.NONE) {
+            Core.flip(flipSrc, dst, m_flip.value);
+        } else if (flipSrc != dst) {
+            src.copyTo(dst);
+        }
+    }
+
+    /**
+    * Transform an image that is about to be streamed into a new pooled {@link CVMat}.
+    *
+    * @param image The native image, which is released.
+    * @return The transformed image.
+    */
+    public CVMat applyAndRelease(CVMat image) {
+        if (isIdentity()) return image;
+        var src = image.getMat();
+        var transformed =
+                m_rotation.isRotated()
+                        ? CVMat.borrow(src.cols(), src.rows(), src.type())
+                        : CVMat.borrow(src.rows(), src.cols(), src.type());
+        apply(src, transformed.getMat());
+        image.release();
+        return transformed;
+    }
+}
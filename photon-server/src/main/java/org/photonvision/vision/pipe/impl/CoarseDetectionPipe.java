@@ -0,0 +1,118 @@
+package org.photonvision.vision.pipe.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.vision.frame.FrameDivisor;
+import org.photonvision.vision.opencv.Regions;
+import org.photonvision.vision.pipe.CVPipe;
+
+/**
+* Finds candidate target regions by thresholding a downscaled copy of the image. The regions are
+* returned in full resolution coordinates, so the full resolution image only needs to be
+* thresholded and searched for contours inside them.
+*/
+public class CoarseDetectionPipe
+        extends CVPipe<Mat, List<Rect>, CoarseDetectionPipe.CoarseDetectionParams> {
+    // candidates covering more than this much of the frame aren't worth restricting to
+    private static final double MAX_COVERAGE = 0.5;
+
+    private final HSVPipe m_hsvPipe = new HSVPipe();
+    private final Mat m_coarseMat = new Mat();
+    private final Size m_coarseSize = new Size();
+    private final List<MatOfPoint> m_contours = new ArrayList<>();
+    private final Mat m_hierarchy = new Mat();
+
+    @Override
+    public void setParams(CoarseDetectionParams params) {
+        super.setParams(params);
+        // the coarse image is small enough that converting it is cheaper than building a second
+        // lookup table on every change, so only the bounds are taken
+        var hsvParams = params.getHsvParams();
+        m_hsvPipe.setParams(
+                new HSVPipe.HSVParams(hsvParams.getHsvLower(), hsvParams.getHsvUpper()));
+    }
+
+    /**
+    * Find candidate regions.
+    *
+    * @param in The full resolution BGR image. Not modified.
+    * @return The candidate regions in full resolution coordinates, or null if the whole image
+    *     should be searched.
+    */
+    @Override
+    protected List<Rect> process(Mat in) {
+        int divisor = params.getDivisor().value;
+        m_coarseSize.width = in.cols() / divisor;
+        m_coarseSize.height = in.rows() / divisor;
+        // nearest neighbour only reads one pixel in divisor^2, and keeps colors unblended
+        Imgproc.resize(in, m_coarseMat, m_coarseSize, 0, 0, Imgproc.INTER_NEAREST);
+
+        m_hsvPipe.setRegionsOfInterest(null);
+        Mat mask = m_hsvPipe.apply(m_coarseMat).result;
+
+        for (var contour : m_contours) {
+            contour.release();
+        }
+        m_contours.clear();
+        Imgproc.findContours(
+                mask, m_contours, m_hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+        // pad by a coarse pixel for the pixels the subsampling skipped, plus the refinement margin
+        int padding = divisor + params.getPadding();
+        var regions = new ArrayList<Rect>(m_contours.size());
+        for (var contour : m_contours) {
+            Rect box = Imgproc.boundingRect(contour);
+            var region =
+                    Regions.clip(
+                            box.x * divisor - padding,
+                            box.y * divisor - padding,
+                            box.width * divisor + 2 * padding,
+                            box.height * divisor + 2 * padding,
+                            in.cols(),
+                            in.rows());
+            if (region != null) regions.add(region);
+        }
+        Regions.mergeOverlapping(regions);
+
+        if (Regions.area(regions) > MAX_COVERAGE * in.cols() * in.rows()) return null;
+        return regions;
+    }
+
+    public static class CoarseDetectionParams {
+        private final FrameDivisor m_divisor;
+        private final HSVPipe.HSVParams m_hsvParams;
+        private final int m_padding;
+
+        /**
+        * Creates CoarseDetectionParams.
+        *
+        * @param divisor How much to downscale the image by before thresholding it.
+        * @param hsvParams The threshold, the same as the one used at full resolution.
+        * @param padding Full resolution pixels to add around each candidate, so edges and corners
+        *     are refined with some context around them.
+        */
+        public CoarseDetectionParams(
+                FrameDivisor divisor, HSVPipe.HSVParams hsvParams, int padding) {
+            m_divisor = divisor;
+            m_hsvParams = hsvParams;
+            m_padding = padding;
+        }
+
+        public FrameDivisor getDivisor() {
+            return m_divisor;
+        }
+
+        public HSVPipe.HSVParams getHsvParams() {
+            return m_hsvParams;
+        }
+
+        public int getPadding() {
+            return m_padding;
+        }
+    }
+}
@@ -4,8 +4,11 @@ import java.util.ArrayList;
 import java.util.List;
 import org.opencv.core.Point;
 import org.photonvision.common.util.numbers.DoubleCouple;
+import org.photonvision.vision.calibration.CameraCalibrationCoefficients;
+import org.photonvision.vision.calibration.PointUndistorter;
 import org.photonvision.vision.frame.FrameStaticProperties;
 import org.photonvision.vision.pipe.CVPipe;
+import org.photonvision.vision.pipe.ImageTransform;
 import org.photonvision.vision.target.*;
 
 /** Represents a pipe that collects available 2d targets. */
@@ -23,6 +26,17 @@ public class Collect2dTargetsPipe
     protected List<TrackedTarget> process(List<PotentialTarget> in) {
         List<TrackedTarget> targets = new ArrayList<>();
 
+        // undistorted points follow the calibrated focal lengths, rather than ones from the FOV
+        var undistorter = params.getPointUndistorter();
+        double horizontalFocalLength =
+                undistorter != null
+                        ? undistorter.getFocalLengthX()
+                        : params.getFrameStaticProperties().horizontalFocalLength;
+        double verticalFocalLength =
+                undistorter != null
+                        ? undistorter.getFocalLengthY()
+                        : params.getFrameStaticProperties().verticalFocalLength;
+
         var calculationParams =
                 new TrackedTarget.TargetCalculationParameters(
                         params.getOrientation() == TargetOrientation.Landscape,
@@ -31,9 +45,10 @@ public class Collect2dTargetsPipe
                         params.getFrameStaticProperties().centerPoint,
                         new DoubleCouple(params.getCalibrationB(), params.getCalibrationM()),
                         params.getOffsetMode(),
-                        params.getFrameStaticProperties().horizontalFocalLength,
-                        params.getFrameStaticProperties().verticalFocalLength,
-                        params.getFrameStaticProperties().imageArea);
+                        horizontalFocalLength,
+                        verticalFocalLength,
+                        params.getFrameStaticProperties().imageArea,
+                        undistorter);
 
         for (PotentialTarget target : in) {
             targets.add(new TrackedTarget(target, calculationParams));
@@ -49,6 +64,7 @@ public class Collect2dTargetsPipe
         private Point m_userOffsetPoint;
         private TargetOffsetPointEdge m_region;
         private TargetOrientation m_orientation;
+        private PointUndistorter m_pointUndistorter;
 
         public Collect2dTargetsParams(
                 FrameStaticProperties captureStaticProperties,
@@ -58,6 +74,75 @@ public class Collect2dTargetsPipe
                 Point calibrationPoint,
                 TargetOffsetPointEdge region,
                 TargetOrientation orientation) {
+            this(
+                    captureStaticProperties,
+                    offsetMode,
+                    calibrationM,
+                    calibrationB,
+                    calibrationPoint,
+                    region,
+                    orientation,
+                    null);
+        }
+
+        /**
+        * Creates Collect2dTargetsParams.
+        *
+        * @param cameraCalibration If not null, lens distortion is removed from the offset points
+        *     before finding pitch and yaw, using the calibrated focal lengths.
+        */
+        public Collect2dTargetsParams(
+                FrameStaticProperties captureStaticProperties,
+                RobotOffsetPointMode offsetMode,
+                double calibrationM,
+                double calibrationB,
+                Point calibrationPoint,
+                TargetOffsetPointEdge region,
+                TargetOrientation orientation,
+                CameraCalibrationCoefficients cameraCalibration) {
+            this(
+                    captureStaticProperties,
+                    offsetMode,
+                    calibrationM,
+                    calibrationB,
+                    calibrationPoint,
+                    region,
+                    orientation,
+                    cameraCalibration,
+                    null);
+        }
+
+        /**
+        * Creates Collect2dTargetsParams.
+        *
+        * @param captureStaticProperties The properties of the frame targets are in, which is the
+        *     transformed one if there is a transform.
+        * @param cameraCalibration If not null, lens distortion is removed from the offset points
+        *     before finding pitch and yaw, using the calibrated focal lengths.
+        * @param imageTransform How target coordinates were transformed from the camera's native
+        *     image, which the calibration is for, or null if they weren't.
+        */
+        public Collect2dTargetsParams(
+                FrameStaticProperties captureStaticProperties,
+                RobotOffsetPointMode offsetMode,
+                double calibrationM,
+                double calibrationB,
+                Point calibrationPoint,
+                TargetOffsetPointEdge region,
+                TargetOrientation orientation,
+                CameraCalibrationCoefficients cameraCalibration,
+                ImageTransform imageTransform) {
+            if (cameraCalibration != null) {
+                var nativeProperties =
+                        imageTransform != null
+                                ? imageTransform.getNativeProperties()
+                                : captureStaticProperties;
+                // only built again when the resolution changes
+                int width = nativeProperties.imageWidth;
+                int height = nativeProperties.imageHeight;
+                var nativeUndistorter = cameraCalibration.getPointUndistorter(width, height);
+                m_pointUndistorter = nativeUndistorter.transformed(imageTransform);
+            }
             m_captureStaticProperties = captureStaticProperties;
             m_offsetMode = offsetMode;
             m_calibrationM = calibrationM;
@@ -94,5 +179,9 @@ public class Collect2dTargetsPipe
         public TargetOrientation getOrientation() {
             return m_orientation;
         }
+
+        public PointUndistorter getPointUndistorter() {
+            return m_pointUndistorter;
+        }
     }
 }
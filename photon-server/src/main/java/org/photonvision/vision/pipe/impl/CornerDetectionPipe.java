@@ -1,15 +1,18 @@
 package org.photonvision.vision.pipe.impl;
 
-import edu.wpi.first.wpilibj.geometry.Translation2d;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
-import org.apache.commons.math3.util.FastMath;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
 import org.opencv.imgproc.Imgproc;
+import org.photonvision.vision.opencv.Regions;
 import org.photonvision.vision.pipe.CVPipe;
+import org.photonvision.vision.pipe.ImageTransform;
 import org.photonvision.vision.target.TrackedTarget;
 
 public class CornerDetectionPipe
@@ -18,21 +21,84 @@ public class CornerDetectionPipe
                 List<TrackedTarget>,
                 CornerDetectionPipe.CornerDetectionPipeParameters> {
 
-    Comparator<Point> leftRightComparator = Comparator.comparingDouble(point -> point.x);
-    Comparator<Point> verticalComparator = Comparator.comparingDouble(point -> point.y);
-    MatOfPoint2f polyOutput = new MatOfPoint2f();
+    // half the side of the window cornerSubPix searches, in pixels
+    private static final int SUBPIXEL_HALF_WINDOW = 3;
+
+    private final MatOfPoint2f m_polyOutput = new MatOfPoint2f();
+
+    // everything below is reused between targets, so finding corners only allocates the corners
+    // handed to the target. Points are interleaved x and y.
+    private float[] m_polyPoints = new float[0];
+    private final double[] m_rectPoints = new double[8];
+    private final int[] m_rectOrder = new int[4];
+    // top left, bottom left, bottom right, top right
+    private final double[] m_corners = new double[8];
+
+    private final MatOfPoint2f m_subPixelCorners = new MatOfPoint2f();
+    private final float[] m_subPixelBuffer = new float[8];
+    private final Size m_subPixelWindow = new Size(SUBPIXEL_HALF_WINDOW, SUBPIXEL_HALF_WINDOW);
+    private final Size m_subPixelZeroZone = new Size(-1, -1);
+    private final TermCriteria m_subPixelCriteria =
+            new TermCriteria(TermCriteria.EPS + TermCriteria.COUNT, 20, 0.01);
+
+    private Mat m_image;
+    private ImageTransform m_imageTransform;
+    private final Point m_imagePoint = new Point();
+    private DebugListener m_debugListener;
+
+    /**
+    * Set the image corners are refined against by {@link DetectionStrategy#SUBPIXEL_REFINED}.
+    *
+    * @param image A single channel image the targets were found in, usually the thresholded mask,
+    *     or null to leave corners unrefined.
+    */
+    public void setImage(Mat image) {
+        setImage(image, null);
+    }
+
+    /**
+    * Set the image corners are refined against by {@link DetectionStrategy#SUBPIXEL_REFINED}, when
+    * targets were moved out of the image's coordinates by a transform.
+    *
+    * @param image A single channel image the targets were found in, or null to leave corners
+    *     unrefined.
+    * @param transform The transform from the image to the targets' coordinates, or null if they're
+    *     the same.
+    */
+    public void setImage(Mat image, ImageTransform transform) {
+        m_image = image;
+        m_imageTransform = transform == null || transform.isIdentity() ? null : transform;
+    }
+
+    /**
+    * Set a listener told how corner detection went for every target, for debugging.
+    *
+    * @param listener The listener, or null for none.
+    */
+    public void setDebugListener(DebugListener listener) {
+        m_debugListener = listener;
+    }
 
     @Override
     protected List<TrackedTarget> process(List<TrackedTarget> targetList) {
+        boolean refine = params.cornerDetectionStrategy == DetectionStrategy.SUBPIXEL_REFINED;
         for (var target : targetList) {
             // detect corners. Might implement more algorithms later but
             // APPROX_POLY_DP_AND_EXTREME_CORNERS should be year agnostic
             switch (params.cornerDetectionStrategy) {
                 case APPROX_POLY_DP_AND_EXTREME_CORNERS:
+                case SUBPIXEL_REFINED:
                     {
-                        var targetCorners =
+                        var outcome =
                                 detectExtremeCornersByApproxPolyDp(target, params.calculateConvexHulls);
-                        target.setCorners(targetCorners);
+                        if (outcome == Outcome.FOUND && refine) {
+                            refineCorners(target);
+                        }
+                        var corners = outcome == Outcome.FOUND ? getCorners() : null;
+                        target.setCorners(corners);
+                        if (m_debugListener != null) {
+                            m_debugListener.onCornersDetected(target, outcome, corners);
+                        }
                         break;
                     }
                 default:
@@ -44,69 +110,83 @@ public class CornerDetectionPipe
         return targetList;
     }
 
-    /**
-    * @param target the target to find the corners of.
-    * @return the corners. left top, left bottom, right bottom, right top
-    */
-    private List<Point> findBoundingBoxCorners(TrackedTarget target) {
-        // extract the corners
-        var points = new Point[4];
-        target.m_mainContour.getMinAreaRect().points(points);
-
-        // find the tl/tr/bl/br corners
-        // first, min by left/right
-        var list_ = Arrays.asList(points);
-        list_.sort(leftRightComparator);
-        // of this, we now have left and right
-        // sort to get top and bottom
-        var left = new ArrayList<>(List.of(list_.get(0), list_.get(1)));
-        left.sort(verticalComparator);
-        var right = new ArrayList<>(List.of(list_.get(2), list_.get(3)));
-        right.sort(verticalComparator);
-
-        // tl tr bl br
-        var tl = left.get(0);
-        var bl = left.get(1);
-        var tr = right.get(0);
-        var br = right.get(1);
-
-        return List.of(tl, bl, br, tr);
+    // the targets keep their corners, so these are the only Points made
+    private List<Point> getCorners() {
+        return List.of(
+                new Point(m_corners[0], m_corners[1]),
+                new Point(m_corners[2], m_corners[3]),
+                new Point(m_corners[4], m_corners[5]),
+                new Point(m_corners[6], m_corners[7]));
     }
 
     /**
-    * @param a First point.
-    * @param b Second point.
-    * @return The straight line distance between them.
+    * Find the corners of the target's min area rectangle, and order them into m_rectOrder: left
+    * top, left bottom, right top, right bottom.
     */
-    private static double distanceBetween(Point a, Point b) {
-        return FastMath.sqrt(FastMath.pow(a.x - b.x, 2) + FastMath.pow(a.y - b.y, 2));
+    private void findBoundingBoxCorners(TrackedTarget target) {
+        // the same corners RotatedRect.points gives, without allocating them
+        RotatedRect rect = target.getMinAreaRect();
+        double angle = rect.angle * Math.PI / 180.0;
+        double b = Math.cos(angle) * 0.5;
+        double a = Math.sin(angle) * 0.5;
+        double cx = rect.center.x;
+        double cy = rect.center.y;
+        m_rectPoints[0] = cx - a * rect.size.height - b * rect.size.width;
+        m_rectPoints[1] = cy + b * rect.size.height - a * rect.size.width;
+        m_rectPoints[2] = cx + a * rect.size.height - b * rect.size.width;
+        m_rectPoints[3] = cy - b * rect.size.height - a * rect.size.width;
+        m_rectPoints[4] = 2 * cx - m_rectPoints[0];
+        m_rectPoints[5] = 2 * cy - m_rectPoints[1];
+        m_rectPoints[6] = 2 * cx - m_rectPoints[2];
+        m_rectPoints[7] = 2 * cy - m_rectPoints[3];
+
+        // a stable sort by x, then the left and right pairs by y
+        for (int i = 0; i < 4; i++) {
+            int point = i;
+            int j = i;
+            while (j > 0 && m_rectPoints[2 * m_rectOrder[j - 1]] > m_rectPoints[2 * point]) {
+                m_rectOrder[j] = m_rectOrder[j - 1];
+                j--;
+            }
+            m_rectOrder[j] = point;
+        }
+        for (int i = 0; i < 4; i += 2) {
+            if (m_rectPoints[2 * m_rectOrder[i + 1] + 1] < m_rectPoints[2 * m_rectOrder[i] + 1]) {
+                int swap = m_rectOrder[i];
+                m_rectOrder[i] = m_rectOrder[i + 1];
+                m_rectOrder[i + 1] = swap;
+            }
+        }
     }
 
     /**
-    * @param a First point.
-    * @param b Second point.
-    * @return The straight line distance between them.
+    * @return The index of the polygon point closest to (x, y), leaving out one point. The first
+    *     such point wins ties.
     */
-    private static double distanceBetween(Translation2d a, Translation2d b) {
-        return FastMath.sqrt(
-                FastMath.pow(a.getX() - b.getX(), 2) + FastMath.pow(a.getY() - b.getY(), 2));
+    private int closestPolyPoint(int count, double x, double y, int excluded) {
+        int closest = -1;
+        double closestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            if (i == excluded) continue;
+            double dx = m_polyPoints[2 * i] - x;
+            double dy = m_polyPoints[2 * i + 1] - y;
+            double distance = dx * dx + dy * dy;
+            if (distance < closestDistance) {
+                closest = i;
+                closestDistance = distance;
+            }
+        }
+        return closest;
     }
 
     /**
-    * Find the 4 most extreme corners,
+    * Find the 4 most extreme corners, into m_corners.
     *
     * @param target the target to track.
     * @param convexHull weather to use the convex hull of the target.
-    * @return the 4 extreme corners of the contour.
+    * @return Whether the corners were found, or why not.
     */
-    private List<Point> detectExtremeCornersByApproxPolyDp(TrackedTarget target, boolean convexHull) {
-        var centroid = target.getMinAreaRect().center;
-        Comparator<Point> distanceProvider =
-                Comparator.comparingDouble(
-                        (Point point) ->
-                                FastMath.sqrt(
-                                        FastMath.pow(centroid.x - point.x, 2) + FastMath.pow(centroid.y - point.y, 2)));
-
+    private Outcome detectExtremeCornersByApproxPolyDp(TrackedTarget target, boolean convexHull) {
         MatOfPoint2f targetContour;
         if (convexHull) {
             targetContour = target.m_mainContour.getConvexHull();
@@ -126,61 +206,139 @@ public class CornerDetectionPipe
         var isOpen = !convexHull && target.hasSubContours();
         var peri = Imgproc.arcLength(targetContour, true);
         Imgproc.approxPolyDP(
-                targetContour, polyOutput, params.accuracyPercentage / 600.0 * peri, !isOpen);
+                targetContour, m_polyOutput, params.accuracyPercentage / 600.0 * peri, !isOpen);
 
         // we must have at least 4 corners for this strategy to work.
         // If we are looking for an exact side count that is handled here too.
-        var pointList = new ArrayList<>(polyOutput.toList());
-        if (pointList.size() < 4 || (params.exactSideCount && params.sideCount != pointList.size()))
-            return null;
-
-        target.setApproximateBoundingPolygon(polyOutput);
+        int count = (int) m_polyOutput.total();
+        if (count < 4) return Outcome.TOO_FEW_SIDES;
+        if (params.exactSideCount && params.sideCount != count) return Outcome.WRONG_SIDE_COUNT;
 
-        // left top, left bottom, right bottom, right top
-        var boundingBoxCorners = findBoundingBoxCorners(target);
+        target.setApproximateBoundingPolygon(m_polyOutput);
 
-        var distanceToTlComparator =
-                Comparator.comparingDouble((Point p) -> distanceBetween(p, boundingBoxCorners.get(0)));
+        if (m_polyPoints.length < count * 2) m_polyPoints = new float[count * 2];
+        m_polyOutput.get(0, 0, m_polyPoints);
 
-        var distanceToTrComparator =
-                Comparator.comparingDouble((Point p) -> distanceBetween(p, boundingBoxCorners.get(3)));
-
-        // top left and top right are the poly corners closest to the bouding box tl and tr
-        pointList.sort(distanceToTlComparator);
-        var tl = pointList.get(0);
-        pointList.remove(tl);
-        pointList.sort(distanceToTrComparator);
-        var tr = pointList.get(0);
-        pointList.remove(tr);
+        // top left and top right are the poly corners closest to the bounding box tl and tr
+        findBoundingBoxCorners(target);
+        int boxTl = 2 * m_rectOrder[0];
+        int boxTr = 2 * m_rectOrder[2];
+        int tl = closestPolyPoint(count, m_rectPoints[boxTl], m_rectPoints[boxTl + 1], -1);
+        int tr = closestPolyPoint(count, m_rectPoints[boxTr], m_rectPoints[boxTr + 1], tl);
 
         // at this point we look for points on the left/right of the center of the remaining points
         // and maximize their distance from the center of the min area rectangle
-        var leftList = new ArrayList<Point>();
-        var rightList = new ArrayList<Point>();
-        var averageXCoordinate = 0;
-        for (var p : pointList) {
-            averageXCoordinate += p.x;
+        double averageX = 0;
+        for (int i = 0; i < count; i++) {
+            if (i != tl && i != tr) averageX += m_polyPoints[2 * i];
         }
-        averageXCoordinate /= pointList.size();
-
-        // add points that are below the center of the min area rectangle of the target
-        for (var p : pointList) {
-            if (p.y
-                    > target.m_mainContour.getBoundingRect().y
-                            + target.m_mainContour.getBoundingRect().height / 2.0)
-                if (p.x < averageXCoordinate) {
-                    leftList.add(p);
-                } else {
-                    rightList.add(p);
+        averageX /= count - 2;
+
+        var center = target.getMinAreaRect().center;
+        var box = target.m_mainContour.getBoundingRect();
+        double middleY = box.y + box.height / 2.0;
+        int bl = -1;
+        int br = -1;
+        double blDistance = 0;
+        double brDistance = 0;
+        // only points below the middle of the bounding box of the target
+        for (int i = 0; i < count; i++) {
+            if (i == tl || i == tr || m_polyPoints[2 * i + 1] <= middleY) continue;
+            double dx = m_polyPoints[2 * i] - center.x;
+            double dy = m_polyPoints[2 * i + 1] - center.y;
+            double distance = dx * dx + dy * dy;
+            if (m_polyPoints[2 * i] < averageX) {
+                if (bl == -1 || distance >= blDistance) {
+                    bl = i;
+                    blDistance = distance;
                 }
+            } else if (br == -1 || distance >= brDistance) {
+                br = i;
+                brDistance = distance;
+            }
+        }
+        if (bl == -1 || br == -1) return Outcome.NO_BOTTOM_CORNERS;
+
+        setCorner(0, tl);
+        setCorner(1, bl);
+        setCorner(2, br);
+        setCorner(3, tr);
+        return Outcome.FOUND;
+    }
+
+    private void setCorner(int corner, int polyPoint) {
+        m_corners[2 * corner] = m_polyPoints[2 * polyPoint];
+        m_corners[2 * corner + 1] = m_polyPoints[2 * polyPoint + 1];
+    }
+
+    /**
+    * Move the corners in m_corners to where cornerSubPix finds them, looking only at a small
+    * region of the image around the target. Corners it moves further than its search window are
+    * left where they were.
+    */
+    private void refineCorners(TrackedTarget target) {
+        if (m_image == null || m_image.channels() != 1) return;
+
+        var box = target.m_mainContour.getBoundingRect();
+        if (m_imageTransform != null) {
+            box = m_imageTransform.invert(box);
+            toImage(m_corners);
+        }
+        int margin = SUBPIXEL_HALF_WINDOW + 2;
+        Rect region =
+                Regions.clip(
+                        box.x - margin,
+                        box.y - margin,
+                        box.width + 2 * margin,
+                        box.height + 2 * margin,
+                        m_image.cols(),
+                        m_image.rows());
+        // cornerSubPix needs its whole search window to fit inside the image
+        int minSide = 2 * SUBPIXEL_HALF_WINDOW + 5;
+        if (region == null || region.width <= minSide || region.height <= minSide) {
+            if (m_imageTransform != null) fromImage(m_corners);
+            return;
+        }
+
+        for (int i = 0; i < 4; i++) {
+            m_subPixelBuffer[2 * i] = (float) (m_corners[2 * i] - region.x);
+            m_subPixelBuffer[2 * i + 1] = (float) (m_corners[2 * i + 1] - region.y);
+        }
+        m_subPixelCorners.create(4, 1, CvType.CV_32FC2);
+        m_subPixelCorners.put(0, 0, m_subPixelBuffer);
+
+        Mat image = m_image.submat(region);
+        Imgproc.cornerSubPix(
+                image, m_subPixelCorners, m_subPixelWindow, m_subPixelZeroZone, m_subPixelCriteria);
+        image.release();
+
+        m_subPixelCorners.get(0, 0, m_subPixelBuffer);
+        for (int i = 0; i < 4; i++) {
+            double x = m_subPixelBuffer[2 * i] + region.x;
+            double y = m_subPixelBuffer[2 * i + 1] + region.y;
+            if (Math.abs(x - m_corners[2 * i]) <= SUBPIXEL_HALF_WINDOW
+                    && Math.abs(y - m_corners[2 * i + 1]) <= SUBPIXEL_HALF_WINDOW) {
+                m_corners[2 * i] = x;
+                m_corners[2 * i + 1] = y;
+            }
+        }
+        if (m_imageTransform != null) fromImage(m_corners);
+    }
+
+    private void toImage(double[] points) {
+        for (int i = 0; i < points.length; i += 2) {
+            m_imageTransform.invert(points[i], points[i + 1], m_imagePoint);
+            points[i] = m_imagePoint.x;
+            points[i + 1] = m_imagePoint.y;
+        }
+    }
+
+    private void fromImage(double[] points) {
+        for (int i = 0; i < points.length; i += 2) {
+            m_imageTransform.apply(points[i], points[i + 1], m_imagePoint);
+            points[i] = m_imagePoint.x;
+            points[i + 1] = m_imagePoint.y;
         }
-        if (leftList.isEmpty() || rightList.isEmpty()) return null;
-        leftList.sort(distanceProvider);
-        rightList.sort(distanceProvider);
-        var bl = leftList.get(leftList.size() - 1);
-        var br = rightList.get(rightList.size() - 1);
-        System.out.printf("Found points: TL (%s) BL (%s) BR (%s) TR (%s)\n", tl, bl, br, tr);
-        return List.of(tl, bl, br, tr);
     }
 
     public static class CornerDetectionPipeParameters {
@@ -208,6 +366,28 @@ public class CornerDetectionPipe
     }
 
     public enum DetectionStrategy {
-        APPROX_POLY_DP_AND_EXTREME_CORNERS
+        APPROX_POLY_DP_AND_EXTREME_CORNERS,
+        // the same corners, then moved to where cornerSubPix finds them in the image
+        SUBPIXEL_REFINED
+    }
+
+    /** How finding a target's corners went. */
+    public enum Outcome {
+        FOUND,
+        TOO_FEW_SIDES,
+        WRONG_SIDE_COUNT,
+        NO_BOTTOM_CORNERS
+    }
+
+    @FunctionalInterface
+    public interface DebugListener {
+        /**
+        * Called for every target corners are looked for in.
+        *
+        * @param target The target.
+        * @param outcome Whether the corners were found, or why not.
+        * @param corners The corners given to the target, or null if none were found.
+        */
+        void onCornersDetected(TrackedTarget target, Outcome outcome, List<Point> corners);
     }
 }
@@ -10,10 +10,21 @@ import org.photonvision.common.util.ColorHelper;
 import org.photonvision.vision.pipe.CVPipe;
 import org.photonvision.vision.target.TrackedTarget;
 
+/**
+* Draws targets' boxes, outlines and centroids. Targets are scaled to the image, which may be a
+* downscaled stream frame, so only the points are touched at the targets' resolution.
+*/
 public class Draw2dContoursPipe
         extends CVPipe<Pair<Mat, List<TrackedTarget>>, Mat, Draw2dContoursPipe.Draw2dContoursParams> {
 
-    private List<MatOfPoint> m_drawnContours = new ArrayList<>();
+    // reused across targets and frames
+    private final Point[] m_vertices = {new Point(), new Point(), new Point(), new Point()};
+    private final Point m_centroid = new Point();
+    private final Point m_boxMin = new Point();
+    private final Point m_boxMax = new Point();
+    private final MatOfPoint m_shape = new MatOfPoint();
+    private final List<MatOfPoint> m_drawnContours = new ArrayList<>(List.of(m_shape));
+    private int[] m_shapeBuffer = new int[0];
 
     @Override
     protected Mat process(Pair<Mat, List<TrackedTarget>> in) {
@@ -22,6 +33,8 @@ public class Draw2dContoursPipe
                         || params.showMaximumBox
                         || params.showRotatedBox
                         || params.showShape)) {
+            Mat image = in.getLeft();
+            double scale = params.scale;
 
             var centroidColour = ColorHelper.colorToScalar(params.centroidColor);
             var maximumBoxColour = ColorHelper.colorToScalar(params.maximumBoxColor);
@@ -29,52 +42,56 @@ public class Draw2dContoursPipe
             var shapeColour = ColorHelper.colorToScalar(params.shapeOutlineColour);
 
             for (int i = 0; i < (params.showMultiple ? in.getRight().size() : 1); i++) {
-                Point[] vertices = new Point[4];
-                MatOfPoint contour = new MatOfPoint();
-
-                if (i != 0 && !params.showMultiple) {
-                    break;
-                }
-
                 TrackedTarget target = in.getRight().get(i);
                 RotatedRect r = target.getMinAreaRect();
 
                 if (r == null) continue;
 
-                m_drawnContours.forEach(Mat::release);
-                m_drawnContours.clear();
-                m_drawnContours = new ArrayList<>();
-
-                r.points(vertices);
-                contour.fromArray(vertices);
-                m_drawnContours.add(contour);
+                r.points(m_vertices);
+                for (var vertex : m_vertices) {
+                    vertex.x *= scale;
+                    vertex.y *= scale;
+                }
 
                 if (params.showRotatedBox) {
-                    Imgproc.drawContours(
-                            in.getLeft(), m_drawnContours, 0, rotatedBoxColour, params.boxOutlineSize);
+                    for (int j = 0; j < 4; j++) {
+                        Imgproc.line(
+                                image,
+                                m_vertices[j],
+                                m_vertices[(j + 1) % 4],
+                                rotatedBoxColour,
+                                params.boxOutlineSize);
+                    }
                 }
 
                 if (params.showMaximumBox) {
-                    Rect box = Imgproc.boundingRect(contour);
+                    // the integer bounding box of the rotated box's corners
+                    m_boxMin.x = m_boxMin.y = Double.MAX_VALUE;
+                    m_boxMax.x = m_boxMax.y = -Double.MAX_VALUE;
+                    for (var vertex : m_vertices) {
+                        m_boxMin.x = Math.min(m_boxMin.x, Math.floor(vertex.x));
+                        m_boxMin.y = Math.min(m_boxMin.y, Math.floor(vertex.y));
+                        m_boxMax.x = Math.max(m_boxMax.x, Math.floor(vertex.x) + 1);
+                        m_boxMax.y = Math.max(m_boxMax.y, Math.floor(vertex.y) + 1);
+                    }
                     Imgproc.rectangle(
-                            in.getLeft(),
-                            new Point(box.x, box.y),
-                            new Point(box.x + box.width, box.y + box.height),
-                            maximumBoxColour,
-                            params.boxOutlineSize);
+                            image, m_boxMin, m_boxMax, maximumBoxColour, params.boxOutlineSize);
                 }
 
                 if (params.showShape) {
                     Imgproc.drawContours(
-                            in.getLeft(),
-                            List.of(target.m_mainContour.mat),
+                            image,
+                            scaledShape(target, scale),
                             -1,
                             shapeColour,
                             params.boxOutlineSize);
                 }
 
                 if (params.showCentroid) {
-                    Imgproc.circle(in.getLeft(), target.getTargetOffsetPoint(), 3, centroidColour, 2);
+                    Point centroid = target.getTargetOffsetPoint();
+                    m_centroid.x = centroid.x * scale;
+                    m_centroid.y = centroid.y * scale;
+                    Imgproc.circle(image, m_centroid, 3, centroidColour, 2);
                 }
             }
         }
@@ -82,6 +99,20 @@ public class Draw2dContoursPipe
         return in.getLeft();
     }
 
+    /** @return The target's contour, scaled into a Mat this pipe reuses. */
+    private List<MatOfPoint> scaledShape(TrackedTarget target, double scale) {
+        if (scale == 1) return List.of(target.m_mainContour.getMat());
+
+        int[] points = target.m_mainContour.getPoints();
+        if (m_shapeBuffer.length < points.length) m_shapeBuffer = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            m_shapeBuffer[i] = (int) Math.round(points[i] * scale);
+        }
+        m_shape.create(points.length / 2, 1, CvType.CV_32SC2);
+        m_shape.put(0, 0, m_shapeBuffer);
+        return m_drawnContours;
+    }
+
     public static class Draw2dContoursParams {
         public boolean showCentroid = true;
         public boolean showMultiple = true;
@@ -93,10 +124,17 @@ public class Draw2dContoursPipe
         public Color rotatedBoxColor = Color.BLUE;
         public Color maximumBoxColor = Color.RED;
         public Color shapeOutlineColour = Color.MAGENTA;
+        // how big the image drawn on is relative to the frame targets were found in
+        public double scale = 1;
 
         // TODO: set other params from UI/settings file?
         public Draw2dContoursParams(boolean showMultipleTargets) {
             this.showMultiple = showMultipleTargets;
         }
+
+        public Draw2dContoursParams(boolean showMultipleTargets, double scale) {
+            this(showMultipleTargets);
+            this.scale = scale;
+        }
     }
 }
@@ -27,8 +27,8 @@ public class Draw2dCrosshairPipe
             switch (params.m_calibrationMode) {
                 case Single:
                     if (!params.m_calibrationPoint.isEmpty()) {
-                        x = params.m_calibrationPoint.getFirst();
-                        y = params.m_calibrationPoint.getSecond();
+                        x = params.m_calibrationPoint.getFirst() * params.m_scale;
+                        y = params.m_calibrationPoint.getSecond() * params.m_scale;
                     }
                     break;
                 case Dual:
@@ -52,11 +52,19 @@ public class Draw2dCrosshairPipe
         private DoubleCouple m_calibrationPoint;
         public boolean m_showCrosshair = true;
         public Color m_crosshairColor = Color.GREEN;
+        // how big the image drawn on is relative to the frame the calibration point is in
+        private double m_scale = 1;
 
         public Draw2dCrosshairParams(
                 RobotOffsetPointMode calibrationMode, DoubleCouple calibrationPoint) {
             m_calibrationMode = calibrationMode;
             m_calibrationPoint = calibrationPoint;
         }
+
+        public Draw2dCrosshairParams(
+                RobotOffsetPointMode calibrationMode, DoubleCouple calibrationPoint, double scale) {
+            this(calibrationMode, calibrationPoint);
+            m_scale = scale;
+        }
     }
 }
@@ -1,13 +1,18 @@
 package org.photonvision.vision.pipe.impl;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.calib3d.Calib3d;
+import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.MatOfPoint3f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 import org.photonvision.common.util.ColorHelper;
 import org.photonvision.vision.calibration.CameraCalibrationCoefficients;
@@ -15,96 +20,131 @@ import org.photonvision.vision.pipe.CVPipe;
 import org.photonvision.vision.target.TargetModel;
 import org.photonvision.vision.target.TrackedTarget;
 
+/**
+* Draws targets' outlines, corners and 3d boxes. The image may be smaller than the frame the
+* targets were found in, such as a downscaled stream frame, in which case everything is scaled down
+* to fit it, so drawing costs depend on the size of the image rather than of the camera.
+*/
 public class Draw3dTargetsPipe
         extends CVPipe<Pair<Mat, List<TrackedTarget>>, Mat, Draw3dTargetsPipe.Draw3dContoursParams> {
 
+    private static final Scalar HULL_COLOR = ColorHelper.colorToScalar(Color.green);
+    private static final Scalar POLYGON_COLOR = ColorHelper.colorToScalar(Color.blue);
+    private static final Scalar FLOOR_COLOR = ColorHelper.colorToScalar(Color.green);
+    private static final Scalar PILLAR_COLOR = ColorHelper.colorToScalar(Color.blue);
+    private static final Scalar TOP_COLOR = ColorHelper.colorToScalar(Color.orange);
+
+    // reused across targets and frames
+    private final MatOfPoint pointMat = new MatOfPoint();
+    private final List<MatOfPoint> pointMats = new ArrayList<>(List.of(pointMat));
+    private final MatOfPoint2f projectedMat = new MatOfPoint2f();
+    private float[] m_floatBuffer = new float[0];
+    private int[] m_intBuffer = new int[0];
+    private final Point m_from = new Point();
+    private final Point m_to = new Point();
+    private final Point m_corner = new Point();
+
+    // the bottom of the box followed by its top, so both are projected in one go
+    private final MatOfPoint3f m_boxModel = new MatOfPoint3f();
+    private TargetModel m_boxModelSource;
+    private int m_boxSides;
+
+    @Override
+    public void setParams(Draw3dContoursParams params) {
+        super.setParams(params);
+        var model = params.targetModel;
+        if (model != null && model != m_boxModelSource) {
+            m_boxModelSource = model;
+            m_boxSides = (int) model.getVisualizationBoxBottom().total();
+            Core.vconcat(
+                    List.of(model.getVisualizationBoxBottom(), model.getVisualizationBoxTop()),
+                    m_boxModel);
+        }
+    }
+
     @Override
     protected Mat process(Pair<Mat, List<TrackedTarget>> in) {
-        for (var target : in.getRight()) {
+        Mat image = in.getLeft();
+        double scale = params.scale;
+        Scalar cornerColor = ColorHelper.colorToScalar(params.color);
 
+        for (var target : in.getRight()) {
             // draw convex hull
-            var pointMat = new MatOfPoint();
-            target.m_mainContour.getConvexHull().convertTo(pointMat, CvType.CV_32S);
-            Imgproc.drawContours(
-                    in.getLeft(), List.of(pointMat), -1, ColorHelper.colorToScalar(Color.green), 1);
+            drawPolygon(image, target.m_mainContour.getConvexHull(), scale, HULL_COLOR, 1);
 
             // draw approximate polygon
             var poly = target.getApproximateBoundingPolygon();
-            if (poly != null) {
-                poly.convertTo(pointMat, CvType.CV_32S);
-                Imgproc.drawContours(
-                        in.getLeft(), List.of(pointMat), -1, ColorHelper.colorToScalar(Color.blue), 2);
-            }
+            if (poly != null) drawPolygon(image, poly, scale, POLYGON_COLOR, 2);
 
             // Draw floor and top
-            if (target.getCameraRelativeRvec() != null && target.getCameraRelativeTvec() != null) {
-                var tempMat = new MatOfPoint2f();
-                var jac = new Mat();
-                var bottomModel = params.targetModel.getVisualizationBoxBottom();
-                var topModel = params.targetModel.getVisualizationBoxTop();
-                Calib3d.projectPoints(
-                        bottomModel,
-                        target.getCameraRelativeRvec(),
-                        target.getCameraRelativeTvec(),
-                        params.cameraCalibrationCoefficients.getCameraIntrinsicsMat(),
-                        params.cameraCalibrationCoefficients.getCameraExtrinsicsMat(),
-                        tempMat,
-                        jac);
-                var bottomPoints = tempMat.toList();
+            if (target.getCameraRelativeRvec() != null
+                    && target.getCameraRelativeTvec() != null
+                    && m_boxSides > 0) {
+                // the jacobian is only needed for calibrating, so don't ask for it
                 Calib3d.projectPoints(
-                        topModel,
+                        m_boxModel,
                         target.getCameraRelativeRvec(),
                         target.getCameraRelativeTvec(),
                         params.cameraCalibrationCoefficients.getCameraIntrinsicsMat(),
                         params.cameraCalibrationCoefficients.getCameraExtrinsicsMat(),
-                        tempMat,
-                        jac);
-                var topPoints = tempMat.toList();
-                // floor, then pillers, then top
-                for (int i = 0; i < bottomPoints.size(); i++) {
-                    Imgproc.line(
-                            in.getLeft(),
-                            bottomPoints.get(i),
-                            bottomPoints.get((i + 1) % (bottomPoints.size())),
-                            ColorHelper.colorToScalar(Color.green),
-                            3);
+                        projectedMat);
+                float[] points = readPoints(projectedMat);
+                int sides = m_boxSides;
+                // floor, then pillars, then top
+                for (int i = 0; i < sides; i++) {
+                    drawLine(image, points, i, (i + 1) % sides, scale, FLOOR_COLOR);
                 }
-                for (int i = 0; i < bottomPoints.size(); i++) {
-                    Imgproc.line(
-                            in.getLeft(),
-                            bottomPoints.get(i),
-                            topPoints.get(i),
-                            ColorHelper.colorToScalar(Color.blue),
-                            3);
+                for (int i = 0; i < sides; i++) {
+                    drawLine(image, points, i, sides + i, scale, PILLAR_COLOR);
                 }
-                for (int i = 0; i < topPoints.size(); i++) {
-                    Imgproc.line(
-                            in.getLeft(),
-                            topPoints.get(i),
-                            topPoints.get((i + 1) % (bottomPoints.size())),
-                            ColorHelper.colorToScalar(Color.orange),
-                            3);
+                for (int i = 0; i < sides; i++) {
+                    drawLine(image, points, sides + i, sides + (i + 1) % sides, scale, TOP_COLOR);
                 }
-
-                jac.release();
             }
-            pointMat.release();
 
             // draw corners
             var corners = target.getTargetCorners();
             if (corners != null && !corners.isEmpty()) {
                 for (var corner : corners) {
-                    Imgproc.circle(
-                            in.getLeft(),
-                            corner,
-                            params.radius,
-                            ColorHelper.colorToScalar(params.color),
-                            params.radius);
+                    m_corner.x = corner.x * scale;
+                    m_corner.y = corner.y * scale;
+                    Imgproc.circle(image, m_corner, params.radius, cornerColor, params.radius);
                 }
             }
         }
 
-        return in.getLeft();
+        return image;
+    }
+
+    private void drawLine(
+            Mat image, float[] points, int from, int to, double scale, Scalar color) {
+        m_from.x = points[2 * from] * scale;
+        m_from.y = points[2 * from + 1] * scale;
+        m_to.x = points[2 * to] * scale;
+        m_to.y = points[2 * to + 1] * scale;
+        Imgproc.line(image, m_from, m_to, color, 3);
+    }
+
+    private void drawPolygon(
+            Mat image, MatOfPoint2f polygon, double scale, Scalar color, int thickness) {
+        int count = (int) polygon.total();
+        if (count == 0) return;
+        float[] points = readPoints(polygon);
+        if (m_intBuffer.length < count * 2) m_intBuffer = new int[count * 2];
+        for (int i = 0; i < count * 2; i++) {
+            m_intBuffer[i] = (int) Math.round(points[i] * scale);
+        }
+        pointMat.create(count, 1, CvType.CV_32SC2);
+        pointMat.put(0, 0, m_intBuffer);
+        Imgproc.drawContours(image, pointMats, -1, color, thickness);
+    }
+
+    /** Read points into the float buffer, which is returned, in one copy. */
+    private float[] readPoints(MatOfPoint2f mat) {
+        int length = (int) mat.total() * 2;
+        if (m_floatBuffer.length < length) m_floatBuffer = new float[length];
+        mat.get(0, 0, m_floatBuffer);
+        return m_floatBuffer;
     }
 
     public static class Draw3dContoursParams {
@@ -112,11 +152,25 @@ public class Draw3dTargetsPipe
         private final Color color = Color.RED;
         private final TargetModel targetModel;
         private final CameraCalibrationCoefficients cameraCalibrationCoefficients;
+        private final double scale;
 
         public Draw3dContoursParams(
                 CameraCalibrationCoefficients cameraCalibrationCoefficients, TargetModel targetModel) {
+            this(cameraCalibrationCoefficients, targetModel, 1);
+        }
+
+        /**
+        * Creates Draw3dContoursParams.
+        *
+        * @param scale How big the image drawn on is relative to the frame targets were found in.
+        */
+        public Draw3dContoursParams(
+                CameraCalibrationCoefficients cameraCalibrationCoefficients,
+                TargetModel targetModel,
+                double scale) {
             this.cameraCalibrationCoefficients = cameraCalibrationCoefficients;
             this.targetModel = targetModel;
+            this.scale = scale;
         }
     }
 }
@@ -1,32 +1,104 @@
 package org.photonvision.vision.pipe.impl;
 
+import java.util.stream.IntStream;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
+import org.photonvision.vision.opencv.Regions;
 import org.photonvision.vision.pipe.CVPipe;
 
 public class ErodeDilatePipe extends CVPipe<Mat, Mat, ErodeDilatePipe.ErodeDilateParams> {
+    // the structuring element is native, so keep it until the kernel size actually changes
+    private Mat m_kernel;
+    private int m_kernelSize;
+    private final Mat m_scratch = new Mat();
+
+    @Override
+    public void setParams(ErodeDilateParams params) {
+        super.setParams(params);
+        if (m_kernel == null || m_kernelSize != params.getKernelSize()) {
+            if (m_kernel != null) m_kernel.release();
+            m_kernelSize = params.getKernelSize();
+            m_kernel =
+                    Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(m_kernelSize, m_kernelSize));
+        }
+    }
+
     @Override
     protected Mat process(Mat in) {
+        if (params.getBandCount() <= 1) {
+            if (params.shouldErode()) {
+                Imgproc.erode(in, in, m_kernel);
+            }
+            if (params.shouldDilate()) {
+                Imgproc.dilate(in, in, m_kernel);
+            }
+            return in;
+        }
+
+        // bands can't be processed in place, since each one reads the rows around it, so ping-pong
+        // between the input and a scratch Mat
+        Mat out = in;
         if (params.shouldErode()) {
-            Imgproc.erode(in, in, params.getKernel());
+            Mat next = out == in ? m_scratch : in;
+            morphBanded(out, next, true);
+            out = next;
         }
         if (params.shouldDilate()) {
-            Imgproc.dilate(in, in, params.getKernel());
+            Mat next = out == in ? m_scratch : in;
+            morphBanded(out, next, false);
+            out = next;
         }
-        return in;
+        return out;
+    }
+
+    private void morphBanded(Mat src, Mat dst, boolean erode) {
+        dst.create(src.rows(), src.cols(), src.type());
+        int bandCount = params.getBandCount();
+        int[] bounds = Regions.splitRows(src.rows(), bandCount);
+        // OpenCV reads the rows around a submat from its parent, so each band comes out exactly as
+        // it would if the whole image were processed at once
+        IntStream.range(0, bandCount)
+                .parallel()
+                .forEach(
+                        band -> {
+                            if (bounds[band] == bounds[band + 1]) return;
+                            Mat srcBand = src.rowRange(bounds[band], bounds[band + 1]);
+                            Mat dstBand = dst.rowRange(bounds[band], bounds[band + 1]);
+                            if (erode) {
+                                Imgproc.erode(srcBand, dstBand, m_kernel);
+                            } else {
+                                Imgproc.dilate(srcBand, dstBand, m_kernel);
+                            }
+                            srcBand.release();
+                            dstBand.release();
+                        });
     }
 
     public static class ErodeDilateParams {
         private boolean m_erode;
         private boolean m_dilate;
-        private Mat m_kernel;
+        private int m_kernelSize;
+        private int m_bandCount;
 
         public ErodeDilateParams(boolean erode, boolean dilate, int kernelSize) {
+            this(erode, dilate, kernelSize, 1);
+        }
+
+        /**
+        * Creates ErodeDilateParams.
+        *
+        * @param erode Whether to erode.
+        * @param dilate Whether to dilate, after eroding.
+        * @param kernelSize The width and height of the rectangular kernel.
+        * @param bandCount How many horizontal bands to split the image into and process in
+        *     parallel. 1 processes the whole image in place on the calling thread.
+        */
+        public ErodeDilateParams(boolean erode, boolean dilate, int kernelSize, int bandCount) {
             m_erode = erode;
             m_dilate = dilate;
-            m_kernel =
-                    Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(kernelSize, kernelSize));
+            m_kernelSize = kernelSize;
+            m_bandCount = Math.max(1, bandCount);
         }
 
         public boolean shouldErode() {
@@ -37,8 +109,12 @@ public class ErodeDilatePipe extends CVPipe<Mat, Mat, ErodeDilatePipe.ErodeDilat
             return m_dilate;
         }
 
-        public Mat getKernel() {
-            return m_kernel;
+        public int getKernelSize() {
+            return m_kernelSize;
+        }
+
+        public int getBandCount() {
+            return m_bandCount;
         }
     }
 }
@@ -2,6 +2,7 @@ package org.photonvision.vision.pipe.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
 import org.photonvision.common.util.math.MathUtils;
@@ -10,17 +11,64 @@ import org.photonvision.vision.frame.FrameStaticProperties;
 import org.photonvision.vision.opencv.Contour;
 import org.photonvision.vision.pipe.CVPipe;
 
+/**
+* Rejects speckles and contours outside the area, aspect ratio and extent limits, in a single
+* pass. <br>
+* <br>
+* The checks run cheapest first, so most contours are rejected by area before their bounding rect
+* is looked at, and only the survivors get a min area rect fitted. Since every check has to pass,
+* the order doesn't change which contours are kept: the result is the same as running {@link
+* SpeckleRejectPipe} and then filtering, except that the area is compared as the percentage of the
+* image the sigmoid of the area limits is, rather than as a 0-1 ratio. With filtering turned off,
+* it is the same as just running {@link SpeckleRejectPipe}.
+*/
 public class FilterContoursPipe
         extends CVPipe<List<Contour>, List<Contour>, FilterContoursPipe.FilterContoursParams> {
 
+    /** The checks a contour can fail, in the order they run. */
+    public enum Rule {
+        SPECKLE,
+        AREA,
+        ASPECT_RATIO,
+        EXTENT
+    }
+
     List<Contour> m_filteredContours = new ArrayList<>();
 
+    private final AtomicLongArray m_rejections = new AtomicLongArray(Rule.values().length);
+
     @Override
     protected List<Contour> process(List<Contour> in) {
         m_filteredContours.clear();
+        if (in.isEmpty()) return m_filteredContours;
+
+        // speckles are relative to the average area, so that has to be known up front. Contours
+        // cache their area, so the checks below don't compute it again
+        double minSpeckleArea = 0;
+        if (params.getSpecklePercentage() > 0) {
+            double averageArea = 0.0;
+            for (Contour contour : in) {
+                averageArea += contour.getArea();
+            }
+            averageArea /= in.size();
+            minSpeckleArea = params.getSpecklePercentage() / 100.0 * averageArea;
+        }
+
+        double imageArea = params.getCamProperties().imageArea;
+        // the area limits come from a slider, which the sigmoid maps to a percentage of the image
+        double minArea = MathUtils.sigmoid(params.getArea().getFirst());
+        double maxArea = MathUtils.sigmoid(params.getArea().getSecond());
+
         for (Contour contour : in) {
             try {
-                filterContour(contour);
+                Rule rejectedBy = check(contour, minSpeckleArea, imageArea, minArea, maxArea);
+                if (rejectedBy == null) {
+                    m_filteredContours.add(contour);
+                } else {
+                    m_rejections.incrementAndGet(rejectedBy.ordinal());
+                    // nothing downstream sees it, so free anything it materialized natively
+                    contour.release();
+                }
             } catch (Exception e) {
                 System.err.println("An error occurred while filtering contours.");
                 e.printStackTrace();
@@ -29,27 +77,49 @@ public class FilterContoursPipe
         return m_filteredContours;
     }
 
-    private void filterContour(Contour contour) {
-        // Area Filtering.
+    private Rule check(
+            Contour contour,
+            double minSpeckleArea,
+            double imageArea,
+            double minArea,
+            double maxArea) {
+        // Speckle Rejection.
         double contourArea = contour.getArea();
-        double areaRatio = (contourArea / params.getCamProperties().imageArea);
-        double minArea = MathUtils.sigmoid(params.getArea().getFirst());
-        double maxArea = MathUtils.sigmoid(params.getArea().getSecond());
-        if (areaRatio < minArea || areaRatio > maxArea) return;
+        if (contourArea < minSpeckleArea) return Rule.SPECKLE;
+        if (!params.isFiltering()) return null;
 
-        // Extent Filtering.
-        RotatedRect minAreaRect = contour.getMinAreaRect();
-        double minExtent = params.getExtent().getFirst() * minAreaRect.size.area() / 100;
-        double maxExtent = params.getExtent().getSecond() * minAreaRect.size.area() / 100;
-        if (contourArea <= minExtent || contourArea >= maxExtent) return;
+        // Area Filtering, as a percentage of the image.
+        double areaPercentage = contourArea / imageArea * 100;
+        if (areaPercentage < minArea || areaPercentage > maxArea) return Rule.AREA;
 
         // Aspect Ratio Filtering.
         Rect boundingRect = contour.getBoundingRect();
         double aspectRatio = (double) boundingRect.width / boundingRect.height;
         if (aspectRatio < params.getRatio().getFirst() || aspectRatio > params.getRatio().getSecond())
-            return;
+            return Rule.ASPECT_RATIO;
+
+        // Extent Filtering.
+        RotatedRect minAreaRect = contour.getMinAreaRect();
+        double minExtent = params.getExtent().getFirst() * minAreaRect.size.area() / 100;
+        double maxExtent = params.getExtent().getSecond() * minAreaRect.size.area() / 100;
+        if (contourArea <= minExtent || contourArea >= maxExtent) return Rule.EXTENT;
 
-        m_filteredContours.add(contour);
+        return null;
+    }
+
+    /**
+    * @param rule The rule.
+    * @return How many contours have been rejected by the rule, since the last reset.
+    */
+    public long getRejectedCount(Rule rule) {
+        return m_rejections.get(rule.ordinal());
+    }
+
+    /** Zero every rejection counter. */
+    public void resetRejectedCounts() {
+        for (int i = 0; i < m_rejections.length(); i++) {
+            m_rejections.set(i, 0);
+        }
     }
 
     public static class FilterContoursParams {
@@ -57,16 +127,56 @@ public class FilterContoursPipe
         private DoubleCouple m_ratio;
         private DoubleCouple m_extent;
         private FrameStaticProperties m_camProperties;
+        private double m_specklePercentage;
+        private boolean m_filtering;
 
         public FilterContoursParams(
                 DoubleCouple area,
                 DoubleCouple ratio,
                 DoubleCouple extent,
                 FrameStaticProperties camProperties) {
+            this(area, ratio, extent, camProperties, 0);
+        }
+
+        /**
+        * Creates FilterContoursParams.
+        *
+        * @param area The limits on how much of the image the contour covers, as slider values
+        *     that {@link MathUtils#sigmoid} maps to percentages.
+        * @param ratio The bounding rect width to height limits.
+        * @param extent The limits on the percentage of the min area rect the contour fills.
+        * @param camProperties The properties of the frames being filtered.
+        * @param specklePercentage Contours smaller than this percentage of the average contour area
+        *     are rejected as speckles. 0 keeps them all.
+        */
+        public FilterContoursParams(
+                DoubleCouple area,
+                DoubleCouple ratio,
+                DoubleCouple extent,
+                FrameStaticProperties camProperties,
+                double specklePercentage) {
+            this(area, ratio, extent, camProperties, specklePercentage, true);
+        }
+
+        /**
+        * Creates FilterContoursParams.
+        *
+        * @param filtering Whether to apply the area, ratio and extent limits. If false, only
+        *     speckles are rejected.
+        */
+        public FilterContoursParams(
+                DoubleCouple area,
+                DoubleCouple ratio,
+                DoubleCouple extent,
+                FrameStaticProperties camProperties,
+                double specklePercentage,
+                boolean filtering) {
             this.m_area = area;
             this.m_ratio = ratio;
             this.m_extent = extent;
             this.m_camProperties = camProperties;
+            this.m_specklePercentage = specklePercentage;
+            this.m_filtering = filtering;
         }
 
         public DoubleCouple getArea() {
@@ -84,5 +194,13 @@ public class FilterContoursPipe
         public FrameStaticProperties getCamProperties() {
             return m_camProperties;
         }
+
+        public double getSpecklePercentage() {
+            return m_specklePercentage;
+        }
+
+        public boolean isFiltering() {
+            return m_filtering;
+        }
     }
 }
@@ -1,24 +1,44 @@
 package org.photonvision.vision.pipe.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.imgproc.Moments;
 import org.photonvision.vision.opencv.CVShape;
 import org.photonvision.vision.opencv.Contour;
 import org.photonvision.vision.opencv.ContourShape;
+import org.photonvision.vision.opencv.Regions;
 import org.photonvision.vision.pipe.CVPipe;
 
 public class FindCirclesPipe
         extends CVPipe<Pair<Mat, List<Contour>>, List<CVShape>, FindCirclesPipe.FindCirclePipeParams> {
 
-    double[] c;
-    Mat circles = new Mat();
-    Moments mu;
-    double x_center;
-    double y_center;
+    // the smallest side of a spatial hash cell, so a tiny match threshold doesn't make a huge grid
+    private static final int MIN_CELL_SIZE = 8;
+
+    private final Mat circles = new Mat();
+    private final List<Rect> m_regions = new ArrayList<>();
+
+    // everything below is reused and only grown, so matching allocates nothing per frame
+    // circle centers x, y and radius, read from each Hough result in one go
+    private float[] m_circleBuffer = new float[0];
+    // just the centers of all the circles found this frame
+    private float[] m_circleCenters = new float[0];
+    private int m_circleCount;
+
+    private double[] m_centroids = new double[0];
+    // the hash cell of each contour's centroid, or -1 if it has no area
+    private int[] m_contourCells = new int[0];
+    // contour indices bucketed by hash cell: cell i holds m_cellItems[m_cellStart[i]] up to
+    // m_cellItems[m_cellStart[i + 1]]
+    private int[] m_cellStart = new int[0];
+    private int[] m_cellItems = new int[0];
+    private boolean[] m_matched = new boolean[0];
+
     /**
     * Runs the process for the pipe.
     *
@@ -27,11 +47,59 @@ public class FindCirclesPipe
     */
     @Override
     protected List<CVShape> process(Pair<Mat, List<Contour>> in) {
-        circles.release();
+        Mat image = in.getLeft();
+        List<Contour> contours = in.getRight();
         List<CVShape> output = new ArrayList<>();
+        if (contours.isEmpty()) return output;
+
+        m_circleCount = 0;
+        if (params.restrictToContours) {
+            findCirclesNearContours(image, contours);
+        } else {
+            findCircles(image, 0, 0);
+        }
+        if (m_circleCount == 0) return output;
+
+        matchCircles(contours, image.cols(), image.rows());
+        for (int i = 0; i < contours.size(); i++) {
+            if (m_matched[i]) output.add(new CVShape(contours.get(i), ContourShape.Circle));
+        }
+        return output;
+    }
+
+    /**
+    * Look for circles only around the contours. A circle's center must be close to a contour's
+    * centroid to match it, so nothing further away needs searching.
+    */
+    private void findCirclesNearContours(Mat image, List<Contour> contours) {
+        m_regions.clear();
+        // the edges around the center need a few pixels of background to show up
+        int padding = params.allowableThreshold + 2;
+        for (var contour : contours) {
+            var box = contour.getBoundingRect();
+            var region =
+                    Regions.clip(
+                            box.x - padding,
+                            box.y - padding,
+                            box.width + 2 * padding,
+                            box.height + 2 * padding,
+                            image.cols(),
+                            image.rows());
+            if (region != null) m_regions.add(region);
+        }
+        Regions.mergeOverlapping(m_regions);
+
+        for (var region : m_regions) {
+            Mat inRegion = image.submat(region);
+            findCircles(inRegion, region.x, region.y);
+            inRegion.release();
+        }
+    }
 
+    /** Run Hough on the image, adding the centers it finds, offset back into the whole image. */
+    private void findCircles(Mat image, int offsetX, int offsetY) {
         Imgproc.HoughCircles(
-                in.getLeft(),
+                image,
                 circles,
                 Imgproc.HOUGH_GRADIENT,
                 1.0,
@@ -40,20 +108,96 @@ public class FindCirclesPipe
                 params.accuracy,
                 params.minRadius,
                 params.maxRadius);
-        for (int x = 0; x < circles.cols(); x++) {
-            c = circles.get(0, x);
-            x_center = c[0];
-            y_center = c[1];
-            for (Contour contour : in.getRight()) {
-                mu = contour.getMoments();
-                if (Math.abs(x_center - (mu.m10 / mu.m00)) <= params.allowableThreshold
-                        && Math.abs(y_center - (mu.m01 / mu.m00)) <= params.allowableThreshold) {
-                    output.add(new CVShape(contour, ContourShape.Circle));
+        int found = (int) circles.total();
+        if (found == 0) return;
+
+        if (m_circleBuffer.length < found * 3) m_circleBuffer = new float[found * 3];
+        circles.get(0, 0, m_circleBuffer);
+
+        int needed = (m_circleCount + found) * 2;
+        if (m_circleCenters.length < needed) {
+            m_circleCenters = Arrays.copyOf(m_circleCenters, needed * 2);
+        }
+        for (int i = 0; i < found; i++) {
+            m_circleCenters[m_circleCount * 2] = m_circleBuffer[i * 3] + offsetX;
+            m_circleCenters[m_circleCount * 2 + 1] = m_circleBuffer[i * 3 + 1] + offsetY;
+            m_circleCount++;
+        }
+    }
+
+    /**
+    * Mark the contours with a circle centered within the allowable threshold of their centroid.
+    * Centroids are bucketed into a grid with cells at least as big as the threshold, so each
+    * circle only looks at the contours in the few cells around it.
+    */
+    private void matchCircles(List<Contour> contours, int width, int height) {
+        int count = contours.size();
+        if (m_centroids.length < count * 2) m_centroids = new double[count * 2];
+        if (m_matched.length < count) m_matched = new boolean[count];
+        if (m_cellItems.length < count) m_cellItems = new int[count];
+        if (m_contourCells.length < count) m_contourCells = new int[count];
+        Arrays.fill(m_matched, 0, count, false);
+
+        int threshold = params.allowableThreshold;
+        int cellSize = Math.max(MIN_CELL_SIZE, threshold);
+        int gridCols = width / cellSize + 1;
+        int gridRows = height / cellSize + 1;
+        int cells = gridCols * gridRows;
+        if (m_cellStart.length < cells + 1) m_cellStart = new int[cells + 1];
+        Arrays.fill(m_cellStart, 0, cells + 1, 0);
+
+        // a counting sort of the contours by cell
+        for (int i = 0; i < count; i++) {
+            Moments mu = contours.get(i).getMoments();
+            m_centroids[i * 2] = mu.m10 / mu.m00;
+            m_centroids[i * 2 + 1] = mu.m01 / mu.m00;
+            // contours with no area have no centroid, so never match
+            if (mu.m00 == 0) {
+                m_contourCells[i] = -1;
+                continue;
+            }
+            int col = clamp((int) Math.floor(m_centroids[i * 2] / cellSize), gridCols);
+            int row = clamp((int) Math.floor(m_centroids[i * 2 + 1] / cellSize), gridRows);
+            m_contourCells[i] = row * gridCols + col;
+            m_cellStart[m_contourCells[i] + 1]++;
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            m_cellStart[cell + 1] += m_cellStart[cell];
+        }
+        // m_cellStart[cell] is used as the next free slot while filling, which leaves it at the
+        // start of the next cell, so shift back afterwards
+        for (int i = 0; i < count; i++) {
+            if (m_contourCells[i] != -1) m_cellItems[m_cellStart[m_contourCells[i]]++] = i;
+        }
+        for (int cell = cells; cell > 0; cell--) {
+            m_cellStart[cell] = m_cellStart[cell - 1];
+        }
+        m_cellStart[0] = 0;
+
+        for (int c = 0; c < m_circleCount; c++) {
+            double x = m_circleCenters[c * 2];
+            double y = m_circleCenters[c * 2 + 1];
+            int minCol = clamp((int) Math.floor((x - threshold) / cellSize), gridCols);
+            int maxCol = clamp((int) Math.floor((x + threshold) / cellSize), gridCols);
+            int minRow = clamp((int) Math.floor((y - threshold) / cellSize), gridRows);
+            int maxRow = clamp((int) Math.floor((y + threshold) / cellSize), gridRows);
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    int cell = row * gridCols + col;
+                    for (int item = m_cellStart[cell]; item < m_cellStart[cell + 1]; item++) {
+                        int i = m_cellItems[item];
+                        if (Math.abs(x - m_centroids[i * 2]) <= threshold
+                                && Math.abs(y - m_centroids[i * 2 + 1]) <= threshold) {
+                            m_matched[i] = true;
+                        }
+                    }
                 }
             }
         }
+    }
 
-        return output;
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(index, size - 1));
     }
 
     public static class FindCirclePipeParams {
@@ -63,6 +207,7 @@ public class FindCirclesPipe
         public int minDist;
         public int maxCannyThresh;
         public int accuracy;
+        public boolean restrictToContours;
 
         public FindCirclePipeParams(
                 int allowableThreshold,
@@ -71,12 +216,31 @@ public class FindCirclesPipe
                 int maxRadius,
                 int maxCannyThresh,
                 int accuracy) {
+            this(
+                    allowableThreshold, minRadius, minDist, maxRadius, maxCannyThresh, accuracy, false);
+        }
+
+        /**
+        * Creates FindCirclePipeParams.
+        *
+        * @param restrictToContours Whether to only look for circles in padded boxes around the
+        *     contours, rather than the whole image.
+        */
+        public FindCirclePipeParams(
+                int allowableThreshold,
+                int minRadius,
+                int minDist,
+                int maxRadius,
+                int maxCannyThresh,
+                int accuracy,
+                boolean restrictToContours) {
             this.allowableThreshold = allowableThreshold;
             this.minRadius = minRadius;
             this.maxRadius = maxRadius;
             this.minDist = minDist;
             this.maxCannyThresh = maxCannyThresh;
             this.accuracy = accuracy;
+            this.restrictToContours = restrictToContours;
         }
     }
 }
@@ -1,31 +1,279 @@
 package org.photonvision.vision.pipe.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.imgproc.Imgproc;
 import org.photonvision.vision.opencv.Contour;
+import org.photonvision.vision.opencv.Regions;
 import org.photonvision.vision.pipe.CVPipe;
 
 public class FindContoursPipe
         extends CVPipe<Mat, List<Contour>, FindContoursPipe.FindContoursParams> {
+    // bits for each of the row, column and index packed into a sort key, enough for any image
+    private static final int KEY_BITS = 21;
+    private static final long KEY_MASK = (1L << KEY_BITS) - 1;
 
     private List<MatOfPoint> m_foundContours = new ArrayList<>();
+    private final List<MatOfPoint> m_regionContours = new ArrayList<>();
+    private final Mat m_hierarchy = new Mat();
+
+    // one hierarchy per band, so bands can be searched in parallel
+    private Mat[] m_bandHierarchies = new Mat[0];
+
+    // reused when sorting banded results
+    private int[] m_points = new int[0];
+    private long[] m_sortKeys = new long[0];
+    private final List<MatOfPoint> m_sorted = new ArrayList<>();
+
+    private List<Rect> m_regions;
+
+    /**
+    * Only look for contours inside some regions of the image. Contours are still returned in whole
+    * image coordinates.
+    *
+    * @param regions The regions, which must lie within the image and not overlap, or null to
+    *     search the whole image.
+    */
+    public void setRegionsOfInterest(List<Rect> regions) {
+        m_regions = regions;
+    }
 
     @Override
     protected List<Contour> process(Mat in) {
+        if (m_regions != null) {
+            for (var region : m_regions) {
+                findContours(in, region, m_foundContours);
+            }
+        } else if (params.getBandCount() > 1) {
+            findContoursBanded(in, params.getBandCount());
+        } else {
+            Imgproc.findContours(
+                    in, m_foundContours, m_hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_TC89_L1);
+        }
+
+        // copy the points out once, so nothing downstream needs JNI unless it calls into OpenCV
+        var contours = new ArrayList<Contour>(m_foundContours.size());
         for (var m : m_foundContours) {
-            m.release(); // necessary?
+            contours.add(Contour.copyOf(m));
+            m.release();
         }
         m_foundContours.clear();
+        return contours;
+    }
 
+    private void findContours(Mat in, Rect region, List<MatOfPoint> out) {
+        Mat inRegion = in.submat(region);
+        m_regionContours.clear();
+        // the offset moves the points back into whole image coordinates
         Imgproc.findContours(
-                in, m_foundContours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_TC89_L1);
+                inRegion,
+                m_regionContours,
+                m_hierarchy,
+                Imgproc.RETR_EXTERNAL,
+                Imgproc.CHAIN_APPROX_TC89_L1,
+                new Point(region.x, region.y));
+        out.addAll(m_regionContours);
+        inRegion.release();
+    }
+
+    /**
+    * Find contours in horizontal bands in parallel, giving the same contours as searching the whole
+    * image at once. <br>
+    * <br>
+    * findContours pads its input with zeros, so a blob that doesn't touch the edge of its band is
+    * traced exactly as it would be in the whole image. Blobs touching a band edge may continue in
+    * the next band, so they are searched for again, single threaded, in a region around all of
+    * their parts. Those regions are grown until no blob is only partly inside one, so that blobs
+    * inside the holes of others are still left out, just like in the whole image.
+    */
+    private void findContoursBanded(Mat in, int bandCount) {
+        int rows = in.rows();
+        int cols = in.cols();
+        int[] bounds = Regions.splitRows(rows, bandCount);
+        if (m_bandHierarchies.length != bandCount) {
+            for (var mat : m_bandHierarchies) {
+                mat.release();
+            }
+            m_bandHierarchies = new Mat[bandCount];
+            for (int i = 0; i < bandCount; i++) {
+                m_bandHierarchies[i] = new Mat();
+            }
+        }
+
+        var bandContours = new ArrayList<List<MatOfPoint>>(bandCount);
+        for (int i = 0; i < bandCount; i++) {
+            bandContours.add(new ArrayList<>());
+        }
+        IntStream.range(0, bandCount)
+                .parallel()
+                .forEach(
+                        band -> {
+                            int top = bounds[band];
+                            int bottom = bounds[band + 1];
+                            if (top == bottom) return;
+
+                            Mat inBand = in.rowRange(top, bottom);
+                            Imgproc.findContours(
+                                    inBand,
+                                    bandContours.get(band),
+                                    m_bandHierarchies[band],
+                                    Imgproc.RETR_EXTERNAL,
+                                    Imgproc.CHAIN_APPROX_TC89_L1,
+                                    new Point(0, top));
+                            inBand.release();
+                        });
+
+        var contained = new ArrayList<MatOfPoint>();
+        var containedBoxes = new ArrayList<Rect>();
+        var regions = new ArrayList<Rect>();
+        for (int band = 0; band < bandCount; band++) {
+            int top = bounds[band];
+            int bottom = bounds[band + 1];
+            for (var contour : bandContours.get(band)) {
+                Rect box = Imgproc.boundingRect(contour);
+                boolean touchesTop = box.y == top && top != 0;
+                boolean touchesBottom = box.y + box.height == bottom && bottom != rows;
+                if (touchesTop || touchesBottom) {
+                    regions.add(expand(box, rows, cols));
+                    contour.release();
+                } else {
+                    contained.add(contour);
+                    containedBoxes.add(box);
+                }
+            }
+        }
+
+        if (regions.isEmpty()) {
+            m_foundContours.addAll(contained);
+            sortLikeFindContours(m_foundContours);
+            return;
+        }
+
+        // grow the regions until every blob is either wholly inside one, with a pixel of margin, or
+        // outside all of them
+        Regions.mergeOverlapping(regions);
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (int i = 0; i < regions.size(); i++) {
+                var region = regions.get(i);
+                for (var box : containedBoxes) {
+                    if (intersects(region, box) && !containsWithMargin(region, box, rows, cols)) {
+                        region = union(region, expand(box, rows, cols));
+                        grown = true;
+                    }
+                }
+                regions.set(i, region);
+            }
+            if (grown) Regions.mergeOverlapping(regions);
+        }
+
+        for (int i = 0; i < contained.size(); i++) {
+            var box = containedBoxes.get(i);
+            boolean inRegion = false;
+            for (var region : regions) {
+                if (intersects(region, box)) {
+                    inRegion = true;
+                    break;
+                }
+            }
+            if (inRegion) {
+                contained.get(i).release();
+            } else {
+                m_foundContours.add(contained.get(i));
+            }
+        }
+        for (var region : regions) {
+            findContours(in, region, m_foundContours);
+        }
+        sortLikeFindContours(m_foundContours);
+    }
 
-        return m_foundContours.stream().map(Contour::new).collect(Collectors.toList());
+    private static Rect expand(Rect box, int rows, int cols) {
+        return Regions.clip(box.x - 1, box.y - 1, box.width + 2, box.height + 2, cols, rows);
     }
 
-    public static class FindContoursParams {}
+    private static boolean intersects(Rect a, Rect b) {
+        return a.x < b.x + b.width
+                && b.x < a.x + a.width
+                && a.y < b.y + b.height
+                && b.y < a.y + a.height;
+    }
+
+    private static boolean containsWithMargin(Rect region, Rect box, int rows, int cols) {
+        var expanded = expand(box, rows, cols);
+        return expanded.x >= region.x
+                && expanded.y >= region.y
+                && expanded.x + expanded.width <= region.x + region.width
+                && expanded.y + expanded.height <= region.y + region.height;
+    }
+
+    private static Rect union(Rect a, Rect b) {
+        int left = Math.min(a.x, b.x);
+        int top = Math.min(a.y, b.y);
+        int right = Math.max(a.x + a.width, b.x + b.width);
+        int bottom = Math.max(a.y + a.height, b.y + b.height);
+        return new Rect(left, top, right - left, bottom - top);
+    }
+
+    // findContours returns contours in reverse order of where its raster scan first met them,
+    // that is by their topmost row, and then leftmost point in that row
+    private void sortLikeFindContours(List<MatOfPoint> contours) {
+        int count = contours.size();
+        if (m_sortKeys.length < count) m_sortKeys = new long[count];
+        for (int i = 0; i < count; i++) {
+            int length = (int) contours.get(i).total() * 2;
+            if (m_points.length < length) m_points = new int[length];
+            contours.get(i).get(0, 0, m_points);
+            int top = Integer.MAX_VALUE;
+            int left = Integer.MAX_VALUE;
+            for (int j = 0; j < length; j += 2) {
+                int x = m_points[j];
+                int y = m_points[j + 1];
+                if (y < top || (y == top && x < left)) {
+                    top = y;
+                    left = x;
+                }
+            }
+            // row, then column, then index, so sorting the packed keys sorts the contours
+            m_sortKeys[i] = ((long) top << (2 * KEY_BITS)) | ((long) left << KEY_BITS) | i;
+        }
+        Arrays.sort(m_sortKeys, 0, count);
+
+        m_sorted.clear();
+        for (int i = count - 1; i >= 0; i--) {
+            m_sorted.add(contours.get((int) (m_sortKeys[i] & KEY_MASK)));
+        }
+        contours.clear();
+        contours.addAll(m_sorted);
+        m_sorted.clear();
+    }
+
+    public static class FindContoursParams {
+        private final int m_bandCount;
+
+        public FindContoursParams() {
+            this(1);
+        }
+
+        /**
+        * Creates FindContoursParams.
+        *
+        * @param bandCount How many horizontal bands to split the image into and search in parallel.
+        *     1 searches the whole image on the calling thread.
+        */
+        public FindContoursParams(int bandCount) {
+            m_bandCount = Math.max(1, bandCount);
+        }
+
+        public int getBandCount() {
+            return m_bandCount;
+        }
+    }
 }
@@ -1,6 +1,8 @@
 package org.photonvision.vision.pipe.impl;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.imgproc.Imgproc;
 import org.photonvision.vision.opencv.CVShape;
@@ -8,34 +10,143 @@ import org.photonvision.vision.opencv.Contour;
 import org.photonvision.vision.opencv.ContourShape;
 import org.photonvision.vision.pipe.CVPipe;
 
+/**
+* Classifies contours as shapes and keeps those of the desired shape, in one pass. Each contour's
+* area and perimeter are only worked out once, and are used for the area and perimeter filters,
+* the polygon approximation's accuracy and the contour's circularity. Contours failing the filters
+* are never approximated. <br>
+* <br>
+* Round polygons only count as circles when circles are wanted, so regular pentagons, hexagons and
+* the like are still custom shapes otherwise.
+*/
 public class FindShapesPipe
         extends CVPipe<List<Contour>, List<CVShape>, FindShapesPipe.FindShapesParams> {
 
-    MatOfPoint2f approxCurve = new MatOfPoint2f();
+    // a regular polygon with this many sides or more is closer to a circle than anything else
+    private static final int MIN_CIRCLE_SIDES = 5;
 
+    // one approximation per band, reused, so bands can run at once without sharing anything
+    private MatOfPoint2f[] m_approx = new MatOfPoint2f[0];
+    // the shape of each contour, or null if it was filtered out
+    private ContourShape[] m_shapes = new ContourShape[0];
+
+    /**
+    * Runs the process for the pipe.
+    *
+    * @param in Input for pipe processing.
+    * @return Result of processing.
+    */
     @Override
     protected List<CVShape> process(List<Contour> in) {
-        approxCurve.release();
-        approxCurve = new MatOfPoint2f();
+        int count = in.size();
+        if (m_shapes.length < count) m_shapes = new ContourShape[count];
 
-        for (var contour : in) {
+        int bandCount = Math.min(params.getBandCount(), count);
+        if (m_approx.length < Math.max(1, bandCount)) {
+            var grown = new MatOfPoint2f[Math.max(1, bandCount)];
+            System.arraycopy(m_approx, 0, grown, 0, m_approx.length);
+            for (int i = m_approx.length; i < grown.length; i++) grown[i] = new MatOfPoint2f();
+            m_approx = grown;
+        }
 
-            if (params.desiredShape == ContourShape.Circle) {
+        if (bandCount > 1) {
+            // contours are independent, so each band takes an even share of them
+            IntStream.range(0, bandCount)
+                    .parallel()
+                    .forEach(
+                            band ->
+                                    classify(
+                                            in,
+                                            count * band / bandCount,
+                                            count * (band + 1) / bandCount,
+                                            m_approx[band]));
+        } else {
+            classify(in, 0, count, m_approx[0]);
+        }
 
-            } else {
-                int desiredSides = params.desiredShape.sides;
-                Imgproc.approxPolyDP(contour.getMat2f(), approxCurve, params.approxEpsilon, true);
+        var output = new ArrayList<CVShape>();
+        for (int i = 0; i < count; i++) {
+            if (m_shapes[i] == params.desiredShape) output.add(new CVShape(in.get(i), m_shapes[i]));
+            m_shapes[i] = null;
+        }
+        return output;
+    }
 
-                //                int actualSides = approxCurve.
-                //                switch ()
-                System.out.println("fugg");
+    private void classify(List<Contour> contours, int start, int end, MatOfPoint2f approx) {
+        for (int i = start; i < end; i++) {
+            var contour = contours.get(i);
+            double area = contour.getArea();
+            double perimeter = contour.getPerimeter();
+            if (area < params.minArea
+                    || area > params.maxArea
+                    || perimeter < params.minPeri
+                    || perimeter > params.maxPeri) {
+                m_shapes[i] = null;
+                continue;
             }
+            m_shapes[i] = shapeOf(contour, area, perimeter, approx);
         }
-        return List.of();
+    }
+
+    private ContourShape shapeOf(
+            Contour contour, double area, double perimeter, MatOfPoint2f approx) {
+        Imgproc.approxPolyDP(
+                contour.getMat2f(), approx, params.accuracyPercentage / 600.0 * perimeter, true);
+        int sides = approx.rows();
+        if (sides == ContourShape.Triangle.sides) return ContourShape.Triangle;
+        if (sides == ContourShape.Quadrilateral.sides) return ContourShape.Quadrilateral;
+
+        // 1 for a perfect circle, less for anything else
+        double circularity = perimeter > 0 ? 4 * Math.PI * area / (perimeter * perimeter) : 0;
+        if (params.desiredShape == ContourShape.Circle
+                && sides >= MIN_CIRCLE_SIDES
+                && circularity >= params.minCircularity) {
+            return ContourShape.Circle;
+        }
+        return ContourShape.Custom;
     }
 
     public static class FindShapesParams {
-        double approxEpsilon = 0.05;
-        ContourShape desiredShape;
+        public ContourShape desiredShape;
+        public double accuracyPercentage;
+        public double minArea;
+        public double maxArea;
+        public double minPeri;
+        public double maxPeri;
+        public double minCircularity;
+        private final int m_bandCount;
+
+        /**
+        * Creates FindShapesParams.
+        *
+        * @param accuracyPercentage How closely the polygon approximation follows the contour, as a
+        *     percentage of a sixth of its perimeter.
+        * @param minCircularity How close to a circle a contour with more than 4 sides must be to
+        *     count as one when looking for circles, from 0 to 1, where 1 is a perfect circle.
+        * @param bandCount How many groups of contours to classify in parallel. 1 classifies them
+        *     all on the calling thread.
+        */
+        public FindShapesParams(
+                ContourShape desiredShape,
+                double accuracyPercentage,
+                double minArea,
+                double maxArea,
+                double minPeri,
+                double maxPeri,
+                double minCircularity,
+                int bandCount) {
+            this.desiredShape = desiredShape;
+            this.accuracyPercentage = accuracyPercentage;
+            this.minArea = minArea;
+            this.maxArea = maxArea;
+            this.minPeri = minPeri;
+            this.maxPeri = maxPeri;
+            this.minCircularity = minCircularity;
+            m_bandCount = Math.max(1, bandCount);
+        }
+
+        public int getBandCount() {
+            return m_bandCount;
+        }
     }
 }
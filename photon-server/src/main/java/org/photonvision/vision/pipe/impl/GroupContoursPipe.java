@@ -9,10 +9,22 @@ import org.photonvision.vision.opencv.ContourIntersectionDirection;
 import org.photonvision.vision.pipe.CVPipe;
 import org.photonvision.vision.target.PotentialTarget;
 
+/**
+* Groups contours into targets. <br>
+* <br>
+* For groups of more than one contour, contours are ordered from right to left and swept over,
+* grouping runs of {@link ContourGroupingMode#count} neighbours where every neighbouring pair
+* intersects. Each neighbouring pair is tested at most once, and contours cache their ellipse fits,
+* so grouping is linear in the number of contours after sorting.
+*/
 public class GroupContoursPipe
         extends CVPipe<List<Contour>, List<PotentialTarget>, GroupContoursPipe.GroupContoursParams> {
 
+    private static final byte UNKNOWN = 0, LINKED = 1, UNLINKED = 2;
+
     private List<PotentialTarget> m_targets = new ArrayList<>();
+    private final List<Contour> m_sortedContours = new ArrayList<>();
+    private byte[] m_links = new byte[0];
 
     @Override
     protected List<PotentialTarget> process(List<Contour> input) {
@@ -29,40 +41,74 @@ public class GroupContoursPipe
         } else {
             int groupingCount = params.getGroup().count;
 
-            if (input.size() > groupingCount) {
-                input.sort(Contour.SortByMomentsX);
-                // also why reverse? shouldn't the sort comparator just get reversed?
-                Collections.reverse(input);
-                // find out next time on Code Mysteries...
-
-                for (int i = 0; i < input.size() - 1; i++) {
-                    // make a list of the desired count of contours to group
-                    List<Contour> groupingSet;
-                    try {
-                        groupingSet = input.subList(i, i + groupingCount);
-                    } catch (IndexOutOfBoundsException e) {
-                        continue;
-                    }
-                    try {
-
-                        // FYI: This method only takes 2 contours!
-                        Contour groupedContour =
-                                Contour.groupContoursByIntersection(
-                                        groupingSet.get(0), groupingSet.get(1), params.getIntersection());
-
-                        if (groupedContour != null) {
-                            m_targets.add(new PotentialTarget(groupedContour, groupingSet));
-                            i += (groupingCount - 1);
-                        }
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                }
+            if (input.size() >= groupingCount) {
+                // sort a copy, since the input belongs to the previous pipe. Sorting then reversing
+                // keeps the order of contours with equal x the same as it always has been
+                m_sortedContours.clear();
+                m_sortedContours.addAll(input);
+                m_sortedContours.sort(Contour.SortByMomentsX);
+                Collections.reverse(m_sortedContours);
+
+                groupSorted(groupingCount);
             }
         }
         return m_targets;
     }
 
+    private void groupSorted(int groupingCount) {
+        int size = m_sortedContours.size();
+        if (m_links.length < size) m_links = new byte[size];
+        for (int i = 0; i < size; i++) {
+            m_links[i] = UNKNOWN;
+        }
+
+        int start = 0;
+        while (start + groupingCount <= size) {
+            // the first neighbouring pair in this window that doesn't intersect. Every window
+            // starting at or before it contains that pair too, so the sweep can jump past it
+            int brokenAt = -1;
+            for (int i = start; i < start + groupingCount - 1; i++) {
+                if (!isLinked(i)) {
+                    brokenAt = i;
+                    break;
+                }
+            }
+
+            if (brokenAt >= 0) {
+                start = brokenAt + 1;
+                continue;
+            }
+
+            var groupingSet = m_sortedContours.subList(start, start + groupingCount);
+            try {
+                Contour groupedContour = Contour.combineContours(groupingSet);
+                if (groupedContour != null) {
+                    m_targets.add(new PotentialTarget(groupedContour, groupingSet));
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+            start += groupingCount;
+        }
+    }
+
+    // whether sorted contours i and i + 1 intersect, tested at most once per frame
+    private boolean isLinked(int i) {
+        if (m_links[i] == UNKNOWN) {
+            boolean linked;
+            try {
+                var first = m_sortedContours.get(i);
+                var second = m_sortedContours.get(i + 1);
+                linked = Contour.areIntersecting(first, second, params.getIntersection());
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                linked = false;
+            }
+            m_links[i] = linked ? LINKED : UNLINKED;
+        }
+        return m_links[i] == LINKED;
+    }
+
     public static class GroupContoursParams {
         private ContourGroupingMode m_group;
         private ContourIntersectionDirection m_intersection;
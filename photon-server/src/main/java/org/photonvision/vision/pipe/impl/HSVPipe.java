@@ -1,23 +1,74 @@
 package org.photonvision.vision.pipe.impl;
 
+import java.util.List;
+import java.util.stream.IntStream;
 import org.opencv.core.Core;
 import org.opencv.core.CvException;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 import org.photonvision.common.util.numbers.IntegerCouple;
+import org.photonvision.vision.opencv.HSVLookupTable;
+import org.photonvision.vision.opencv.Regions;
 import org.photonvision.vision.pipe.CVPipe;
 
 public class HSVPipe extends CVPipe<Mat, Mat, HSVPipe.HSVParams> {
+    private static final Scalar BLACK = new Scalar(0);
 
+    private Mat m_hsvMat = new Mat();
     private Mat m_outputMat = new Mat();
 
+    // only built once the lookup table is asked for
+    private HSVLookupTable m_lookupTable;
+
+    private List<Rect> m_regions;
+
+    // one HSV temporary per band, so bands can be converted in parallel
+    private Mat[] m_bandHsvMats = new Mat[0];
+
+    /**
+    * Only threshold inside some regions of the image, leaving the rest of the mask black.
+    *
+    * @param regions The regions, which must lie within the image, or null to threshold the whole
+    *     image.
+    */
+    public void setRegionsOfInterest(List<Rect> regions) {
+        m_regions = regions;
+    }
+
+    @Override
+    public void setParams(HSVParams params) {
+        super.setParams(params);
+        if (params.useLookupTable()) {
+            if (m_lookupTable == null) m_lookupTable = new HSVLookupTable();
+            m_lookupTable.setBounds(params.getHsvLower(), params.getHsvUpper());
+        }
+    }
+
     @Override
     protected Mat process(Mat in) {
-        in.copyTo(m_outputMat);
         try {
-            Imgproc.cvtColor(m_outputMat, m_outputMat, Imgproc.COLOR_BGR2HSV, 3);
-            Core.inRange(m_outputMat, params.getHsvLower(), params.getHsvUpper(), m_outputMat);
+            if (m_regions == null) {
+                // the lookup table already splits the image into bands itself
+                if (params.getBandCount() > 1 && !params.useLookupTable()) {
+                    thresholdBanded(in);
+                } else {
+                    threshold(in, m_outputMat);
+                }
+            } else {
+                // clearing the mask is a single memset, far cheaper than thresholding all of it
+                m_outputMat.create(in.rows(), in.cols(), CvType.CV_8UC1);
+                m_outputMat.setTo(BLACK);
+                for (var region : m_regions) {
+                    Mat inRegion = in.submat(region);
+                    Mat outRegion = m_outputMat.submat(region);
+                    threshold(inRegion, outRegion);
+                    inRegion.release();
+                    outRegion.release();
+                }
+            }
         } catch (CvException e) {
             System.err.println("(HSVPipe) Exception thrown by OpenCV: \n" + e.getMessage());
         }
@@ -25,13 +76,96 @@ public class HSVPipe extends CVPipe<Mat, Mat, HSVPipe.HSVParams> {
         return m_outputMat;
     }
 
+    private void thresholdBanded(Mat in) {
+        int bandCount = params.getBandCount();
+        if (m_bandHsvMats.length != bandCount) {
+            for (var mat : m_bandHsvMats) {
+                mat.release();
+            }
+            m_bandHsvMats = new Mat[bandCount];
+            for (int i = 0; i < bandCount; i++) {
+                m_bandHsvMats[i] = new Mat();
+            }
+        }
+
+        m_outputMat.create(in.rows(), in.cols(), CvType.CV_8UC1);
+        int[] bounds = Regions.splitRows(in.rows(), bandCount);
+        IntStream.range(0, bandCount)
+                .parallel()
+                .forEach(
+                        band -> {
+                            if (bounds[band] == bounds[band + 1]) return;
+                            Mat inBand = in.rowRange(bounds[band], bounds[band + 1]);
+                            Mat outBand = m_outputMat.rowRange(bounds[band], bounds[band + 1]);
+                            Imgproc.cvtColor(inBand, m_bandHsvMats[band], Imgproc.COLOR_BGR2HSV, 3);
+                            Core.inRange(
+                                    m_bandHsvMats[band],
+                                    params.getHsvLower(),
+                                    params.getHsvUpper(),
+                                    outBand);
+                            inBand.release();
+                            outBand.release();
+                        });
+    }
+
+    private void threshold(Mat in, Mat out) {
+        // out is either the whole mask or a view into it of the right size, so neither path
+        // reallocates it
+        if (params.useLookupTable()) {
+            m_lookupTable.apply(in, out);
+        } else {
+            Imgproc.cvtColor(in, m_hsvMat, Imgproc.COLOR_BGR2HSV, 3);
+            Core.inRange(m_hsvMat, params.getHsvLower(), params.getHsvUpper(), out);
+        }
+    }
+
     public static class HSVParams {
         private Scalar m_hsvLower;
         private Scalar m_hsvUpper;
+        private boolean m_useLookupTable;
+        private int m_bandCount = 1;
 
         public HSVParams(IntegerCouple hue, IntegerCouple saturation, IntegerCouple value) {
+            this(hue, saturation, value, false);
+        }
+
+        /**
+        * Creates HSVParams.
+        *
+        * @param hue The inclusive hue range, 0-180.
+        * @param saturation The inclusive saturation range, 0-255.
+        * @param value The inclusive value range, 0-255.
+        * @param useLookupTable Whether to threshold in a single pass with a {@link HSVLookupTable}
+        *     instead of converting to HSV with OpenCV. Both give the same mask.
+        */
+        public HSVParams(
+                IntegerCouple hue,
+                IntegerCouple saturation,
+                IntegerCouple value,
+                boolean useLookupTable) {
+            this(hue, saturation, value, useLookupTable, 1);
+        }
+
+        /**
+        * Creates HSVParams.
+        *
+        * @param hue The inclusive hue range, 0-180.
+        * @param saturation The inclusive saturation range, 0-255.
+        * @param value The inclusive value range, 0-255.
+        * @param useLookupTable Whether to threshold with a {@link HSVLookupTable}.
+        * @param bandCount How many horizontal bands to split the image into and threshold in
+        *     parallel. 1 thresholds the whole image on the calling thread.
+        */
+        public HSVParams(
+                IntegerCouple hue,
+                IntegerCouple saturation,
+                IntegerCouple value,
+                boolean useLookupTable,
+                int bandCount) {
             m_hsvLower = new Scalar(hue.getFirst(), saturation.getFirst(), value.getFirst());
             m_hsvUpper = new Scalar(hue.getSecond(), saturation.getSecond(), value.getSecond());
+            m_useLookupTable = useLookupTable;
+            m_bandCount = Math.max(1, bandCount);
         }
 
         public HSVParams(Scalar hsvLower, Scalar hsvUpper) {
@@ -46,5 +180,13 @@ public class HSVPipe extends CVPipe<Mat, Mat, HSVPipe.HSVParams> {
         public Scalar getHsvUpper() {
             return m_hsvUpper;
         }
+
+        public boolean useLookupTable() {
+            return m_useLookupTable;
+        }
+
+        public int getBandCount() {
+            return m_bandCount;
+        }
     }
 }
@@ -0,0 +1,117 @@
+package org.photonvision.vision.pipe.impl;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.vision.pipe.CVPipe;
+
+/**
+* Erodes, dilates, opens or closes the thresholded mask, in place. The mask has one channel, so
+* this is a third of the work of doing the same to the color image before thresholding.
+*/
+public class MorphologyPipe extends CVPipe<Mat, Mat, MorphologyPipe.MorphologyParams> {
+    private static final Point DEFAULT_ANCHOR = new Point(-1, -1);
+
+    // the structuring element is native, so keep it until its shape or size actually changes
+    private Mat m_kernel;
+    private KernelShape m_kernelShape;
+    private int m_kernelSize;
+
+    @Override
+    public void setParams(MorphologyParams params) {
+        super.setParams(params);
+        if (m_kernel == null
+                || m_kernelShape != params.getKernelShape()
+                || m_kernelSize != params.getKernelSize()) {
+            if (m_kernel != null) m_kernel.release();
+            m_kernelShape = params.getKernelShape();
+            m_kernelSize = params.getKernelSize();
+            m_kernel =
+                    Imgproc.getStructuringElement(
+                            m_kernelShape.morphShape, new Size(m_kernelSize, m_kernelSize));
+        }
+    }
+
+    @Override
+    protected Mat process(Mat in) {
+        if (params.getOperation() == Operation.None || params.getIterations() <= 0) return in;
+        Imgproc.morphologyEx(
+                in,
+                in,
+                params.getOperation().morphOp,
+                m_kernel,
+                DEFAULT_ANCHOR,
+                params.getIterations());
+        return in;
+    }
+
+    public enum Operation {
+        None(-1),
+        // shrink blobs, removing any thinner than the kernel
+        Erode(Imgproc.MORPH_ERODE),
+        // grow blobs, joining any closer than the kernel
+        Dilate(Imgproc.MORPH_DILATE),
+        // erode then dilate, removing speckles while keeping the size of everything else
+        Open(Imgproc.MORPH_OPEN),
+        // dilate then erode, filling small holes and gaps while keeping the size of blobs
+        Close(Imgproc.MORPH_CLOSE);
+
+        private final int morphOp;
+
+        Operation(int morphOp) {
+            this.morphOp = morphOp;
+        }
+    }
+
+    public enum KernelShape {
+        Rectangle(Imgproc.MORPH_RECT),
+        Ellipse(Imgproc.MORPH_ELLIPSE),
+        Cross(Imgproc.MORPH_CROSS);
+
+        private final int morphShape;
+
+        KernelShape(int morphShape) {
+            this.morphShape = morphShape;
+        }
+    }
+
+    public static class MorphologyParams {
+        private final Operation m_operation;
+        private final KernelShape m_kernelShape;
+        private final int m_kernelSize;
+        private final int m_iterations;
+
+        /**
+        * Creates MorphologyParams.
+        *
+        * @param operation What to do to the mask.
+        * @param kernelShape The shape of the structuring element.
+        * @param kernelSize The width and height of the structuring element.
+        * @param iterations How many times to apply the operation.
+        */
+        public MorphologyParams(
+                Operation operation, KernelShape kernelShape, int kernelSize, int iterations) {
+            m_operation = operation;
+            m_kernelShape = kernelShape;
+            m_kernelSize = Math.max(1, kernelSize);
+            m_iterations = iterations;
+        }
+
+        public Operation getOperation() {
+            return m_operation;
+        }
+
+        public KernelShape getKernelShape() {
+            return m_kernelShape;
+        }
+
+        public int getKernelSize() {
+            return m_kernelSize;
+        }
+
+        public int getIterations() {
+            return m_iterations;
+        }
+    }
+}
@@ -7,9 +7,17 @@ import org.photonvision.vision.opencv.DualMat;
 import org.photonvision.vision.pipe.CVPipe;
 
 public class OutputMatPipe extends CVPipe<DualMat, Mat, OutputMatPipe.OutputMatParams> {
-
-    private Mat m_outputMat = new Mat();
-
+    // the mask scaled down to a downscaled output image, reused across frames
+    private final Mat m_scaledMask = new Mat();
+
+    /**
+    * Process this pipe
+    *
+    * @param in The raw camera image (first) and the thresholded image (second). The raw camera
+    *     image may be smaller than the thresholded one, which is then scaled down to fit it.
+    * @return The raw camera image, overwritten with the thresholded image if it should be shown.
+    *     The output is always written into the raw camera Mat so that the caller owns it.
+    */
     @Override
     protected Mat process(DualMat in) {
         Mat rawCam = in.first;
@@ -17,16 +25,19 @@ public class OutputMatPipe extends CVPipe<DualMat, Mat, OutputMatPipe.OutputMatP
         if (params.showThreshold()) {
             // convert input mat
             try {
-                hsv.copyTo(m_outputMat);
-                Imgproc.cvtColor(m_outputMat, m_outputMat, Imgproc.COLOR_GRAY2BGR, 3);
+                if (hsv.cols() != rawCam.cols() || hsv.rows() != rawCam.rows()) {
+                    // nearest keeps the mask binary, and is the cheapest
+                    Imgproc.resize(
+                            hsv, m_scaledMask, rawCam.size(), 0, 0, Imgproc.INTER_NEAREST);
+                    hsv = m_scaledMask;
+                }
+                Imgproc.cvtColor(hsv, rawCam, Imgproc.COLOR_GRAY2BGR, 3);
             } catch (CvException e) {
                 System.err.println("(OutputMatPipe) Exception thrown by OpenCV: \n" + e.getMessage());
             }
-        } else {
-            m_outputMat = rawCam;
         }
 
-        return m_outputMat;
+        return rawCam;
     }
 
     public static class OutputMatParams {
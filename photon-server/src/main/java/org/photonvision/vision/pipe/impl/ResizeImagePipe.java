@@ -8,6 +8,7 @@ import org.photonvision.vision.pipe.CVPipe;
 
 /** Pipe that resizes an image to a given resolution */
 public class ResizeImagePipe extends CVPipe<Mat, Mat, ResizeImagePipe.ResizeImageParams> {
+    private final Size m_dividedSize = new Size();
 
     public ResizeImagePipe() {
         setParams(ResizeImageParams.DEFAULT);
@@ -26,14 +27,16 @@ public class ResizeImagePipe extends CVPipe<Mat, Mat, ResizeImagePipe.ResizeImag
     @Override
     protected Mat process(Mat in) {
 
+        Size size = params.getSize();
+
         // if a divisor is set, use that instead of a size.
         if (params.getDivisor() != null) {
-            int width = in.cols() / params.getDivisor().value;
-            int height = in.rows() / params.getDivisor().value;
-            setParams(new ResizeImageParams(width, height));
+            m_dividedSize.width = in.cols() / params.getDivisor().value;
+            m_dividedSize.height = in.rows() / params.getDivisor().value;
+            size = m_dividedSize;
         }
 
-        Imgproc.resize(in, in, params.getSize());
+        Imgproc.resize(in, in, size);
         return in;
     }
 
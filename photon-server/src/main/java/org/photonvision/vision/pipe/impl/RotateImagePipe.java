@@ -3,9 +3,10 @@ package org.photonvision.vision.pipe.impl;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.photonvision.vision.pipe.CVPipe;
+import org.photonvision.vision.pipe.ImageFlipMode;
 import org.photonvision.vision.pipe.ImageRotationMode;
 
-/** Pipe that rotates an image to a given orientation */
+/** Pipe that rotates, and then flips, an image to a given orientation */
 public class RotateImagePipe extends CVPipe<Mat, Mat, RotateImagePipe.RotateImageParams> {
 
     public RotateImagePipe() {
@@ -25,6 +26,7 @@ public class RotateImagePipe extends CVPipe<Mat, Mat, RotateImagePipe.RotateImag
     @Override
     protected Mat process(Mat in) {
         Core.rotate(in, in, params.rotation.value);
+        if (params.flip != ImageFlipMode.NONE) Core.flip(in, in, params.flip.value);
         return in;
     }
 
@@ -32,6 +34,7 @@ public class RotateImagePipe extends CVPipe<Mat, Mat, RotateImagePipe.RotateImag
         public static RotateImageParams DEFAULT = new RotateImageParams(ImageRotationMode.DEG_0);
 
         public ImageRotationMode rotation;
+        public ImageFlipMode flip = ImageFlipMode.NONE;
 
         public RotateImageParams() {
             rotation = DEFAULT.rotation;
@@ -40,5 +43,10 @@ public class RotateImagePipe extends CVPipe<Mat, Mat, RotateImagePipe.RotateImag
         public RotateImageParams(ImageRotationMode rotation) {
             this.rotation = rotation;
         }
+
+        public RotateImageParams(ImageRotationMode rotation, ImageFlipMode flip) {
+            this.rotation = rotation;
+            this.flip = flip;
+        }
     }
 }
@@ -6,10 +6,10 @@ import edu.wpi.first.wpilibj.geometry.Translation2d;
 import java.util.List;
 import org.apache.commons.math3.util.FastMath;
 import org.opencv.calib3d.Calib3d;
-import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.Scalar;
+import org.opencv.core.Point;
 import org.photonvision.vision.calibration.CameraCalibrationCoefficients;
 import org.photonvision.vision.pipe.CVPipe;
 import org.photonvision.vision.target.TargetModel;
@@ -18,31 +18,86 @@ import org.photonvision.vision.target.TrackedTarget;
 public class SolvePNPPipe
         extends CVPipe<List<TrackedTarget>, List<TrackedTarget>, SolvePNPPipe.SolvePNPPipeParams> {
 
-    private MatOfPoint2f imagePoints = new MatOfPoint2f();
+    // how many values are kept per solved target: image center x and y, match radius, rvec, tvec
+    private static final int POSE_STRIDE = 9;
+
+    private final MatOfPoint2f imagePoints = new MatOfPoint2f();
+    private final Mat rVec = new Mat(3, 1, CvType.CV_64FC1);
+    private final Mat tVec = new Mat(3, 1, CvType.CV_64FC1);
+
+    // all reused, so solving allocates nothing but each target's own pose
+    private float[] m_imagePointBuffer = new float[0];
+    private final double[] m_rVecBuffer = new double[3];
+    private final double[] m_tVecBuffer = new double[3];
+
+    // the poses solved last frame, and this frame, to warm start targets that haven't moved far
+    private double[] m_lastPoses = new double[0];
+    private int m_lastPoseCount;
+    private double[] m_poses = new double[0];
+    private int m_poseCount;
 
     @Override
     protected List<TrackedTarget> process(List<TrackedTarget> targetList) {
+        m_poseCount = 0;
         for (var target : targetList) {
             calculateTargetPose(target);
         }
+
+        var swap = m_lastPoses;
+        m_lastPoses = m_poses;
+        m_poses = swap;
+        m_lastPoseCount = m_poseCount;
         return targetList;
     }
 
     private void calculateTargetPose(TrackedTarget target) {
-        Pose2d targetPose;
-
         var corners = target.getTargetCorners();
         if (corners == null
                 || corners.isEmpty()
                 || params.cameraCoefficients.getCameraIntrinsicsMat() == null
                 || params.cameraCoefficients.getCameraExtrinsicsMat() == null) {
-            targetPose = new Pose2d();
             return;
         }
-        this.imagePoints.fromList(corners);
+        long startNanos = System.nanoTime();
+        setImagePoints(corners);
+
+        var center = target.getMinAreaRect().center;
+        var box = target.m_mainContour.getBoundingRect();
+        // a target whose center moved less than half its size since last frame is taken to be the
+        // same one
+        double matchRadius = Math.max(box.width, box.height) / 2.0;
+
+        var method = params.solveMethod;
+        if (method == SolveMethod.IPPE && corners.size() != 4) method = SolveMethod.ITERATIVE;
+        if (method == SolveMethod.WARM_STARTED) {
+            if (!loadPreviousPose(center.x, center.y, matchRadius)) method = SolveMethod.ITERATIVE;
+        }
+
+        if (!solve(method)) {
+            if (method == SolveMethod.ITERATIVE) return;
+            method = SolveMethod.ITERATIVE;
+            if (!solve(method)) return;
+        }
+
+        target.setCameraRelativeTvec(tVec);
+        target.setCameraRelativeRvec(rVec);
+
+        rVec.get(0, 0, m_rVecBuffer);
+        savePose(center.x, center.y, matchRadius);
+
+        var targetPose =
+                correctLocationForCameraPitch(m_tVecBuffer, m_rVecBuffer, params.cameraPitchAngle);
+        target.setRobotRelativePose(targetPose);
+        target.setPoseSolveStats(System.nanoTime() - startNanos, method);
+    }
 
-        var rVec = new Mat();
-        var tVec = new Mat();
+    /**
+    * Solve for the pose into rVec and tVec, and tVec into m_tVecBuffer.
+    *
+    * @return Whether the pose can be used. Only solving from scratch is trusted as is.
+    */
+    private boolean solve(SolveMethod method) {
+        int flags = method == SolveMethod.IPPE ? Calib3d.SOLVEPNP_IPPE : Calib3d.SOLVEPNP_ITERATIVE;
         try {
             Calib3d.solvePnP(
                     params.targetModel.getRealWorldTargetCoordinates(),
@@ -50,50 +105,112 @@ public class SolvePNPPipe
                     params.cameraCoefficients.getCameraIntrinsicsMat(),
                     params.cameraCoefficients.getCameraExtrinsicsMat(),
                     rVec,
-                    tVec);
+                    tVec,
+                    method == SolveMethod.WARM_STARTED,
+                    flags);
         } catch (Exception e) {
-            e.printStackTrace();
-            return;
+            // IPPE throws for target models that aren't planar, which solving from scratch handles
+            if (method == SolveMethod.ITERATIVE) e.printStackTrace();
+            return false;
         }
+        tVec.get(0, 0, m_tVecBuffer);
+        // a guess far enough off can converge behind the camera
+        return method == SolveMethod.ITERATIVE || m_tVecBuffer[2] > 0;
+    }
 
-        target.setCameraRelativeTvec(tVec);
-        target.setCameraRelativeRvec(rVec);
+    private void setImagePoints(List<Point> corners) {
+        int count = corners.size();
+        if (m_imagePointBuffer.length != count * 2) m_imagePointBuffer = new float[count * 2];
+        for (int i = 0; i < count; i++) {
+            var corner = corners.get(i);
+            m_imagePointBuffer[2 * i] = (float) corner.x;
+            m_imagePointBuffer[2 * i + 1] = (float) corner.y;
+        }
+        imagePoints.create(count, 1, CvType.CV_32FC2);
+        imagePoints.put(0, 0, m_imagePointBuffer);
+    }
 
-        targetPose = correctLocationForCameraPitch(tVec, rVec, params.cameraPitchAngle);
+    /**
+    * Put the pose of the closest target solved last frame in rVec and tVec, if one is close
+    * enough.
+    *
+    * @return Whether a pose was found.
+    */
+    private boolean loadPreviousPose(double x, double y, double matchRadius) {
+        int closest = -1;
+        double closestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < m_lastPoseCount; i++) {
+            int offset = i * POSE_STRIDE;
+            double dx = m_lastPoses[offset] - x;
+            double dy = m_lastPoses[offset + 1] - y;
+            double distance = dx * dx + dy * dy;
+            double radius = Math.min(matchRadius, m_lastPoses[offset + 2]);
+            if (distance < radius * radius && distance < closestDistance) {
+                closest = i;
+                closestDistance = distance;
+            }
+        }
+        if (closest == -1) return false;
 
-        target.setRobotRelativePose(targetPose);
+        int offset = closest * POSE_STRIDE;
+        System.arraycopy(m_lastPoses, offset + 3, m_rVecBuffer, 0, 3);
+        System.arraycopy(m_lastPoses, offset + 6, m_tVecBuffer, 0, 3);
+        rVec.put(0, 0, m_rVecBuffer);
+        tVec.put(0, 0, m_tVecBuffer);
+        return true;
     }
 
-    Mat rotationMatrix = new Mat();
-    Mat inverseRotationMatrix = new Mat();
-    Mat pzeroWorld = new Mat();
-    Mat kMat = new Mat();
-    Mat scaledTvec;
+    private void savePose(double x, double y, double matchRadius) {
+        if (m_poses.length < (m_poseCount + 1) * POSE_STRIDE) {
+            var grown = new double[(m_poseCount + 1) * POSE_STRIDE * 2];
+            System.arraycopy(m_poses, 0, grown, 0, m_poseCount * POSE_STRIDE);
+            m_poses = grown;
+        }
+        int offset = m_poseCount * POSE_STRIDE;
+        m_poses[offset] = x;
+        m_poses[offset + 1] = y;
+        m_poses[offset + 2] = matchRadius;
+        System.arraycopy(m_rVecBuffer, 0, m_poses, offset + 3, 3);
+        System.arraycopy(m_tVecBuffer, 0, m_poses, offset + 6, 3);
+        m_poseCount++;
+    }
 
     @SuppressWarnings("DuplicatedCode") // yes I know we have another solvePNP pipe
-    private Pose2d correctLocationForCameraPitch(Mat tVec, Mat rVec, Rotation2d cameraPitchAngle) {
+    private static Pose2d correctLocationForCameraPitch(
+            double[] tVec, double[] rVec, Rotation2d cameraPitchAngle) {
         // Algorithm from team 5190 Green Hope Falcons. Can also be found in Ligerbot's vision
         // whitepaper
         var tiltAngle = cameraPitchAngle.getRadians();
 
         // the left/right distance to the target, unchanged by tilt.
-        var x = tVec.get(0, 0)[0];
+        var x = tVec[0];
 
         // Z distance in the flat plane is given by
         // Z_field = z cos theta + y sin theta.
         // Z is the distance "out" of the camera (straight forward).
-        var zField =
-                tVec.get(2, 0)[0] * FastMath.cos(tiltAngle) + tVec.get(1, 0)[0] * FastMath.sin(tiltAngle);
+        var zField = tVec[2] * FastMath.cos(tiltAngle) + tVec[1] * FastMath.sin(tiltAngle);
 
-        Calib3d.Rodrigues(rVec, rotationMatrix);
-        Core.transpose(rotationMatrix, inverseRotationMatrix);
-
-        scaledTvec = matScale(tVec, -1);
-
-        Core.gemm(inverseRotationMatrix, scaledTvec, 1, kMat, 0, pzeroWorld);
-        scaledTvec.release();
+        // the camera's position in the target's frame is R^T * -tVec. R^T rotates by the opposite
+        // angle about the same axis, so Rodrigues' formula gives it without building the matrix.
+        double theta = FastMath.sqrt(rVec[0] * rVec[0] + rVec[1] * rVec[1] + rVec[2] * rVec[2]);
+        double px = -tVec[0];
+        double py = -tVec[1];
+        double pz = -tVec[2];
+        double pzeroX = px;
+        double pzeroZ = pz;
+        if (theta > 1e-12) {
+            double kx = rVec[0] / theta;
+            double ky = rVec[1] / theta;
+            double kz = rVec[2] / theta;
+            double cos = FastMath.cos(theta);
+            // negative, since it's the inverse rotation
+            double sin = -FastMath.sin(theta);
+            double dot = (kx * px + ky * py + kz * pz) * (1 - cos);
+            pzeroX = px * cos + (ky * pz - kz * py) * sin + kx * dot;
+            pzeroZ = pz * cos + (kx * py - ky * px) * sin + kz * dot;
+        }
 
-        var angle2 = FastMath.atan2(pzeroWorld.get(0, 0)[0], pzeroWorld.get(2, 0)[0]);
+        var angle2 = FastMath.atan2(pzeroX, pzeroZ);
 
         // target rotation is the rotation of the target relative to straight ahead. this number
         // should be unchanged if the robot purely translated left/right.
@@ -108,32 +225,37 @@ public class SolvePNPPipe
         return new Pose2d(targetLocation, new Rotation2d(targetRotation));
     }
 
-    /**
-    * Element-wise scale a matrix by a given factor
-    *
-    * @param src the source matrix
-    * @param factor by how much to scale each element
-    * @return the scaled matrix
-    */
-    private static Mat matScale(Mat src, double factor) {
-        Mat dst = new Mat(src.rows(), src.cols(), src.type());
-        Scalar s = new Scalar(factor);
-        Core.multiply(src, s, dst);
-        return dst;
+    public enum SolveMethod {
+        // solve each frame from scratch
+        ITERATIVE,
+        // start from the pose of the same target last frame, when there is one
+        WARM_STARTED,
+        // OpenCV's planar solver, for targets with 4 corners
+        IPPE
     }
 
     public static class SolvePNPPipeParams {
         private final CameraCalibrationCoefficients cameraCoefficients;
         private final Rotation2d cameraPitchAngle;
         private final TargetModel targetModel;
+        private final SolveMethod solveMethod;
 
         public SolvePNPPipeParams(
                 CameraCalibrationCoefficients cameraCoefficients,
                 Rotation2d cameraPitchAngle,
                 TargetModel targetModel) {
+            this(cameraCoefficients, cameraPitchAngle, targetModel, SolveMethod.ITERATIVE);
+        }
+
+        public SolvePNPPipeParams(
+                CameraCalibrationCoefficients cameraCoefficients,
+                Rotation2d cameraPitchAngle,
+                TargetModel targetModel,
+                SolveMethod solveMethod) {
             this.cameraCoefficients = cameraCoefficients;
             this.cameraPitchAngle = cameraPitchAngle;
             this.targetModel = targetModel;
+            this.solveMethod = solveMethod;
         }
     }
 }
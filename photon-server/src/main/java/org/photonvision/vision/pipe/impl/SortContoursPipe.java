@@ -1,40 +1,127 @@
 package org.photonvision.vision.pipe.impl;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import org.apache.commons.math3.util.FastMath;
+import org.opencv.core.Point;
 import org.photonvision.vision.frame.FrameStaticProperties;
 import org.photonvision.vision.opencv.ContourSortMode;
 import org.photonvision.vision.pipe.CVPipe;
 import org.photonvision.vision.target.PotentialTarget;
 
+/**
+* Picks the best targets, in order, by the sort mode. Each target's sort key is worked out once,
+* and only the best few are kept, in a bounded heap, so the whole list is never sorted. The order
+* is the same as a stable sort by the sort mode's comparator.
+*/
 public class SortContoursPipe
         extends CVPipe<
                 List<PotentialTarget>, List<PotentialTarget>, SortContoursPipe.SortContoursParams> {
 
-    private List<PotentialTarget> m_sortedContours = new ArrayList<>();
+    // all grown as needed and reused, so nothing is allocated once they are big enough
+    private double[] m_keys = new double[0];
+    private int[] m_heap = new int[0];
+    private final List<PotentialTarget> m_selected = new ArrayList<>();
+
+    // 1 for the modes sorting by ascending key, -1 for the reversed ones
+    private int m_direction;
 
     @Override
     protected List<PotentialTarget> process(List<PotentialTarget> in) {
-        m_sortedContours.clear();
-        if (in.size() > 0) {
-            m_sortedContours.addAll(in);
-            if (params.getSortMode() != ContourSortMode.Centermost) {
-                m_sortedContours.sort(params.getSortMode().getComparator());
-            } else {
-                m_sortedContours.sort(Comparator.comparingDouble(this::calcSquareCenterDistance));
+        m_selected.clear();
+        int count = in.size();
+        int limit = Math.min(count, params.getMaxTargets());
+        if (limit <= 0) return m_selected;
+
+        if (m_keys.length < count) m_keys = new double[count];
+        if (m_heap.length < limit) m_heap = new int[limit];
+        m_direction = isReversed(params.getSortMode()) ? -1 : 1;
+        for (int i = 0; i < count; i++) {
+            m_keys[i] = calcSortKey(in.get(i));
+        }
+
+        // the heap root is the worst of the targets kept so far, so anything better replaces it
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size < limit) {
+                m_heap[size] = i;
+                siftUp(size);
+                size++;
+            } else if (comesBefore(i, m_heap[0])) {
+                m_heap[0] = i;
+                siftDown(0, size);
             }
         }
 
-        return new ArrayList<>(
-                m_sortedContours.subList(0, Math.min(in.size(), params.getMaxTargets() - 1)));
+        // heapsort what's left, which leaves the best target first
+        for (int end = size - 1; end > 0; end--) {
+            int worst = m_heap[0];
+            m_heap[0] = m_heap[end];
+            m_heap[end] = worst;
+            siftDown(0, end);
+        }
+        for (int i = 0; i < size; i++) {
+            m_selected.add(in.get(m_heap[i]));
+        }
+        return m_selected;
+    }
+
+    private double calcSortKey(PotentialTarget target) {
+        switch (params.getSortMode()) {
+            case Largest:
+            case Smallest:
+                return target.getArea();
+            case Highest:
+            case Lowest:
+                return target.getMinAreaRect().center.y;
+            case Leftmost:
+            case Rightmost:
+                return target.getMinAreaRect().center.x;
+            case Centermost:
+                Point center = target.getMinAreaRect().center;
+                double dx = params.getCamProperties().centerX - center.x;
+                double dy = params.getCamProperties().centerY - center.y;
+                return FastMath.sqrt(dx * dx + dy * dy);
+            default:
+                return 0;
+        }
     }
 
-    private double calcSquareCenterDistance(PotentialTarget rect) {
-        return FastMath.sqrt(
-                FastMath.pow(params.getCamProperties().centerX - rect.getMinAreaRect().center.x, 2)
-                        + FastMath.pow(params.getCamProperties().centerY - rect.getMinAreaRect().center.y, 2));
+    private static boolean isReversed(ContourSortMode sortMode) {
+        return sortMode == ContourSortMode.Smallest
+                || sortMode == ContourSortMode.Lowest
+                || sortMode == ContourSortMode.Rightmost;
+    }
+
+    // whether target a is ordered before target b. Ties go to the earlier target, like a stable
+    // sort would leave them.
+    private boolean comesBefore(int a, int b) {
+        int order = m_direction * Double.compare(m_keys[a], m_keys[b]);
+        return order < 0 || (order == 0 && a < b);
+    }
+
+    private void siftUp(int index) {
+        int target = m_heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!comesBefore(m_heap[parent], target)) break;
+            m_heap[index] = m_heap[parent];
+            index = parent;
+        }
+        m_heap[index] = target;
+    }
+
+    private void siftDown(int index, int size) {
+        int target = m_heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) break;
+            if (child + 1 < size && comesBefore(m_heap[child], m_heap[child + 1])) child++;
+            if (!comesBefore(target, m_heap[child])) break;
+            m_heap[index] = m_heap[child];
+            index = child;
+        }
+        m_heap[index] = target;
     }
 
     public static class SortContoursParams {
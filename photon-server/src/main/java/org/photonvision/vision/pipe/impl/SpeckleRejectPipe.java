@@ -13,7 +13,7 @@ public class SpeckleRejectPipe
     @Override
     protected List<Contour> process(List<Contour> in) {
         for (var c : m_despeckledContours) {
-            c.mat.release();
+            c.release();
         }
         m_despeckledContours.clear();
 
@@ -0,0 +1,50 @@
+package org.photonvision.vision.pipe.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.photonvision.vision.opencv.Contour;
+import org.photonvision.vision.pipe.CVPipe;
+import org.photonvision.vision.pipe.ImageTransform;
+
+/**
+* Moves contours found in the camera's native image to where they would be in the rotated and
+* flipped image, so the image itself never needs rotating. Only the points are copied, so this is
+* far cheaper than rotating the whole frame.
+*/
+public class TransformContoursPipe
+        extends CVPipe<
+                List<Contour>, List<Contour>, TransformContoursPipe.TransformContoursParams> {
+
+    @Override
+    protected List<Contour> process(List<Contour> in) {
+        var transform = params.getTransform();
+        if (transform == null || transform.isIdentity()) return in;
+
+        var out = new ArrayList<Contour>(in.size());
+        for (var contour : in) {
+            int[] points = contour.getPoints().clone();
+            transform.apply(points);
+            out.add(new Contour(points));
+            // nothing downstream sees the untransformed contour, so free anything it materialized
+            contour.release();
+        }
+        return out;
+    }
+
+    public static class TransformContoursParams {
+        private final ImageTransform m_transform;
+
+        /**
+        * Creates TransformContoursParams.
+        *
+        * @param transform The transform to apply, or null to pass contours through untouched.
+        */
+        public TransformContoursParams(ImageTransform transform) {
+            m_transform = transform;
+        }
+
+        public ImageTransform getTransform() {
+            return m_transform;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.util.Objects;
 import org.photonvision.common.util.numbers.DoubleCouple;
 import org.photonvision.common.util.numbers.IntegerCouple;
 import org.photonvision.vision.opencv.ContourSortMode;
+import org.photonvision.vision.pipe.impl.MorphologyPipe;
 import org.photonvision.vision.target.RobotOffsetPointMode;
 import org.photonvision.vision.target.TargetOffsetPointEdge;
 import org.photonvision.vision.target.TargetOrientation;
@@ -18,12 +19,33 @@ public class AdvancedPipelineSettings extends CVPipelineSettings {
     public IntegerCouple hsvSaturation = new IntegerCouple(50, 255);
     public IntegerCouple hsvValue = new IntegerCouple(50, 255);
 
+    // threshold with a prebuilt color lookup table instead of converting every frame to HSV
+    public boolean hsvUseLookupTable = false;
+
+    // split frames into horizontal bands, and erode/dilate, threshold and find contours in each on
+    // its own core
+    public boolean tiledProcessing = false;
+
+    // threshold and find contours only around where targets were last frame, scanning the whole
+    // frame every roiFullScanInterval frames or when no targets were found
+    public boolean roiTrackingEnabled = false;
+    public int roiFullScanInterval = 15;
+
     public boolean outputShowThresholded = false;
     public boolean outputShowMultipleTargets = false;
 
+    // erode and/or dilate the color image before thresholding
     public boolean erode = false;
     public boolean dilate = false;
 
+    // erode, dilate, open or close the mask after thresholding, which is cheaper than eroding and
+    // dilating the color image
+    public MorphologyPipe.Operation maskMorphology = MorphologyPipe.Operation.None;
+    public MorphologyPipe.KernelShape morphologyKernelShape = MorphologyPipe.KernelShape.Rectangle;
+    // the kernel size is shared with erode and dilate
+    public int morphologyKernelSize = 5;
+    public int maskMorphologyIterations = 1;
+
     public DoubleCouple contourArea = new DoubleCouple(0.0, 100.0);
     public DoubleCouple contourRatio = new DoubleCouple(0.0, 20.0);
     public DoubleCouple contourExtent = new DoubleCouple(0.0, 100.0);
@@ -51,16 +73,36 @@ public class AdvancedPipelineSettings extends CVPipelineSettings {
     public double offsetDualLineM = 1;
     public double offsetDualLineB = 0;
 
+    @Override
+    public AdvancedPipelineSettings clone() {
+        var copy = (AdvancedPipelineSettings) super.clone();
+        copy.hsvHue = new IntegerCouple(hsvHue.getFirst(), hsvHue.getSecond());
+        copy.hsvSaturation = new IntegerCouple(hsvSaturation.getFirst(), hsvSaturation.getSecond());
+        copy.hsvValue = new IntegerCouple(hsvValue.getFirst(), hsvValue.getSecond());
+        copy.contourArea = new DoubleCouple(contourArea.getFirst(), contourArea.getSecond());
+        copy.contourRatio = new DoubleCouple(contourRatio.getFirst(), contourRatio.getSecond());
+        copy.contourExtent = new DoubleCouple(contourExtent.getFirst(), contourExtent.getSecond());
+        copy.offsetCalibrationPoint =
+                new DoubleCouple(offsetCalibrationPoint.getFirst(), offsetCalibrationPoint.getSecond());
+        return copy;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         if (!super.equals(o)) return false;
         AdvancedPipelineSettings that = (AdvancedPipelineSettings) o;
-        return outputShowThresholded == that.outputShowThresholded
+        return hsvUseLookupTable == that.hsvUseLookupTable
+                && tiledProcessing == that.tiledProcessing
+                && roiTrackingEnabled == that.roiTrackingEnabled
+                && roiFullScanInterval == that.roiFullScanInterval
+                && outputShowThresholded == that.outputShowThresholded
                 && outputShowMultipleTargets == that.outputShowMultipleTargets
                 && erode == that.erode
                 && dilate == that.dilate
+                && morphologyKernelSize == that.morphologyKernelSize
+                && maskMorphologyIterations == that.maskMorphologyIterations
                 && contourSpecklePercentage == that.contourSpecklePercentage
                 && Double.compare(that.offsetDualLineM, offsetDualLineM) == 0
                 && Double.compare(that.offsetDualLineB, offsetDualLineB) == 0
@@ -70,6 +112,8 @@ public class AdvancedPipelineSettings extends CVPipelineSettings {
                 && contourArea.equals(that.contourArea)
                 && contourRatio.equals(that.contourRatio)
                 && contourExtent.equals(that.contourExtent)
+                && maskMorphology == that.maskMorphology
+                && morphologyKernelShape == that.morphologyKernelShape
                 && contourSortMode == that.contourSortMode
                 && contourTargetOffsetPointEdge == that.contourTargetOffsetPointEdge
                 && contourTargetOrientation == that.contourTargetOrientation
@@ -84,10 +128,18 @@ public class AdvancedPipelineSettings extends CVPipelineSettings {
                 hsvHue,
                 hsvSaturation,
                 hsvValue,
+                hsvUseLookupTable,
+                tiledProcessing,
+                roiTrackingEnabled,
+                roiFullScanInterval,
                 outputShowThresholded,
                 outputShowMultipleTargets,
                 erode,
                 dilate,
+                maskMorphology,
+                morphologyKernelShape,
+                morphologyKernelSize,
+                maskMorphologyIterations,
                 contourArea,
                 contourRatio,
                 contourExtent,
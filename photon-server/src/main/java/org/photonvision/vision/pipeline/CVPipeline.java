@@ -1,32 +1,171 @@
 package org.photonvision.vision.pipeline;
 
+import java.lang.reflect.Field;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.metrics.LatencyHistogram;
+import org.photonvision.common.metrics.MetricsRegistry;
 import org.photonvision.common.util.math.MathUtils;
 import org.photonvision.vision.frame.Frame;
+import org.photonvision.vision.frame.FrameDivisor;
 import org.photonvision.vision.frame.FrameStaticProperties;
+import org.photonvision.vision.opencv.CVMat;
+import org.photonvision.vision.pipe.CVPipe;
 
 public abstract class CVPipeline<R extends CVPipelineResult, S extends CVPipelineSettings> {
     protected S settings;
 
+    // what the pipe params were last built from
+    private S appliedSettings;
+    private int appliedSettingsVersion;
+    // a copy of the settings the params were built from, as settings are public fields that may be
+    // changed in place without markDirty()
+    private S appliedSettingsCopy;
+    private FrameStaticProperties appliedFrameStaticProperties;
+
+    private String metricsScope;
+    private LatencyHistogram latencyHistogram;
+
     protected abstract void setPipeParams(FrameStaticProperties frameStaticProperties, S settings);
 
-    protected abstract R process(Frame frame, S settings);
+    /**
+    * Runs the pipeline on a frame.
+    *
+    * @param frame The frame to process.
+    * @param settings The settings of this pipeline.
+    * @param produceOutput Whether anyone will look at the output frame. If false, pipes that only
+    *     produce the output image may be skipped and the result may have no output frame.
+    * @return The result.
+    */
+    protected abstract R process(Frame frame, S settings, boolean produceOutput);
 
     public S getSettings() {
         return settings;
     }
 
     public R run(Frame frame) {
+        return run(frame, true);
+    }
+
+    /**
+    * Runs the pipeline on a frame.
+    *
+    * @param frame The frame to process.
+    * @param produceOutput Whether to draw the output frame. Skipping it saves the copy and every
+    *     draw pipe when nobody is watching the stream.
+    * @return The result, with a null output frame if none was produced.
+    */
+    public R run(Frame frame, boolean produceOutput) {
         long pipelineStartNanos = System.nanoTime();
 
         if (settings == null) {
             throw new RuntimeException("No settings provided for pipeline!");
         }
-        setPipeParams(frame.frameStaticProperties, settings);
+        updatePipeParams(frame.frameStaticProperties);
 
-        R result = process(frame, settings);
+        R result = process(frame, settings, produceOutput);
 
-        result.setLatencyMillis(MathUtils.nanosToMillis(System.nanoTime() - pipelineStartNanos));
+        long pipelineNanos = System.nanoTime() - pipelineStartNanos;
+        result.setLatencyMillis(MathUtils.nanosToMillis(pipelineNanos));
+        if (latencyHistogram != null) latencyHistogram.record(pipelineNanos);
 
         return result;
     }
+
+    /**
+    * Rebuild the pipe params if the settings or frame properties changed since they were last
+    * built. Does nothing, and allocates nothing, otherwise. Settings count as changed if they were
+    * marked dirty, or no longer equal the ones the params were built from.
+    *
+    * @param frameStaticProperties The properties of the frame about to be processed.
+    * @return Whether the params were rebuilt.
+    */
+    @SuppressWarnings("unchecked")
+    boolean updatePipeParams(FrameStaticProperties frameStaticProperties) {
+        int version = settings.getVersion();
+        if (settings == appliedSettings
+                && version == appliedSettingsVersion
+                && frameStaticProperties == appliedFrameStaticProperties
+                && settings.equals(appliedSettingsCopy)) {
+            return false;
+        }
+
+        // copied first, so a change made while the params are being built is seen next frame
+        appliedSettingsCopy = (S) settings.clone();
+        setPipeParams(frameStaticProperties, settings);
+        appliedSettings = settings;
+        appliedSettingsVersion = version;
+        appliedFrameStaticProperties = frameStaticProperties;
+        return true;
+    }
+
+    /**
+    * Copy the input image into a new pooled {@link CVMat} for the output frame, downscaling it on
+    * the way so everything drawn on it afterwards only touches the pixels that will be streamed.
+    *
+    * @param input The input image, which is left untouched.
+    * @param divisor How much smaller to make the output image.
+    * @return The output image.
+    */
+    protected static CVMat borrowOutputImage(Mat input, FrameDivisor divisor) {
+        int d = divisor == null ? 1 : divisor.value;
+        var output = CVMat.borrow(input.rows() / d, input.cols() / d, input.type());
+        if (d == 1) {
+            input.copyTo(output.getMat());
+        } else {
+            // area averages the pixels dropped, so thin targets don't alias away
+            Mat outputMat = output.getMat();
+            Imgproc.resize(input, outputMat, outputMat.size(), 0, 0, Imgproc.INTER_AREA);
+        }
+        return output;
+    }
+
+    /**
+    * @param properties The properties of a frame.
+    * @param divisor How much smaller an output image is than the frame.
+    * @return The properties of the output image.
+    */
+    protected static FrameStaticProperties divide(
+            FrameStaticProperties properties, FrameDivisor divisor) {
+        if (divisor == null || divisor == FrameDivisor.NONE) return properties;
+        return new FrameStaticProperties(
+                properties.imageWidth / divisor.value,
+                properties.imageHeight / divisor.value,
+                properties.fov);
+    }
+
+    /**
+    * Record the latency of this pipeline and each of its pipes in the {@link MetricsRegistry},
+    * under the given camera. Cheap to call every frame once bound.
+    *
+    * @param cameraName The name of the camera this pipeline is running on.
+    */
+    public void setMetricsScope(String cameraName) {
+        if (cameraName.equals(metricsScope)) return;
+        metricsScope = cameraName;
+
+        var registry = MetricsRegistry.getInstance();
+        String pipelineName = getClass().getSimpleName();
+        if (settings != null) pipelineName += "#" + settings.pipelineIndex;
+        latencyHistogram = registry.getHistogram(MetricsRegistry.name(cameraName, pipelineName));
+
+        // pipes are plain fields of the concrete pipeline, so find them once here, and name them
+        // after their field as a pipeline may have several pipes of the same class
+        for (Class<?> c = getClass(); c != CVPipeline.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!CVPipe.class.isAssignableFrom(field.getType())) continue;
+                try {
+                    field.setAccessible(true);
+                    var pipe = (CVPipe<?, ?, ?>) field.get(this);
+                    if (pipe == null) continue;
+                    String pipeName = field.getName();
+                    pipe.setLatencyHistogram(
+                            registry.getHistogram(MetricsRegistry.name(cameraName, pipelineName, pipeName)));
+                } catch (IllegalAccessException e) {
+                    // not fatal, the pipe just won't have its own histogram
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
 }
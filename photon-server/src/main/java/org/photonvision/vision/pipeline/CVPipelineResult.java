@@ -11,11 +11,24 @@ public class CVPipelineResult implements Releasable {
     public final List<TrackedTarget> targets;
     public final Frame outputFrame;
 
+    /**
+    * Creates a CVPipelineResult.
+    *
+    * @param processingMillis The time spent in the pipeline's pipes.
+    * @param targets The targets found in the frame.
+    * @param outputFrame The frame to show, or null if none was produced. The result takes over the caller's hold on it, so the
+    *     pipeline must not reuse its image for later frames. Consumers that keep the frame past
+    *     the result's lifetime should {@link Frame#retain()} it.
+    */
     public CVPipelineResult(double processingMillis, List<TrackedTarget> targets, Frame outputFrame) {
         this.processingMillis = processingMillis;
         this.targets = targets;
+        this.outputFrame = outputFrame;
+    }
 
-        this.outputFrame = Frame.copyFrom(outputFrame);
+    /** @return Whether this result has a frame to show. */
+    public boolean hasOutputFrame() {
+        return outputFrame != null;
     }
 
     public boolean hasTargets() {
@@ -26,7 +39,7 @@ public class CVPipelineResult implements Releasable {
         for (TrackedTarget tt : targets) {
             tt.release();
         }
-        outputFrame.release();
+        if (outputFrame != null) outputFrame.release();
     }
 
     public double getLatencyMillis() {
@@ -1,5 +1,6 @@
 package org.photonvision.vision.pipeline;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import java.util.Objects;
@@ -16,11 +17,14 @@ import org.photonvision.vision.pipe.ImageRotationMode;
     @JsonSubTypes.Type(value = ReflectivePipelineSettings.class),
     @JsonSubTypes.Type(value = DriverModePipelineSettings.class)
 })
-public class CVPipelineSettings {
+public class CVPipelineSettings implements Cloneable {
     public int pipelineIndex = 0;
     public PipelineType pipelineType = PipelineType.DriverMode;
     public ImageFlipMode inputImageFlipMode = ImageFlipMode.NONE;
     public ImageRotationMode inputImageRotationMode = ImageRotationMode.DEG_0;
+    // rotate and flip only the coordinates of what the pipeline finds, leaving the camera's image
+    // as it is unless it's streamed
+    public boolean inputImageTransformCoordinates = false;
     public String pipelineNickname = "New Pipeline";
     public double cameraExposure = 50.0;
     public double cameraBrightness = 50.0;
@@ -30,6 +34,39 @@ public class CVPipelineSettings {
     public FrameDivisor outputFrameDivisor = FrameDivisor.NONE;
     public boolean ledMode = false;
 
+    // not a setting itself, so left out of equals, hashCode and serialization
+    private volatile int version = 0;
+
+    /**
+    * Mark these settings as changed, so a running pipeline rebuilds its params on the next frame
+    * even if its settings still look equal to the ones it last used, such as when an object
+    * compared by reference was changed in place. Settings changed in place are otherwise picked up
+    * by comparing them against a copy.
+    */
+    public void markDirty() {
+        version++;
+    }
+
+    /**
+    * @return A copy of these settings. Settings that can be changed in place, like number couples,
+    *     are copied too, so changing them in either doesn't change the other.
+    */
+    @Override
+    public CVPipelineSettings clone() {
+        try {
+            return (CVPipelineSettings) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // can't happen, this is Cloneable
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** @return A counter that changes every time {@link #markDirty()} is called. */
+    @JsonIgnore
+    public int getVersion() {
+        return version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -44,6 +81,7 @@ public class CVPipelineSettings {
                 && pipelineType == that.pipelineType
                 && inputImageFlipMode == that.inputImageFlipMode
                 && inputImageRotationMode == that.inputImageRotationMode
+                && inputImageTransformCoordinates == that.inputImageTransformCoordinates
                 && pipelineNickname.equals(that.pipelineNickname)
                 && inputFrameDivisor == that.inputFrameDivisor
                 && outputFrameDivisor == that.outputFrameDivisor;
@@ -56,6 +94,7 @@ public class CVPipelineSettings {
                 pipelineType,
                 inputImageFlipMode,
                 inputImageRotationMode,
+                inputImageTransformCoordinates,
                 pipelineNickname,
                 cameraExposure,
                 cameraBrightness,
@@ -16,7 +16,8 @@ public class Calibration3dPipeline extends CVPipeline<CVPipelineResult, CVPipeli
             FrameStaticProperties frameStaticProperties, CVPipelineSettings settings) {}
 
     @Override
-    protected CVPipelineResult process(Frame frame, CVPipelineSettings settings) {
+    protected CVPipelineResult process(
+            Frame frame, CVPipelineSettings settings, boolean produceOutput) {
         return null;
     }
 }
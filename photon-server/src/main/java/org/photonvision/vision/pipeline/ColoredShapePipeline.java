@@ -6,13 +6,16 @@ import java.util.stream.Collectors;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.photonvision.common.util.math.MathUtils;
 import org.photonvision.vision.frame.Frame;
 import org.photonvision.vision.frame.FrameStaticProperties;
 import org.photonvision.vision.opencv.*;
 import org.photonvision.vision.pipe.CVPipeResult;
+import org.photonvision.vision.pipe.ImageTransform;
 import org.photonvision.vision.pipe.impl.*;
 import org.photonvision.vision.target.PotentialTarget;
+import org.photonvision.vision.target.TargetRegionPredictor;
 import org.photonvision.vision.target.TrackedTarget;
 
 public class ColoredShapePipeline
@@ -21,10 +24,12 @@ public class ColoredShapePipeline
     private final RotateImagePipe rotateImagePipe = new RotateImagePipe();
     private final ErodeDilatePipe erodeDilatePipe = new ErodeDilatePipe();
     private final HSVPipe hsvPipe = new HSVPipe();
+    private final MorphologyPipe morphologyPipe = new MorphologyPipe();
     private final OutputMatPipe outputMatPipe = new OutputMatPipe();
     private final SpeckleRejectPipe speckleRejectPipe = new SpeckleRejectPipe();
     private final FindContoursPipe findContoursPipe = new FindContoursPipe();
-    private final FindPolygonPipe findPolygonPipe = new FindPolygonPipe();
+    private final TransformContoursPipe transformContoursPipe = new TransformContoursPipe();
+    private final FindShapesPipe findShapesPipe = new FindShapesPipe();
     private final FindCirclesPipe findCirclesPipe = new FindCirclesPipe();
     private final FilterShapesPipe filterShapesPipe = new FilterShapesPipe();
     private final GroupContoursPipe groupContoursPipe = new GroupContoursPipe();
@@ -36,7 +41,15 @@ public class ColoredShapePipeline
     private final Draw2dContoursPipe draw2dContoursPipe = new Draw2dContoursPipe();
     private final Draw3dTargetsPipe draw3dTargetsPipe = new Draw3dTargetsPipe();
 
-    private final Mat rawInputMat = new Mat();
+    private final TargetRegionPredictor regionPredictor = new TargetRegionPredictor();
+
+    // how to get from the camera's image to the coordinates targets are in, or null if the image
+    // itself is rotated
+    private ImageTransform imageTransform;
+
+    // the output image is downscaled before anything is drawn on it
+    private FrameStaticProperties outputFrameProperties;
+
     private final DualMat outputMats = new DualMat();
     private List<CVShape> shapes;
     private CVPipeResult<Mat> result;
@@ -51,19 +64,56 @@ public class ColoredShapePipeline
     protected void setPipeParams(
             FrameStaticProperties frameStaticProperties, ColoredShapePipelineSettings settings) {
 
-        RotateImagePipe.RotateImageParams rotateImageParams =
-                new RotateImagePipe.RotateImageParams(settings.inputImageRotationMode);
+        RotateImagePipe.RotateImageParams rotateImageParams;
+        if (settings.inputImageTransformCoordinates) {
+            // the image is left as it is, and everything from the contours on works in the
+            // coordinates it would have had if rotated
+            imageTransform =
+                    new ImageTransform(
+                            settings.inputImageRotationMode,
+                            settings.inputImageFlipMode,
+                            frameStaticProperties);
+            frameStaticProperties = imageTransform.getTransformedProperties();
+            rotateImageParams = RotateImagePipe.RotateImageParams.DEFAULT;
+        } else {
+            imageTransform = null;
+            rotateImageParams =
+                    new RotateImagePipe.RotateImageParams(
+                            settings.inputImageRotationMode, settings.inputImageFlipMode);
+        }
         rotateImagePipe.setParams(rotateImageParams);
 
+        TransformContoursPipe.TransformContoursParams transformContoursParams =
+                new TransformContoursPipe.TransformContoursParams(imageTransform);
+        transformContoursPipe.setParams(transformContoursParams);
+
+        int bandCount = settings.tiledProcessing ? Runtime.getRuntime().availableProcessors() : 1;
+
         ErodeDilatePipe.ErodeDilateParams erodeDilateParams =
-                new ErodeDilatePipe.ErodeDilateParams(settings.erode, settings.dilate, 5);
-        // TODO: add kernel size to pipeline settings
+                new ErodeDilatePipe.ErodeDilateParams(
+                        settings.erode, settings.dilate, settings.morphologyKernelSize, bandCount);
         erodeDilatePipe.setParams(erodeDilateParams);
 
         HSVPipe.HSVParams hsvParams =
-                new HSVPipe.HSVParams(settings.hsvHue, settings.hsvSaturation, settings.hsvValue);
+                new HSVPipe.HSVParams(
+                        settings.hsvHue,
+                        settings.hsvSaturation,
+                        settings.hsvValue,
+                        settings.hsvUseLookupTable,
+                        bandCount);
         hsvPipe.setParams(hsvParams);
 
+        MorphologyPipe.MorphologyParams morphologyParams =
+                new MorphologyPipe.MorphologyParams(
+                        settings.maskMorphology,
+                        settings.morphologyKernelShape,
+                        settings.morphologyKernelSize,
+                        settings.maskMorphologyIterations);
+        morphologyPipe.setParams(morphologyParams);
+
+        regionPredictor.setFullScanInterval(settings.roiFullScanInterval);
+        if (!settings.roiTrackingEnabled) regionPredictor.reset();
+
         OutputMatPipe.OutputMatParams outputMatParams =
                 new OutputMatPipe.OutputMatParams(settings.outputShowThresholded);
         outputMatPipe.setParams(outputMatParams);
@@ -73,12 +123,20 @@ public class ColoredShapePipeline
         speckleRejectPipe.setParams(speckleRejectParams);
 
         FindContoursPipe.FindContoursParams findContoursParams =
-                new FindContoursPipe.FindContoursParams();
+                new FindContoursPipe.FindContoursParams(bandCount);
         findContoursPipe.setParams(findContoursParams);
 
-        FindPolygonPipe.FindPolygonPipeParams findPolygonPipeParams =
-                new FindPolygonPipe.FindPolygonPipeParams(settings.accuracyPercentage);
-        findPolygonPipe.setParams(findPolygonPipeParams);
+        FindShapesPipe.FindShapesParams findShapesParams =
+                new FindShapesPipe.FindShapesParams(
+                        settings.desiredShape,
+                        settings.accuracyPercentage,
+                        settings.minArea,
+                        settings.maxArea,
+                        settings.minPeri,
+                        settings.maxPeri,
+                        settings.minCircularity,
+                        bandCount);
+        findShapesPipe.setParams(findShapesParams);
 
         FindCirclesPipe.FindCirclePipeParams findCirclePipeParams =
                 new FindCirclesPipe.FindCirclePipeParams(
@@ -87,7 +145,8 @@ public class ColoredShapePipeline
                         settings.minDist,
                         settings.maxRadius,
                         settings.maxCannyThresh,
-                        settings.accuracy);
+                        settings.accuracy,
+                        settings.circleDetectionNearContours);
         findCirclesPipe.setParams(findCirclePipeParams);
 
         FilterShapesPipe.FilterShapesPipeParams filterShapesPipeParams =
@@ -133,8 +192,13 @@ public class ColoredShapePipeline
                         settings.cameraCalibration, settings.cameraPitch, settings.targetModel);
         solvePNPPipe.setParams(solvePNPParams);
 
+        outputFrameProperties = divide(frameStaticProperties, settings.outputFrameDivisor);
+        double outputScale =
+                (double) outputFrameProperties.imageWidth / frameStaticProperties.imageWidth;
+
         Draw2dContoursPipe.Draw2dContoursParams draw2dContoursParams =
-                new Draw2dContoursPipe.Draw2dContoursParams(settings.outputShowMultipleTargets);
+                new Draw2dContoursPipe.Draw2dContoursParams(
+                        settings.outputShowMultipleTargets, outputScale);
         draw2dContoursParams.showShape = true;
         draw2dContoursParams.showMaximumBox = false;
         draw2dContoursParams.showRotatedBox = false;
@@ -143,22 +207,29 @@ public class ColoredShapePipeline
 
         Draw2dCrosshairPipe.Draw2dCrosshairParams draw2dCrosshairParams =
                 new Draw2dCrosshairPipe.Draw2dCrosshairParams(
-                        settings.offsetRobotOffsetMode, settings.offsetCalibrationPoint);
+                        settings.offsetRobotOffsetMode,
+                        settings.offsetCalibrationPoint,
+                        outputScale);
         draw2dCrosshairPipe.setParams(draw2dCrosshairParams);
 
         var draw3dContoursParams =
                 new Draw3dTargetsPipe.Draw3dContoursParams(
-                        settings.cameraCalibration, settings.targetModel);
+                        settings.cameraCalibration, settings.targetModel, outputScale);
         draw3dTargetsPipe.setParams(draw3dContoursParams);
     }
 
     @Override
-    protected CVPipelineResult process(Frame frame, ColoredShapePipelineSettings settings) {
-        setPipeParams(frame.frameStaticProperties, settings);
-
+    protected CVPipelineResult process(
+            Frame frame, ColoredShapePipelineSettings settings, boolean produceOutput) {
         long sumPipeNanosElapsed = 0L;
 
-        frame.image.getMat().copyTo(rawInputMat);
+        // the output image is handed over to the result, so it is borrowed per frame rather than
+        // being a Mat this pipeline reuses. It has to be taken before the pipes below modify the
+        // input in place.
+        CVMat outputImage = null;
+        if (produceOutput) {
+            outputImage = borrowOutputImage(frame.image.getMat(), settings.outputFrameDivisor);
+        }
 
         CVPipeResult<Mat> rotateImageResult = rotateImagePipe.apply(frame.image.getMat());
         sumPipeNanosElapsed += rotateImageResult.nanosElapsed;
@@ -166,42 +237,61 @@ public class ColoredShapePipeline
         CVPipeResult<Mat> erodeDilateResult = erodeDilatePipe.apply(rotateImageResult.result);
         sumPipeNanosElapsed += erodeDilateResult.nanosElapsed;
 
+        List<Rect> regions = null;
+        if (settings.roiTrackingEnabled) {
+            if (imageTransform != null) {
+                // targets are tracked in the transformed coordinates, but the image isn't
+                var properties = imageTransform.getTransformedProperties();
+                regions = regionPredictor.predict(properties.imageWidth, properties.imageHeight);
+                if (regions != null) regions.replaceAll(imageTransform::invert);
+            } else {
+                Mat rotated = rotateImageResult.result;
+                regions = regionPredictor.predict(rotated.cols(), rotated.rows());
+            }
+        }
+        hsvPipe.setRegionsOfInterest(regions);
+        findContoursPipe.setRegionsOfInterest(regions);
+
         CVPipeResult<Mat> hsvPipeResult = hsvPipe.apply(erodeDilateResult.result);
         sumPipeNanosElapsed += hsvPipeResult.nanosElapsed;
 
-        outputMats.first = rawInputMat;
-        outputMats.second = hsvPipeResult.result;
+        CVPipeResult<Mat> morphologyResult = morphologyPipe.apply(hsvPipeResult.result);
+        sumPipeNanosElapsed += morphologyResult.nanosElapsed;
 
-        CVPipeResult<Mat> outputMatResult = outputMatPipe.apply(outputMats);
-        sumPipeNanosElapsed += outputMatResult.nanosElapsed;
-
-        CVPipeResult<List<Contour>> findContoursResult = findContoursPipe.apply(hsvPipeResult.result);
+        CVPipeResult<List<Contour>> findContoursResult =
+                findContoursPipe.apply(morphologyResult.result);
         sumPipeNanosElapsed += findContoursResult.nanosElapsed;
 
         CVPipeResult<List<Contour>> speckleRejectResult =
                 speckleRejectPipe.apply(findContoursResult.result);
         sumPipeNanosElapsed += speckleRejectResult.nanosElapsed;
 
-        if (settings.desiredShape == ContourShape.Circle) {
+        if (settings.desiredShape == ContourShape.Circle && settings.circleDetectionUseHough) {
             CVPipeResult<List<CVShape>> findCirclesResult =
-                    findCirclesPipe.apply(Pair.of(hsvPipeResult.result, speckleRejectResult.result));
+                    findCirclesPipe.apply(
+                            Pair.of(morphologyResult.result, speckleRejectResult.result));
             sumPipeNanosElapsed += findCirclesResult.nanosElapsed;
-            shapes = findCirclesResult.result;
+
+            CVPipeResult<List<CVShape>> filterShapeResult =
+                    filterShapesPipe.apply(findCirclesResult.result);
+            sumPipeNanosElapsed += filterShapeResult.nanosElapsed;
+            shapes = filterShapeResult.result;
         } else {
-            CVPipeResult<List<CVShape>> findPolygonsResult =
-                    findPolygonPipe.apply(speckleRejectResult.result);
-            sumPipeNanosElapsed += findPolygonsResult.nanosElapsed;
-            shapes = findPolygonsResult.result;
+            // classifying filters by area and perimeter too
+            CVPipeResult<List<CVShape>> findShapesResult =
+                    findShapesPipe.apply(speckleRejectResult.result);
+            sumPipeNanosElapsed += findShapesResult.nanosElapsed;
+            shapes = findShapesResult.result;
         }
 
-        CVPipeResult<List<CVShape>> filterShapeResult = filterShapesPipe.apply(shapes);
-        sumPipeNanosElapsed += filterShapeResult.nanosElapsed;
+        // shapes are the same whichever way up they are, so only the ones found are transformed
+        CVPipeResult<List<Contour>> transformContoursResult =
+                transformContoursPipe.apply(
+                        shapes.stream().map(CVShape::getContour).collect(Collectors.toList()));
+        sumPipeNanosElapsed += transformContoursResult.nanosElapsed;
 
         CVPipeResult<List<PotentialTarget>> groupContoursResult =
-                groupContoursPipe.apply(
-                        filterShapeResult.result.stream()
-                                .map(CVShape::getContour)
-                                .collect(Collectors.toList()));
+                groupContoursPipe.apply(transformContoursResult.result);
         sumPipeNanosElapsed += groupContoursResult.nanosElapsed;
 
         CVPipeResult<List<PotentialTarget>> sortContoursResult =
@@ -229,27 +319,51 @@ public class ColoredShapePipeline
             targetList = collect2dTargetsResult;
         }
 
-        CVPipeResult<Mat> draw2dCrosshairResult =
-                draw2dCrosshairPipe.apply(Pair.of(outputMatResult.result, targetList.result));
-        sumPipeNanosElapsed += draw2dCrosshairResult.nanosElapsed;
-
-        CVPipeResult<Mat> draw2dContoursResult =
-                draw2dContoursPipe.apply(
-                        Pair.of(draw2dCrosshairResult.result, collect2dTargetsResult.result));
-        sumPipeNanosElapsed += draw2dContoursResult.nanosElapsed;
+        if (settings.roiTrackingEnabled) {
+            regionPredictor.update(targetList.result);
+        }
 
-        if (settings.solvePNPEnabled && settings.desiredShape == ContourShape.Circle) {
-            result =
-                    draw3dTargetsPipe.apply(
+        Frame outputFrame = null;
+        if (produceOutput) {
+            outputMats.first = outputImage.getMat();
+            outputMats.second = morphologyResult.result;
+
+            CVPipeResult<Mat> outputMatResult = outputMatPipe.apply(outputMats);
+            sumPipeNanosElapsed += outputMatResult.nanosElapsed;
+
+            // only rotated now that someone is going to see it, so targets can be drawn on it
+            Mat outputMat = outputMatResult.result;
+            if (imageTransform != null) {
+                long transformStartNanos = System.nanoTime();
+                outputImage = imageTransform.applyAndRelease(outputImage);
+                outputMat = outputImage.getMat();
+                sumPipeNanosElapsed += System.nanoTime() - transformStartNanos;
+            }
+
+            CVPipeResult<Mat> draw2dCrosshairResult =
+                    draw2dCrosshairPipe.apply(Pair.of(outputMat, targetList.result));
+            sumPipeNanosElapsed += draw2dCrosshairResult.nanosElapsed;
+
+            CVPipeResult<Mat> draw2dContoursResult =
+                    draw2dContoursPipe.apply(
                             Pair.of(draw2dCrosshairResult.result, collect2dTargetsResult.result));
-            sumPipeNanosElapsed += result.nanosElapsed;
-        } else {
-            result = draw2dContoursResult;
+            sumPipeNanosElapsed += draw2dContoursResult.nanosElapsed;
+
+            if (settings.solvePNPEnabled && settings.desiredShape == ContourShape.Circle) {
+                result =
+                        draw3dTargetsPipe.apply(
+                                Pair.of(draw2dCrosshairResult.result, collect2dTargetsResult.result));
+                sumPipeNanosElapsed += result.nanosElapsed;
+            } else {
+                result = draw2dContoursResult;
+            }
+
+            outputFrame = new Frame(outputImage, outputFrameProperties);
         }
 
         return new CVPipelineResult(
                 MathUtils.nanosToMillis(sumPipeNanosElapsed),
                 collect2dTargetsResult.result,
-                new Frame(new CVMat(result.result), frame.frameStaticProperties));
+                outputFrame);
     }
 }
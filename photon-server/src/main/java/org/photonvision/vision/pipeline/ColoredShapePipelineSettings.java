@@ -18,6 +18,8 @@ public class ColoredShapePipelineSettings extends AdvancedPipelineSettings {
     public double minPeri = Integer.MIN_VALUE;
     public double maxPeri = Integer.MAX_VALUE;
     public double accuracyPercentage = 10.0;
+    // how close to a circle a contour must be to be classified as one, from 0 to 1
+    public double minCircularity = 0.8;
     // Circle detection
     public int allowableThreshold = 5;
     public int minRadius = 0;
@@ -25,6 +27,10 @@ public class ColoredShapePipelineSettings extends AdvancedPipelineSettings {
     public int minDist = 10;
     public int maxCannyThresh = 90;
     public int accuracy = 20;
+    // find circles with a Hough transform, rather than classifying contours by their circularity
+    public boolean circleDetectionUseHough = true;
+    // only look for circles around the contours, rather than in the whole image
+    public boolean circleDetectionNearContours = false;
     // how many contours to attempt to group (Single, Dual)
     public ContourGroupingMode contourGroupingMode = ContourGroupingMode.Single;
 
@@ -61,12 +67,15 @@ public class ColoredShapePipelineSettings extends AdvancedPipelineSettings {
                 && Double.compare(that.minPeri, minPeri) == 0
                 && Double.compare(that.maxPeri, maxPeri) == 0
                 && Double.compare(that.accuracyPercentage, accuracyPercentage) == 0
+                && Double.compare(that.minCircularity, minCircularity) == 0
                 && allowableThreshold == that.allowableThreshold
                 && minRadius == that.minRadius
                 && maxRadius == that.maxRadius
                 && minDist == that.minDist
                 && maxCannyThresh == that.maxCannyThresh
                 && accuracy == that.accuracy
+                && circleDetectionUseHough == that.circleDetectionUseHough
+                && circleDetectionNearContours == that.circleDetectionNearContours
                 && solvePNPEnabled == that.solvePNPEnabled
                 && cornerDetectionUseConvexHulls == that.cornerDetectionUseConvexHulls
                 && cornerDetectionExactSideCount == that.cornerDetectionExactSideCount
@@ -92,12 +101,15 @@ public class ColoredShapePipelineSettings extends AdvancedPipelineSettings {
                 minPeri,
                 maxPeri,
                 accuracyPercentage,
+                minCircularity,
                 allowableThreshold,
                 minRadius,
                 maxRadius,
                 minDist,
                 maxCannyThresh,
                 accuracy,
+                circleDetectionUseHough,
+                circleDetectionNearContours,
                 contourGroupingMode,
                 contourIntersection,
                 solvePNPEnabled,
@@ -2,6 +2,7 @@ package org.photonvision.vision.pipeline;
 
 import java.util.List;
 import org.apache.commons.lang3.tuple.Pair;
+import org.opencv.core.Mat;
 import org.photonvision.common.util.math.MathUtils;
 import org.photonvision.vision.frame.Frame;
 import org.photonvision.vision.frame.FrameStaticProperties;
@@ -27,7 +28,8 @@ public class DriverModePipeline
     protected void setPipeParams(
             FrameStaticProperties frameStaticProperties, DriverModePipelineSettings settings) {
         RotateImagePipe.RotateImageParams rotateImageParams =
-                new RotateImagePipe.RotateImageParams(settings.inputImageRotationMode);
+                new RotateImagePipe.RotateImageParams(
+                        settings.inputImageRotationMode, settings.inputImageFlipMode);
         rotateImagePipe.setParams(rotateImageParams);
 
         ResizeImagePipe.ResizeImageParams resizeImageParams =
@@ -36,12 +38,20 @@ public class DriverModePipeline
 
         Draw2dCrosshairPipe.Draw2dCrosshairParams draw2dCrosshairParams =
                 new Draw2dCrosshairPipe.Draw2dCrosshairParams(
-                        settings.offsetPointMode, settings.offsetPoint);
+                        settings.offsetPointMode,
+                        settings.offsetPoint,
+                        1.0 / settings.inputFrameDivisor.value);
         draw2dCrosshairPipe.setParams(draw2dCrosshairParams);
     }
 
     @Override
-    public DriverModePipelineResult process(Frame frame, DriverModePipelineSettings settings) {
+    public DriverModePipelineResult process(
+            Frame frame, DriverModePipelineSettings settings, boolean produceOutput) {
+        // driver mode only produces an image, so there is nothing to do if nobody wants it
+        if (!produceOutput) {
+            return new DriverModePipelineResult(0, null);
+        }
+
         // apply pipes
         var rotateImageResult = rotateImagePipe.apply(frame.image.getMat());
         var resizeImageResult = resizeImagePipe.apply(rotateImageResult.result);
@@ -54,8 +64,12 @@ public class DriverModePipeline
                         + resizeImageResult.nanosElapsed
                         + draw2dCrosshairResult.nanosElapsed;
 
+        // the pipes work on the (downscaled) input in place, so hand the result a copy it can own
+        Mat outputMat = draw2dCrosshairResult.result;
+        CVMat outputImage = CVMat.borrow(outputMat.rows(), outputMat.cols(), outputMat.type());
+        outputMat.copyTo(outputImage.getMat());
+
         return new DriverModePipelineResult(
-                MathUtils.nanosToMillis(totalNanos),
-                new Frame(new CVMat(draw2dCrosshairResult.result), frame.frameStaticProperties));
+                MathUtils.nanosToMillis(totalNanos), new Frame(outputImage, frame.frameStaticProperties));
     }
 }
@@ -1,6 +1,7 @@
 package org.photonvision.vision.pipeline;
 
 import com.fasterxml.jackson.annotation.JsonTypeName;
+import java.util.Objects;
 import org.photonvision.common.util.numbers.DoubleCouple;
 import org.photonvision.vision.target.RobotOffsetPointMode;
 
@@ -13,4 +14,25 @@ public class DriverModePipelineSettings extends CVPipelineSettings {
         super();
         pipelineType = PipelineType.DriverMode;
     }
+
+    @Override
+    public DriverModePipelineSettings clone() {
+        var copy = (DriverModePipelineSettings) super.clone();
+        copy.offsetPoint = new DoubleCouple(offsetPoint.getFirst(), offsetPoint.getSecond());
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        if (!super.equals(o)) return false;
+        DriverModePipelineSettings that = (DriverModePipelineSettings) o;
+        return offsetPointMode == that.offsetPointMode && offsetPoint.equals(that.offsetPoint);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), offsetPointMode, offsetPoint);
+    }
 }
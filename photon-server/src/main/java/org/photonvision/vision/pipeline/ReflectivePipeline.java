@@ -3,13 +3,17 @@ package org.photonvision.vision.pipeline;
 import java.util.List;
 import org.apache.commons.lang3.tuple.Pair;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.photonvision.common.util.math.MathUtils;
 import org.photonvision.vision.frame.Frame;
+import org.photonvision.vision.frame.FrameDivisor;
 import org.photonvision.vision.frame.FrameStaticProperties;
 import org.photonvision.vision.opencv.CVMat;
 import org.photonvision.vision.opencv.Contour;
 import org.photonvision.vision.opencv.DualMat;
 import org.photonvision.vision.pipe.CVPipeResult;
+import org.photonvision.vision.pipe.ImageTransform;
+import org.photonvision.vision.pipe.impl.CoarseDetectionPipe;
 import org.photonvision.vision.pipe.impl.Collect2dTargetsPipe;
 import org.photonvision.vision.pipe.impl.CornerDetectionPipe;
 import org.photonvision.vision.pipe.impl.Draw2dContoursPipe;
@@ -20,23 +24,30 @@ import org.photonvision.vision.pipe.impl.FilterContoursPipe;
 import org.photonvision.vision.pipe.impl.FindContoursPipe;
 import org.photonvision.vision.pipe.impl.GroupContoursPipe;
 import org.photonvision.vision.pipe.impl.HSVPipe;
+import org.photonvision.vision.pipe.impl.MorphologyPipe;
 import org.photonvision.vision.pipe.impl.OutputMatPipe;
 import org.photonvision.vision.pipe.impl.RotateImagePipe;
 import org.photonvision.vision.pipe.impl.SolvePNPPipe;
 import org.photonvision.vision.pipe.impl.SortContoursPipe;
-import org.photonvision.vision.pipe.impl.SpeckleRejectPipe;
+import org.photonvision.vision.pipe.impl.TransformContoursPipe;
 import org.photonvision.vision.target.PotentialTarget;
+import org.photonvision.vision.target.TargetRegionPredictor;
 import org.photonvision.vision.target.TrackedTarget;
 
 /** Represents a pipeline for tracking retro-reflective targets. */
 public class ReflectivePipeline extends CVPipeline<CVPipelineResult, ReflectivePipelineSettings> {
+    // full resolution pixels added around each coarse candidate, so its edges are refined with
+    // some context around them
+    private static final int COARSE_DETECTION_PADDING = 4;
 
     private final RotateImagePipe rotateImagePipe = new RotateImagePipe();
     private final ErodeDilatePipe erodeDilatePipe = new ErodeDilatePipe();
+    private final CoarseDetectionPipe coarseDetectionPipe = new CoarseDetectionPipe();
     private final HSVPipe hsvPipe = new HSVPipe();
+    private final MorphologyPipe morphologyPipe = new MorphologyPipe();
     private final OutputMatPipe outputMatPipe = new OutputMatPipe();
     private final FindContoursPipe findContoursPipe = new FindContoursPipe();
-    private final SpeckleRejectPipe speckleRejectPipe = new SpeckleRejectPipe();
+    private final TransformContoursPipe transformContoursPipe = new TransformContoursPipe();
     private final FilterContoursPipe filterContoursPipe = new FilterContoursPipe();
     private final GroupContoursPipe groupContoursPipe = new GroupContoursPipe();
     private final SortContoursPipe sortContoursPipe = new SortContoursPipe();
@@ -47,7 +58,15 @@ public class ReflectivePipeline extends CVPipeline<CVPipelineResult, ReflectiveP
     private final Draw2dContoursPipe draw2dContoursPipe = new Draw2dContoursPipe();
     private final Draw3dTargetsPipe draw3dTargetsPipe = new Draw3dTargetsPipe();
 
-    private Mat rawInputMat = new Mat();
+    private final TargetRegionPredictor regionPredictor = new TargetRegionPredictor();
+
+    // how to get from the camera's image to the coordinates targets are in, or null if the image
+    // itself is rotated
+    private ImageTransform imageTransform;
+
+    // the output image is downscaled before anything is drawn on it
+    private FrameStaticProperties outputFrameProperties;
+
     private DualMat outputMats = new DualMat();
 
     public ReflectivePipeline() {
@@ -57,37 +76,81 @@ public class ReflectivePipeline extends CVPipeline<CVPipelineResult, ReflectiveP
     @Override
     protected void setPipeParams(
             FrameStaticProperties frameStaticProperties, ReflectivePipelineSettings settings) {
-        RotateImagePipe.RotateImageParams rotateImageParams =
-                new RotateImagePipe.RotateImageParams(settings.inputImageRotationMode);
+        RotateImagePipe.RotateImageParams rotateImageParams;
+        if (settings.inputImageTransformCoordinates) {
+            // the image is left as it is, and everything from the contours on works in the
+            // coordinates it would have had if rotated
+            imageTransform =
+                    new ImageTransform(
+                            settings.inputImageRotationMode,
+                            settings.inputImageFlipMode,
+                            frameStaticProperties);
+            frameStaticProperties = imageTransform.getTransformedProperties();
+            rotateImageParams = RotateImagePipe.RotateImageParams.DEFAULT;
+        } else {
+            imageTransform = null;
+            rotateImageParams =
+                    new RotateImagePipe.RotateImageParams(
+                            settings.inputImageRotationMode, settings.inputImageFlipMode);
+        }
         rotateImagePipe.setParams(rotateImageParams);
 
+        TransformContoursPipe.TransformContoursParams transformContoursParams =
+                new TransformContoursPipe.TransformContoursParams(imageTransform);
+        transformContoursPipe.setParams(transformContoursParams);
+
+        int bandCount = settings.tiledProcessing ? Runtime.getRuntime().availableProcessors() : 1;
+
         ErodeDilatePipe.ErodeDilateParams erodeDilateParams =
-                new ErodeDilatePipe.ErodeDilateParams(settings.erode, settings.dilate, 5);
-        // TODO: add kernel size to pipeline settings
+                new ErodeDilatePipe.ErodeDilateParams(
+                        settings.erode, settings.dilate, settings.morphologyKernelSize, bandCount);
         erodeDilatePipe.setParams(erodeDilateParams);
 
         HSVPipe.HSVParams hsvParams =
-                new HSVPipe.HSVParams(settings.hsvHue, settings.hsvSaturation, settings.hsvValue);
+                new HSVPipe.HSVParams(
+                        settings.hsvHue,
+                        settings.hsvSaturation,
+                        settings.hsvValue,
+                        settings.hsvUseLookupTable,
+                        bandCount);
         hsvPipe.setParams(hsvParams);
 
+        MorphologyPipe.MorphologyParams morphologyParams =
+                new MorphologyPipe.MorphologyParams(
+                        settings.maskMorphology,
+                        settings.morphologyKernelShape,
+                        settings.morphologyKernelSize,
+                        settings.maskMorphologyIterations);
+        morphologyPipe.setParams(morphologyParams);
+
+        if (settings.coarseDetectionDivisor != FrameDivisor.NONE) {
+            var coarseDetectionParams =
+                    new CoarseDetectionPipe.CoarseDetectionParams(
+                            settings.coarseDetectionDivisor, hsvParams, COARSE_DETECTION_PADDING);
+            coarseDetectionPipe.setParams(coarseDetectionParams);
+        }
+
+        regionPredictor.setFullScanInterval(settings.roiFullScanInterval);
+        if (!settings.roiTrackingEnabled) regionPredictor.reset();
+
         OutputMatPipe.OutputMatParams outputMatParams =
                 new OutputMatPipe.OutputMatParams(settings.outputShowThresholded);
         outputMatPipe.setParams(outputMatParams);
 
         FindContoursPipe.FindContoursParams findContoursParams =
-                new FindContoursPipe.FindContoursParams();
+                new FindContoursPipe.FindContoursParams(bandCount);
         findContoursPipe.setParams(findContoursParams);
 
-        SpeckleRejectPipe.SpeckleRejectParams speckleRejectParams =
-                new SpeckleRejectPipe.SpeckleRejectParams(settings.contourSpecklePercentage);
-        speckleRejectPipe.setParams(speckleRejectParams);
-
+        // this pipeline has only ever rejected speckles, so the area, ratio and extent limits stay
+        // off until turning them on is asked for
         FilterContoursPipe.FilterContoursParams filterContoursParams =
                 new FilterContoursPipe.FilterContoursParams(
                         settings.contourArea,
                         settings.contourRatio,
                         settings.contourExtent,
-                        frameStaticProperties);
+                        frameStaticProperties,
+                        settings.contourSpecklePercentage,
+                        false);
         filterContoursPipe.setParams(filterContoursParams);
 
         GroupContoursPipe.GroupContoursParams groupContoursParams =
@@ -107,7 +170,9 @@ public class ReflectivePipeline extends CVPipeline<CVPipelineResult, ReflectiveP
                         settings.offsetDualLineB,
                         settings.offsetCalibrationPoint.toPoint(),
                         settings.contourTargetOffsetPointEdge,
-                        settings.contourTargetOrientation);
+                        settings.contourTargetOrientation,
+                        settings.undistortTargetPoints ? settings.cameraCalibration : null,
+                        imageTransform);
         collect2dTargetsPipe.setParams(collect2dTargetsParams);
 
         var params =
@@ -119,33 +184,48 @@ public class ReflectivePipeline extends CVPipeline<CVPipelineResult, ReflectiveP
                         settings.cornerDetectionAccuracyPercentage);
         cornerDetectionPipe.setParams(params);
 
+        outputFrameProperties = divide(frameStaticProperties, settings.outputFrameDivisor);
+        double outputScale =
+                (double) outputFrameProperties.imageWidth / frameStaticProperties.imageWidth;
+
         Draw2dContoursPipe.Draw2dContoursParams draw2dContoursParams =
-                new Draw2dContoursPipe.Draw2dContoursParams(settings.outputShowMultipleTargets);
+                new Draw2dContoursPipe.Draw2dContoursParams(
+                        settings.outputShowMultipleTargets, outputScale);
         draw2dContoursPipe.setParams(draw2dContoursParams);
 
         Draw2dCrosshairPipe.Draw2dCrosshairParams draw2dCrosshairParams =
                 new Draw2dCrosshairPipe.Draw2dCrosshairParams(
-                        settings.offsetRobotOffsetMode, settings.offsetCalibrationPoint);
+                        settings.offsetRobotOffsetMode,
+                        settings.offsetCalibrationPoint,
+                        outputScale);
         draw2dCrosshairPipe.setParams(draw2dCrosshairParams);
 
         var draw3dContoursParams =
                 new Draw3dTargetsPipe.Draw3dContoursParams(
-                        settings.cameraCalibration, settings.targetModel);
+                        settings.cameraCalibration, settings.targetModel, outputScale);
         draw3dTargetsPipe.setParams(draw3dContoursParams);
 
         var solvePNPParams =
                 new SolvePNPPipe.SolvePNPPipeParams(
-                        settings.cameraCalibration, settings.cameraPitch, settings.targetModel);
+                        settings.cameraCalibration,
+                        settings.cameraPitch,
+                        settings.targetModel,
+                        settings.solvePNPMethod);
         solvePNPPipe.setParams(solvePNPParams);
     }
 
     @Override
-    public CVPipelineResult process(Frame frame, ReflectivePipelineSettings settings) {
-        setPipeParams(frame.frameStaticProperties, settings);
-
+    public CVPipelineResult process(
+            Frame frame, ReflectivePipelineSettings settings, boolean produceOutput) {
         long sumPipeNanosElapsed = 0L;
 
-        frame.image.getMat().copyTo(rawInputMat);
+        // the output image is handed over to the result, so it is borrowed per frame rather than
+        // being a Mat this pipeline reuses. It has to be taken before the pipes below modify the
+        // input in place.
+        CVMat outputImage = null;
+        if (produceOutput) {
+            outputImage = borrowOutputImage(frame.image.getMat(), settings.outputFrameDivisor);
+        }
 
         CVPipeResult<Mat> rotateImageResult = rotateImagePipe.apply(frame.image.getMat());
         sumPipeNanosElapsed += rotateImageResult.nanosElapsed;
@@ -153,25 +233,49 @@ public class ReflectivePipeline extends CVPipeline<CVPipelineResult, ReflectiveP
         CVPipeResult<Mat> erodeDilateResult = erodeDilatePipe.apply(rotateImageResult.result);
         sumPipeNanosElapsed += erodeDilateResult.nanosElapsed;
 
+        List<Rect> regions = null;
+        if (settings.roiTrackingEnabled) {
+            if (imageTransform != null) {
+                // targets are tracked in the transformed coordinates, but the image isn't
+                var properties = imageTransform.getTransformedProperties();
+                regions = regionPredictor.predict(properties.imageWidth, properties.imageHeight);
+                if (regions != null) regions.replaceAll(imageTransform::invert);
+            } else {
+                Mat rotated = rotateImageResult.result;
+                regions = regionPredictor.predict(rotated.cols(), rotated.rows());
+            }
+        }
+        // tracked windows are already small, so only look for candidates when there are none
+        if (regions == null && settings.coarseDetectionDivisor != FrameDivisor.NONE) {
+            CVPipeResult<List<Rect>> coarseDetectionResult =
+                    coarseDetectionPipe.apply(erodeDilateResult.result);
+            sumPipeNanosElapsed += coarseDetectionResult.nanosElapsed;
+            regions = coarseDetectionResult.result;
+        }
+        hsvPipe.setRegionsOfInterest(regions);
+        findContoursPipe.setRegionsOfInterest(regions);
+
         CVPipeResult<Mat> hsvPipeResult = hsvPipe.apply(erodeDilateResult.result);
         sumPipeNanosElapsed += hsvPipeResult.nanosElapsed;
 
-        // mat leak fix attempt
-        outputMats.first = rawInputMat;
-        outputMats.second = hsvPipeResult.result;
-
-        CVPipeResult<Mat> outputMatResult = outputMatPipe.apply(outputMats);
-        sumPipeNanosElapsed += outputMatResult.nanosElapsed;
+        CVPipeResult<Mat> morphologyResult = morphologyPipe.apply(hsvPipeResult.result);
+        sumPipeNanosElapsed += morphologyResult.nanosElapsed;
 
-        CVPipeResult<List<Contour>> findContoursResult = findContoursPipe.apply(hsvPipeResult.result);
+        CVPipeResult<List<Contour>> findContoursResult =
+                findContoursPipe.apply(morphologyResult.result);
         sumPipeNanosElapsed += findContoursResult.nanosElapsed;
 
-        CVPipeResult<List<Contour>> speckleRejectResult =
-                speckleRejectPipe.apply(findContoursResult.result);
-        sumPipeNanosElapsed += speckleRejectResult.nanosElapsed;
+        CVPipeResult<List<Contour>> transformContoursResult =
+                transformContoursPipe.apply(findContoursResult.result);
+        sumPipeNanosElapsed += transformContoursResult.nanosElapsed;
+
+        // speckle rejection and filtering in a single pass
+        CVPipeResult<List<Contour>> filterContoursResult =
+                filterContoursPipe.apply(transformContoursResult.result);
+        sumPipeNanosElapsed += filterContoursResult.nanosElapsed;
 
         CVPipeResult<List<PotentialTarget>> groupContoursResult =
-                groupContoursPipe.apply(speckleRejectResult.result);
+                groupContoursPipe.apply(filterContoursResult.result);
         sumPipeNanosElapsed += groupContoursResult.nanosElapsed;
 
         CVPipeResult<List<PotentialTarget>> sortContoursResult =
@@ -186,6 +290,8 @@ public class ReflectivePipeline extends CVPipeline<CVPipelineResult, ReflectiveP
 
         // 3d stuff
         if (settings.solvePNPEnabled) {
+            // subpixel refinement looks at the mask the contours came from
+            cornerDetectionPipe.setImage(morphologyResult.result, imageTransform);
             var cornerDetectionResult = cornerDetectionPipe.apply(collect2dTargetsResult.result);
             sumPipeNanosElapsed += cornerDetectionResult.nanosElapsed;
 
@@ -197,35 +303,51 @@ public class ReflectivePipeline extends CVPipeline<CVPipelineResult, ReflectiveP
             targetList = collect2dTargetsResult;
         }
 
-        CVPipeResult<Mat> result;
-
-        CVPipeResult<Mat> draw2dCrosshairResult =
-                draw2dCrosshairPipe.apply(Pair.of(outputMatResult.result, targetList.result));
-        sumPipeNanosElapsed += draw2dCrosshairResult.nanosElapsed;
-
-        CVPipeResult<Mat> draw2dContoursResult =
-                draw2dContoursPipe.apply(
-                        Pair.of(draw2dCrosshairResult.result, collect2dTargetsResult.result));
-        sumPipeNanosElapsed += draw2dContoursResult.nanosElapsed;
+        if (settings.roiTrackingEnabled) {
+            regionPredictor.update(targetList.result);
+        }
 
-        if (settings.solvePNPEnabled) {
-            result =
-                    draw3dTargetsPipe.apply(
+        Frame outputFrame = null;
+        if (produceOutput) {
+            // mat leak fix attempt
+            outputMats.first = outputImage.getMat();
+            outputMats.second = morphologyResult.result;
+
+            CVPipeResult<Mat> outputMatResult = outputMatPipe.apply(outputMats);
+            sumPipeNanosElapsed += outputMatResult.nanosElapsed;
+
+            // only rotated now that someone is going to see it, so targets can be drawn on it
+            Mat outputMat = outputMatResult.result;
+            if (imageTransform != null) {
+                long transformStartNanos = System.nanoTime();
+                outputImage = imageTransform.applyAndRelease(outputImage);
+                outputMat = outputImage.getMat();
+                sumPipeNanosElapsed += System.nanoTime() - transformStartNanos;
+            }
+
+            CVPipeResult<Mat> draw2dCrosshairResult =
+                    draw2dCrosshairPipe.apply(Pair.of(outputMat, targetList.result));
+            sumPipeNanosElapsed += draw2dCrosshairResult.nanosElapsed;
+
+            CVPipeResult<Mat> draw2dContoursResult =
+                    draw2dContoursPipe.apply(
                             Pair.of(draw2dCrosshairResult.result, collect2dTargetsResult.result));
-            sumPipeNanosElapsed += result.nanosElapsed;
-        } else {
-            result = draw2dContoursResult;
-        }
+            sumPipeNanosElapsed += draw2dContoursResult.nanosElapsed;
+
+            if (settings.solvePNPEnabled) {
+                CVPipeResult<Mat> draw3dTargetsResult =
+                        draw3dTargetsPipe.apply(
+                                Pair.of(draw2dCrosshairResult.result, collect2dTargetsResult.result));
+                sumPipeNanosElapsed += draw3dTargetsResult.nanosElapsed;
+            }
 
-        // TODO: better way?
-        if (settings.outputShowThresholded) {
-            rawInputMat.release();
+            outputFrame = new Frame(outputImage, outputFrameProperties);
         }
 
         // TODO: Implement all the things
         return new CVPipelineResult(
                 MathUtils.nanosToMillis(sumPipeNanosElapsed),
                 collect2dTargetsResult.result,
-                new Frame(new CVMat(result.result), frame.frameStaticProperties));
+                outputFrame);
     }
 }
@@ -4,9 +4,11 @@ import com.fasterxml.jackson.annotation.JsonTypeName;
 import edu.wpi.first.wpilibj.geometry.Rotation2d;
 import java.util.Objects;
 import org.photonvision.vision.calibration.CameraCalibrationCoefficients;
+import org.photonvision.vision.frame.FrameDivisor;
 import org.photonvision.vision.opencv.ContourGroupingMode;
 import org.photonvision.vision.opencv.ContourIntersectionDirection;
 import org.photonvision.vision.pipe.impl.CornerDetectionPipe;
+import org.photonvision.vision.pipe.impl.SolvePNPPipe;
 import org.photonvision.vision.target.TargetModel;
 
 @JsonTypeName("ReflectivePipelineSettings")
@@ -17,11 +19,18 @@ public class ReflectivePipelineSettings extends AdvancedPipelineSettings {
     // the direction in which contours must intersect to be considered intersecting
     public ContourIntersectionDirection contourIntersection = ContourIntersectionDirection.Up;
 
+    // when not NONE, candidates are found on an image downscaled by this divisor, and only
+    // thresholded and searched for contours at full resolution around them
+    public FrameDivisor coarseDetectionDivisor = FrameDivisor.NONE;
+
     // 3d settings
     public boolean solvePNPEnabled = false;
     public CameraCalibrationCoefficients cameraCalibration;
     public TargetModel targetModel;
     public Rotation2d cameraPitch = Rotation2d.fromDegrees(0.0);
+    public SolvePNPPipe.SolveMethod solvePNPMethod = SolvePNPPipe.SolveMethod.ITERATIVE;
+    // remove lens distortion from target points before finding pitch and yaw, when calibrated
+    public boolean undistortTargetPoints = false;
 
     // Corner detection settings
     public CornerDetectionPipe.DetectionStrategy cornerDetectionStrategy =
@@ -50,9 +59,12 @@ public class ReflectivePipelineSettings extends AdvancedPipelineSettings {
                         == 0
                 && contourGroupingMode == that.contourGroupingMode
                 && contourIntersection == that.contourIntersection
+                && coarseDetectionDivisor == that.coarseDetectionDivisor
                 && Objects.equals(cameraCalibration, that.cameraCalibration)
-                && targetModel.equals(that.targetModel)
+                && Objects.equals(targetModel, that.targetModel)
                 && cameraPitch.equals(that.cameraPitch)
+                && solvePNPMethod == that.solvePNPMethod
+                && undistortTargetPoints == that.undistortTargetPoints
                 && cornerDetectionStrategy == that.cornerDetectionStrategy;
     }
 
@@ -62,10 +74,13 @@ public class ReflectivePipelineSettings extends AdvancedPipelineSettings {
                 super.hashCode(),
                 contourGroupingMode,
                 contourIntersection,
+                coarseDetectionDivisor,
                 solvePNPEnabled,
                 cameraCalibration,
                 targetModel,
                 cameraPitch,
+                solvePNPMethod,
+                undistortTargetPoints,
                 cornerDetectionStrategy,
                 cornerDetectionUseConvexHulls,
                 cornerDetectionExactSideCount,
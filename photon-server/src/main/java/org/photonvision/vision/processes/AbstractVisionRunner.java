@@ -0,0 +1,71 @@
+package org.photonvision.vision.processes;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.photonvision.common.metrics.CameraMetrics;
+import org.photonvision.common.metrics.MetricsRegistry;
+import org.photonvision.vision.frame.FrameProvider;
+import org.photonvision.vision.pipeline.CVPipeline;
+import org.photonvision.vision.pipeline.CVPipelineResult;
+
+/**
+* What every vision runner has: a frame supplier, a pipeline supplier and a result consumer. How
+* frames get from one to the other, and on which threads, is up to the runner.
+*/
+@SuppressWarnings("rawtypes")
+public abstract class AbstractVisionRunner {
+    protected final FrameProvider frameSupplier;
+    protected final Supplier<CVPipeline> pipelineSupplier;
+    protected final Consumer<CVPipelineResult> pipelineResultConsumer;
+    protected final BooleanSupplier outputRequested;
+
+    /** The name of the camera this runner processes, also used for metrics. */
+    protected final String name;
+
+    protected final CameraMetrics cameraMetrics;
+
+    /**
+    * Creates an AbstractVisionRunner.
+    *
+    * @param frameSupplier The supplier of the latest frame.
+    * @param pipelineSupplier The supplier of the current pipeline.
+    * @param pipelineResultConsumer The consumer of the latest result.
+    * @param outputRequested Asked once per frame whether the pipeline should draw an output frame.
+    */
+    protected AbstractVisionRunner(
+            FrameProvider frameSupplier,
+            Supplier<CVPipeline> pipelineSupplier,
+            Consumer<CVPipelineResult> pipelineResultConsumer,
+            BooleanSupplier outputRequested) {
+        this.frameSupplier = frameSupplier;
+        this.pipelineSupplier = pipelineSupplier;
+        this.pipelineResultConsumer = pipelineResultConsumer;
+        this.outputRequested = outputRequested;
+        this.name = frameSupplier.getName();
+
+        this.cameraMetrics = MetricsRegistry.getInstance().getCameraMetrics(name);
+        this.cameraMetrics.setDroppedFrameSource(frameSupplier::getDroppedFrameCount);
+    }
+
+    /** Start processing frames. */
+    public abstract void startProcess();
+
+    /** Stop processing frames, and wait for every thread this runner started to finish. */
+    public abstract void stopProcess();
+
+    /**
+    * Interrupt a thread and wait for it to finish.
+    *
+    * @param thread The thread to stop.
+    * @param timeoutMillis How long to wait for it.
+    */
+    protected static void stopThread(Thread thread, long timeoutMillis) {
+        thread.interrupt();
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
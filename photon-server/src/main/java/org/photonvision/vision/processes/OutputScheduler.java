@@ -0,0 +1,129 @@
+package org.photonvision.vision.processes;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.configuration.StreamDivisor;
+import org.photonvision.vision.frame.Frame;
+import org.photonvision.vision.frame.FrameDivisor;
+import org.photonvision.vision.frame.FrameStaticProperties;
+import org.photonvision.vision.opencv.CVMat;
+
+/**
+* Decides which processed frames of a camera are streamed, and at what resolution. <br>
+* <br>
+* Processing always runs at the full camera rate; this only limits how many output frames are
+* drawn and handed to frame consumers. A frame is streamed if it is every Nth frame (see {@link
+* #setStreamDivisor(StreamDivisor)}) and streaming it would not exceed the maximum stream rate.
+* Frames that aren't streamed never get an output frame drawn.
+*/
+public class OutputScheduler {
+    private volatile StreamDivisor streamDivisor = StreamDivisor.NONE;
+    private volatile double maxFps = 0;
+    private volatile FrameDivisor resolutionDivisor = FrameDivisor.NONE;
+
+    // only touched by the thread asking shouldEmit
+    private long frameIndex;
+    private long nextEmitNanos;
+    private boolean hasEmitted;
+
+    // only touched by the thread scaling frames
+    private final Size scaledSize = new Size();
+    private FrameStaticProperties sourceProperties;
+    private FrameStaticProperties scaledProperties;
+
+    /**
+    * Stream only every Nth processed frame.
+    *
+    * @param streamDivisor How many processed frames there are per streamed frame.
+    */
+    public void setStreamDivisor(StreamDivisor streamDivisor) {
+        this.streamDivisor = streamDivisor;
+    }
+
+    public StreamDivisor getStreamDivisor() {
+        return streamDivisor;
+    }
+
+    /**
+    * Limit the stream rate, on top of the stream divisor.
+    *
+    * @param maxFps The maximum number of frames streamed per second, or 0 for no limit.
+    */
+    public void setMaxFps(double maxFps) {
+        this.maxFps = Math.max(0, maxFps);
+    }
+
+    public double getMaxFps() {
+        return maxFps;
+    }
+
+    /**
+    * Stream frames at a fraction of the processed resolution.
+    *
+    * @param resolutionDivisor The divisor applied to the width and height of streamed frames.
+    */
+    public void setResolutionDivisor(FrameDivisor resolutionDivisor) {
+        this.resolutionDivisor = resolutionDivisor;
+    }
+
+    public FrameDivisor getResolutionDivisor() {
+        return resolutionDivisor;
+    }
+
+    /**
+    * Decide whether the frame about to be processed will be streamed. Called once per processed
+    * frame, from a single thread.
+    *
+    * @param nowNanos The current {@link System#nanoTime()}.
+    * @return True if the frame should have an output frame drawn.
+    */
+    public boolean shouldEmit(long nowNanos) {
+        if (frameIndex++ % streamDivisor.value != 0) return false;
+
+        double fps = maxFps;
+        if (fps <= 0) return true;
+        if (hasEmitted && nowNanos - nextEmitNanos < 0) return false;
+
+        // step the deadline by whole periods so the average rate holds even though frames don't
+        // line up with it, but don't try to catch up after a long gap
+        long periodNanos = (long) (1e9 / fps);
+        if (!hasEmitted || nowNanos - nextEmitNanos > periodNanos) {
+            nextEmitNanos = nowNanos + periodNanos;
+        } else {
+            nextEmitNanos += periodNanos;
+        }
+        hasEmitted = true;
+        return true;
+    }
+
+    /**
+    * Scale an output frame down to the stream resolution.
+    *
+    * @param frame The full resolution output frame. Not released.
+    * @return The frame to stream, which the caller must release. This is {@code frame} itself,
+    *     retained, if no scaling is needed.
+    */
+    public Frame scale(Frame frame) {
+        int divisor = resolutionDivisor.value;
+        if (divisor == 1) return frame.retain();
+
+        Mat src = frame.image.getMat();
+        int cols = src.cols() / divisor;
+        int rows = src.rows() / divisor;
+        scaledSize.width = cols;
+        scaledSize.height = rows;
+
+        CVMat scaled = CVMat.borrow(rows, cols, src.type());
+        Imgproc.resize(src, scaled.getMat(), scaledSize);
+
+        var properties = frame.frameStaticProperties;
+        if (properties != sourceProperties
+                || scaledProperties == null
+                || scaledProperties.imageWidth != cols) {
+            sourceProperties = properties;
+            scaledProperties = new FrameStaticProperties(cols, rows, properties.fov);
+        }
+        return new Frame(scaled, frame.timestampNanos, scaledProperties);
+    }
+}
@@ -0,0 +1,279 @@
+package org.photonvision.vision.processes;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.photonvision.common.logging.LogGroup;
+import org.photonvision.common.logging.Logger;
+import org.photonvision.vision.frame.Frame;
+import org.photonvision.vision.frame.FrameProvider;
+import org.photonvision.vision.opencv.CVMat;
+import org.photonvision.vision.pipeline.CVPipeline;
+import org.photonvision.vision.pipeline.CVPipelineResult;
+
+/**
+* A vision runner that splits capture, processing and output onto their own threads, joined
+* by bounded handoff queues, so that frame N+1 is grabbed while frame N is being processed. <br>
+* <br>
+* Captured images are copied into a fixed set of pooled {@link CVMat}s that are owned by exactly
+* one stage at a time. If processing falls behind, the oldest queued frame is dropped so the
+* pipeline always works on the freshest image available.
+*/
+@SuppressWarnings("rawtypes")
+public class PipelinedVisionRunner extends AbstractVisionRunner {
+    private static final Logger logger =
+            new Logger(PipelinedVisionRunner.class, LogGroup.VisionProcess);
+
+    /** Default capacity of each handoff queue. */
+    public static final int DEFAULT_QUEUE_DEPTH = 2;
+
+    /** How long {@link #stopProcess()} waits for each stage to finish its current item. */
+    private static final long STOP_TIMEOUT_MILLIS = 1000;
+
+    private final BlockingQueue<CVMat> freeMats;
+    private final BlockingQueue<Frame> capturedFrames;
+    private final BlockingQueue<CVPipelineResult> pipelineResults;
+
+    private final StageStats captureStats = new StageStats("Capture");
+    private final StageStats processStats = new StageStats("Process");
+    private final StageStats outputStats = new StageStats("Output");
+
+    private final Thread captureThread;
+    private final Thread processThread;
+    private final Thread outputThread;
+
+    /**
+    * Creates a PipelinedVisionRunner with the default queue depth.
+    *
+    * @param frameSupplier The supplier of the latest frame.
+    * @param pipelineSupplier The supplier of the current pipeline.
+    * @param pipelineResultConsumer The consumer of the latest result.
+    */
+    public PipelinedVisionRunner(
+            FrameProvider frameSupplier,
+            Supplier<CVPipeline> pipelineSupplier,
+            Consumer<CVPipelineResult> pipelineResultConsumer) {
+        this(frameSupplier, pipelineSupplier, pipelineResultConsumer, () -> true, DEFAULT_QUEUE_DEPTH);
+    }
+
+    /**
+    * Creates a PipelinedVisionRunner.
+    *
+    * @param frameSupplier The supplier of the latest frame.
+    * @param pipelineSupplier The supplier of the current pipeline.
+    * @param pipelineResultConsumer The consumer of the latest result.
+    * @param outputRequested Asked once per frame whether the pipeline should draw an output frame.
+    * @param queueDepth The capacity of each handoff queue between stages.
+    */
+    public PipelinedVisionRunner(
+            FrameProvider frameSupplier,
+            Supplier<CVPipeline> pipelineSupplier,
+            Consumer<CVPipelineResult> pipelineResultConsumer,
+            BooleanSupplier outputRequested,
+            int queueDepth) {
+        super(frameSupplier, pipelineSupplier, pipelineResultConsumer, outputRequested);
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("Queue depth must be at least 1!");
+        }
+
+        // one Mat per queue slot, plus one being written by capture and one being processed
+        int matCount = queueDepth + 2;
+        this.freeMats = new ArrayBlockingQueue<>(matCount);
+        for (int i = 0; i < matCount; i++) {
+            freeMats.add(new CVMat());
+        }
+        this.capturedFrames = new ArrayBlockingQueue<>(queueDepth);
+        this.pipelineResults = new ArrayBlockingQueue<>(queueDepth);
+
+        // frames dropped by the provider, plus queued frames replaced by fresher ones
+        cameraMetrics.setDroppedFrameSource(
+                () -> frameSupplier.getDroppedFrameCount() + captureStats.dropped.get());
+
+        this.captureThread = new Thread(this::captureLoop, "VisionRunner Capture - " + name);
+        this.processThread = new Thread(this::processLoop, "VisionRunner Process - " + name);
+        this.outputThread = new Thread(this::outputLoop, "VisionRunner Output - " + name);
+    }
+
+    @Override
+    public void startProcess() {
+        outputThread.start();
+        processThread.start();
+        captureThread.start();
+    }
+
+    /** Interrupts all stage threads, and waits for them to finish. */
+    @Override
+    public void stopProcess() {
+        // upstream first, so nothing new is handed to a stage that has already stopped
+        stopThread(captureThread, STOP_TIMEOUT_MILLIS);
+        stopThread(processThread, STOP_TIMEOUT_MILLIS);
+        stopThread(outputThread, STOP_TIMEOUT_MILLIS);
+    }
+
+    /** @return Whether any stage thread is still running. */
+    boolean isRunning() {
+        return captureThread.isAlive() || processThread.isAlive() || outputThread.isAlive();
+    }
+
+    /**
+    * Get the statistics of every stage, in pipeline order.
+    *
+    * @return The capture, process and output stage statistics.
+    */
+    public List<StageStats> getStageStats() {
+        return List.of(captureStats, processStats, outputStats);
+    }
+
+    private void captureLoop() {
+        try {
+            while (!Thread.interrupted()) {
+                var stallStart = System.nanoTime();
+                var mat = freeMats.take();
+                captureStats.stallNanos.addAndGet(System.nanoTime() - stallStart);
+
+                Frame frame;
+                try {
+                    var source = frameSupplier.get();
+                    if (source == null) {
+                        // nothing new arrived, so there's nothing to process
+                        freeMats.add(mat);
+                        continue;
+                    }
+                    source.copyTo(mat.getMat());
+                    frame = new Frame(mat, source.timestampNanos, source.frameStaticProperties);
+                } catch (Exception ex) {
+                    freeMats.add(mat);
+                    captureStats.onException(ex);
+                    continue;
+                }
+
+                // latest frame wins: make room by recycling the oldest queued frame
+                while (!capturedFrames.offer(frame)) {
+                    var stale = capturedFrames.poll();
+                    if (stale != null) {
+                        freeMats.add(stale.image);
+                        captureStats.dropped.incrementAndGet();
+                    }
+                }
+                captureStats.onItemPassed(capturedFrames.size());
+            }
+        } catch (InterruptedException ignored) {
+            // stopping
+        }
+    }
+
+    private void processLoop() {
+        try {
+            while (!Thread.interrupted()) {
+                var stallStart = System.nanoTime();
+                var frame = capturedFrames.take();
+                processStats.stallNanos.addAndGet(System.nanoTime() - stallStart);
+
+                CVPipelineResult pipelineResult = null;
+                try {
+                    var pipeline = pipelineSupplier.get();
+                    pipeline.setMetricsScope(name);
+                    pipelineResult = pipeline.run(frame, outputRequested.getAsBoolean());
+                    cameraMetrics.onFrameProcessed(System.nanoTime());
+                } catch (Exception ex) {
+                    processStats.onException(ex);
+                } finally {
+                    freeMats.add(frame.image);
+                }
+
+                if (pipelineResult == null) continue;
+
+                stallStart = System.nanoTime();
+                pipelineResults.put(pipelineResult);
+                processStats.stallNanos.addAndGet(System.nanoTime() - stallStart);
+                processStats.onItemPassed(pipelineResults.size());
+            }
+        } catch (InterruptedException ignored) {
+            // stopping
+        }
+    }
+
+    private void outputLoop() {
+        try {
+            while (!Thread.interrupted()) {
+                var stallStart = System.nanoTime();
+                var pipelineResult = pipelineResults.take();
+                outputStats.stallNanos.addAndGet(System.nanoTime() - stallStart);
+
+                try {
+                    pipelineResultConsumer.accept(pipelineResult);
+                } catch (Exception ex) {
+                    outputStats.onException(ex);
+                }
+                outputStats.onItemPassed(0);
+            }
+        } catch (InterruptedException ignored) {
+            // stopping
+        }
+    }
+
+    /** Throughput and stall statistics for a single stage of a {@link PipelinedVisionRunner}. */
+    public static class StageStats {
+        public final String name;
+
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong stallNanos = new AtomicLong();
+        private volatile int queueDepth;
+        private boolean hasThrown;
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        private void onItemPassed(int downstreamQueueDepth) {
+            processed.incrementAndGet();
+            queueDepth = downstreamQueueDepth;
+        }
+
+        private void onException(Exception ex) {
+            if (!hasThrown) {
+                logger.error("Exception in " + name + " stage: " + ex.getMessage());
+                ex.printStackTrace();
+                hasThrown = true;
+            }
+        }
+
+        /** @return Number of items this stage has handed downstream. */
+        public long getProcessedCount() {
+            return processed.get();
+        }
+
+        /** @return Number of queued items this stage discarded to keep latency low. */
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        /** @return Total time this stage spent blocked on its input or output queue. */
+        public long getStallNanos() {
+            return stallNanos.get();
+        }
+
+        /** @return Depth of the downstream queue the last time this stage handed off an item. */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        @Override
+        public String toString() {
+            return name
+                    + " - processed: "
+                    + getProcessedCount()
+                    + ", dropped: "
+                    + getDroppedCount()
+                    + ", stalled: "
+                    + getStallNanos() / 1000000
+                    + "ms, queue depth: "
+                    + getQueueDepth();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.photonvision.vision.processes;
 
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.photonvision.common.datatransfer.DataConsumer;
 import org.photonvision.vision.frame.Frame;
 import org.photonvision.vision.frame.FrameConsumer;
@@ -16,32 +18,86 @@ public class VisionModule {
 
     private final PipelineManager pipelineManager;
     private final VisionSource visionSource;
-    private final VisionRunner visionRunner;
+    private final AbstractVisionRunner visionRunner;
     private final LinkedList<DataConsumer> dataConsumers = new LinkedList<>();
-    private final LinkedList<FrameConsumer> frameConsumers = new LinkedList<>();
+    // added to from other threads while the vision thread iterates it
+    private final List<FrameConsumer> frameConsumers = new CopyOnWriteArrayList<>();
+
+    private final OutputScheduler outputScheduler = new OutputScheduler();
 
     public VisionModule(PipelineManager pipelineManager, VisionSource visionSource) {
+        this(pipelineManager, visionSource, false);
+    }
+
+    /**
+    * Creates a VisionModule.
+    *
+    * @param pipelineManager The pipeline manager of this module.
+    * @param visionSource The source of frames for this module.
+    * @param pipelined True to run capture, processing and output on separate threads.
+    */
+    public VisionModule(
+            PipelineManager pipelineManager, VisionSource visionSource, boolean pipelined) {
         this.pipelineManager = pipelineManager;
         this.visionSource = visionSource;
-        this.visionRunner =
-                new VisionRunner(
-                        this.visionSource.getFrameProvider(),
-                        this.pipelineManager::getCurrentPipeline,
-                        this::consumeResult);
+        if (pipelined) {
+            this.visionRunner =
+                    new PipelinedVisionRunner(
+                            this.visionSource.getFrameProvider(),
+                            this.pipelineManager::getCurrentPipeline,
+                            this::consumeResult,
+                            this::shouldProduceOutput,
+                            PipelinedVisionRunner.DEFAULT_QUEUE_DEPTH);
+        } else {
+            this.visionRunner =
+                    new VisionRunner(
+                            this.visionSource.getFrameProvider(),
+                            this.pipelineManager::getCurrentPipeline,
+                            this::consumeResult,
+                            this::shouldProduceOutput);
+        }
     }
 
     public void start() {
         visionRunner.startProcess();
     }
 
+    /** @return The scheduler deciding which frames of this module are streamed, and how large. */
+    public OutputScheduler getOutputScheduler() {
+        return outputScheduler;
+    }
+
+    /**
+    * Decides whether the frame about to be processed should have an output frame drawn. Called
+    * once per frame by the vision runner.
+    *
+    * @return True if an active frame consumer will be shown this frame.
+    */
+    boolean shouldProduceOutput() {
+        boolean anyActive = false;
+        for (var frameConsumer : frameConsumers) {
+            if (frameConsumer.isActive()) {
+                anyActive = true;
+                break;
+            }
+        }
+        return anyActive && outputScheduler.shouldEmit(System.nanoTime());
+    }
+
     void consumeResult(CVPipelineResult result) {
         // TODO: put result in to Data (not this way!)
         var data = new Data();
         data.result = result;
         consumeData(data);
 
-        var frame = result.outputFrame;
-        consumeFrame(frame);
+        if (result.hasOutputFrame()) {
+            var streamFrame = outputScheduler.scale(result.outputFrame);
+            consumeFrame(streamFrame);
+            streamFrame.release();
+        }
+
+        // consumers that hold on to the frame have retained it by now
+        result.release();
     }
 
     void consumeData(Data data) {
@@ -58,6 +114,13 @@ public class VisionModule {
         frameConsumers.add(frameConsumer);
     }
 
+    /**
+    * Hands a frame to every frame consumer. The frame is only valid for the duration of {@link
+    * FrameConsumer#accept(Object)}; consumers that need it afterwards must {@link Frame#retain()}
+    * it and release it when done.
+    *
+    * @param frame The frame to consume.
+    */
     void consumeFrame(Frame frame) {
         for (var frameConsumer : frameConsumers) {
             frameConsumer.accept(frame);
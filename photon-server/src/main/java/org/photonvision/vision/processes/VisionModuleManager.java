@@ -8,12 +8,22 @@ public class VisionModuleManager {
     protected final List<VisionModule> visionModules = new ArrayList<>();
 
     public VisionModuleManager(List<VisionSource> visionSources) {
+        this(visionSources, false);
+    }
+
+    /**
+    * Creates a VisionModuleManager with a VisionModule for each source.
+    *
+    * @param visionSources The sources to create modules for.
+    * @param pipelinedRunners True to give each module a {@link PipelinedVisionRunner}.
+    */
+    public VisionModuleManager(List<VisionSource> visionSources, boolean pipelinedRunners) {
         for (var visionSource : visionSources) {
 
             // TODO: loading existing pipelines from config
             var pipelineManager = new PipelineManager();
 
-            visionModules.add(new VisionModule(pipelineManager, visionSource));
+            visionModules.add(new VisionModule(pipelineManager, visionSource, pipelinedRunners));
         }
     }
 
@@ -1,20 +1,19 @@
 package org.photonvision.vision.processes;
 
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
-import org.photonvision.vision.frame.Frame;
 import org.photonvision.vision.frame.FrameProvider;
 import org.photonvision.vision.pipeline.CVPipeline;
 import org.photonvision.vision.pipeline.CVPipelineResult;
 
 /** VisionRunner has a frame supplier, a pipeline supplier, and a result consumer */
 @SuppressWarnings("rawtypes")
-public class VisionRunner {
+public class VisionRunner extends AbstractVisionRunner {
+    /** How long {@link #stopProcess()} waits for the current frame to finish. */
+    private static final long STOP_TIMEOUT_MILLIS = 1000;
 
     private final Thread visionProcessThread;
-    private final Supplier<Frame> frameSupplier;
-    private final Supplier<CVPipeline> pipelineSupplier;
-    private final Consumer<CVPipelineResult> pipelineResultConsumer;
 
     private long loopCount;
 
@@ -30,18 +29,39 @@ public class VisionRunner {
             FrameProvider frameSupplier,
             Supplier<CVPipeline> pipelineSupplier,
             Consumer<CVPipelineResult> pipelineResultConsumer) {
-        this.frameSupplier = frameSupplier;
-        this.pipelineSupplier = pipelineSupplier;
-        this.pipelineResultConsumer = pipelineResultConsumer;
+        this(frameSupplier, pipelineSupplier, pipelineResultConsumer, () -> true);
+    }
+
+    /**
+    * VisionRunner contains a <see cref="Thread">Thread</see> to run a pipeline, given a frame, and
+    * will give the result to the consumer.
+    *
+    * @param frameSupplier The supplier of the latest frame.
+    * @param pipelineSupplier The supplier of the current pipeline.
+    * @param pipelineResultConsumer The consumer of the latest result.
+    * @param outputRequested Asked once per frame whether the pipeline should draw an output frame.
+    */
+    public VisionRunner(
+            FrameProvider frameSupplier,
+            Supplier<CVPipeline> pipelineSupplier,
+            Consumer<CVPipelineResult> pipelineResultConsumer,
+            BooleanSupplier outputRequested) {
+        super(frameSupplier, pipelineSupplier, pipelineResultConsumer, outputRequested);
 
         this.visionProcessThread = new Thread(this::update);
-        this.visionProcessThread.setName("VisionRunner - " + frameSupplier.getName());
+        this.visionProcessThread.setName("VisionRunner - " + name);
     }
 
+    @Override
     public void startProcess() {
         visionProcessThread.start();
     }
 
+    @Override
+    public void stopProcess() {
+        stopThread(visionProcessThread, STOP_TIMEOUT_MILLIS);
+    }
+
     private boolean hasThrown;
 
     private void update() {
@@ -49,9 +69,13 @@ public class VisionRunner {
             loopCount++;
             var pipeline = pipelineSupplier.get();
             var frame = frameSupplier.get();
+            // nothing new arrived, and the previous frame has already been processed
+            if (frame == null) continue;
 
             try {
-                var pipelineResult = pipeline.run(frame);
+                pipeline.setMetricsScope(name);
+                var pipelineResult = pipeline.run(frame, outputRequested.getAsBoolean());
+                cameraMetrics.onFrameProcessed(System.nanoTime());
                 pipelineResultConsumer.accept(pipelineResult);
             } catch (Exception ex) {
                 if (hasThrown) {
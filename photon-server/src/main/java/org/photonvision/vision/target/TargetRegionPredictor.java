@@ -0,0 +1,156 @@
+package org.photonvision.vision.target;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.opencv.core.Rect;
+import org.photonvision.vision.opencv.Regions;
+
+/**
+* Predicts where the targets of the next frame will be from where they were in the previous
+* frames, so thresholding and contour finding only need to look at a few small windows rather
+* than the whole image. <br>
+* <br>
+* Each window is the target's last bounding rect, moved by its velocity since the frame before and
+* padded by its size and speed. The whole frame is scanned instead every {@link
+* #setFullScanInterval(int)} frames, whenever the previous frame had no targets, and whenever the
+* windows would cover most of the frame anyway. Only used from the vision thread.
+*/
+public class TargetRegionPredictor {
+    // windows are padded by this fraction of the target's size on each side
+    private static final double SIZE_PADDING = 0.5;
+    // and by at least this many pixels
+    private static final int MIN_PADDING = 8;
+    // and by this many frames worth of the target's velocity
+    private static final double VELOCITY_PADDING = 2;
+    // don't bother with windows once they cover this much of the frame
+    private static final double MAX_COVERAGE = 0.5;
+
+    private int fullScanInterval = 15;
+    private int framesSinceFullScan;
+    private int lastWidth, lastHeight;
+
+    private List<Track> tracks = new ArrayList<>();
+    private List<Track> previousTracks = new ArrayList<>();
+
+    /**
+    * Force a full frame scan every N frames, so targets appearing outside the windows are found.
+    *
+    * @param fullScanInterval The number of frames between full scans. 1 always scans everything.
+    */
+    public void setFullScanInterval(int fullScanInterval) {
+        this.fullScanInterval = Math.max(1, fullScanInterval);
+    }
+
+    /** Forget every target, so the next frame is scanned in full. */
+    public void reset() {
+        tracks.clear();
+        previousTracks.clear();
+    }
+
+    /**
+    * Pick the windows to process the next frame in.
+    *
+    * @param frameWidth The width of the frame about to be processed.
+    * @param frameHeight The height of the frame about to be processed.
+    * @return The windows, clipped to the frame and not overlapping each other, or null if the whole
+    *     frame should be processed.
+    */
+    public List<Rect> predict(int frameWidth, int frameHeight) {
+        boolean sizeChanged = frameWidth != lastWidth || frameHeight != lastHeight;
+        lastWidth = frameWidth;
+        lastHeight = frameHeight;
+
+        if (sizeChanged || tracks.isEmpty() || ++framesSinceFullScan >= fullScanInterval) {
+            framesSinceFullScan = 0;
+            return null;
+        }
+
+        var windows = new ArrayList<Rect>(tracks.size());
+        for (var track : tracks) {
+            var rect = track.rect;
+            int padX =
+                    (int)
+                            Math.ceil(
+                                    Math.max(MIN_PADDING, rect.width * SIZE_PADDING)
+                                            + Math.abs(track.velocityX) * VELOCITY_PADDING);
+            int padY =
+                    (int)
+                            Math.ceil(
+                                    Math.max(MIN_PADDING, rect.height * SIZE_PADDING)
+                                            + Math.abs(track.velocityY) * VELOCITY_PADDING);
+            int x = (int) Math.round(rect.x + track.velocityX) - padX;
+            int y = (int) Math.round(rect.y + track.velocityY) - padY;
+            int width = rect.width + 2 * padX;
+            int height = rect.height + 2 * padY;
+            var window = Regions.clip(x, y, width, height, frameWidth, frameHeight);
+            if (window != null) windows.add(window);
+        }
+
+        Regions.mergeOverlapping(windows);
+
+        if (windows.isEmpty() || Regions.area(windows) > MAX_COVERAGE * frameWidth * frameHeight) {
+            framesSinceFullScan = 0;
+            return null;
+        }
+        return windows;
+    }
+
+    /**
+    * Record the targets found in the frame just processed.
+    *
+    * @param targets The targets, in full frame coordinates.
+    */
+    public void update(List<TrackedTarget> targets) {
+        var rects = new ArrayList<Rect>(targets.size());
+        for (var target : targets) {
+            rects.add(target.m_mainContour.getBoundingRect());
+        }
+        updateRects(rects);
+    }
+
+    void updateRects(List<Rect> rects) {
+        // swap buffers, so the tracks of the previous frame are available for matching
+        var swap = previousTracks;
+        previousTracks = tracks;
+        tracks = swap;
+        tracks.clear();
+
+        for (var rect : rects) {
+            double centerX = rect.x + rect.width / 2.0;
+            double centerY = rect.y + rect.height / 2.0;
+
+            // the velocity comes from the nearest target of the previous frame, as long as it is
+            // close enough to plausibly be the same one
+            Track nearest = null;
+            double nearestDistanceSq = Double.MAX_VALUE;
+            for (var previous : previousTracks) {
+                double dx = centerX - previous.centerX;
+                double dy = centerY - previous.centerY;
+                double distanceSq = dx * dx + dy * dy;
+                double maxDistance = Math.max(previous.rect.width, previous.rect.height) * 2;
+                if (distanceSq < nearestDistanceSq && distanceSq <= maxDistance * maxDistance) {
+                    nearest = previous;
+                    nearestDistanceSq = distanceSq;
+                }
+            }
+
+            double velocityX = nearest == null ? 0 : centerX - nearest.centerX;
+            double velocityY = nearest == null ? 0 : centerY - nearest.centerY;
+            tracks.add(new Track(rect, centerX, centerY, velocityX, velocityY));
+        }
+    }
+
+    private static class Track {
+        final Rect rect;
+        final double centerX, centerY;
+        final double velocityX, velocityY;
+
+        Track(Rect rect, double centerX, double centerY, double velocityX, double velocityY) {
+            this.rect = rect;
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.velocityX = velocityX;
+            this.velocityY = velocityY;
+        }
+    }
+}
@@ -7,8 +7,10 @@ import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
 import org.opencv.core.RotatedRect;
 import org.photonvision.common.util.numbers.DoubleCouple;
+import org.photonvision.vision.calibration.PointUndistorter;
 import org.photonvision.vision.opencv.Contour;
 import org.photonvision.vision.opencv.Releasable;
+import org.photonvision.vision.pipe.impl.SolvePNPPipe;
 
 public class TrackedTarget implements Releasable {
     public final Contour m_mainContour;
@@ -29,6 +31,9 @@ public class TrackedTarget implements Releasable {
 
     private Mat m_cameraRelativeTvec, m_cameraRelativeRvec;
 
+    private long m_poseSolveNanos;
+    private SolvePNPPipe.SolveMethod m_poseSolveMethod;
+
     public TrackedTarget(PotentialTarget origTarget, TargetCalculationParameters params) {
         this.m_mainContour = origTarget.m_mainContour;
         this.m_subContours = origTarget.m_subContours;
@@ -86,12 +91,20 @@ public class TrackedTarget implements Releasable {
                         params.robotOffsetPointMode);
 
         // order of this stuff doesnt matter though
+        Point targetPoint = m_targetOffsetPoint;
+        Point robotPoint = m_robotOffsetPoint;
+        if (params.pointUndistorter != null) {
+            // angles come from where the points would be without lens distortion. The points
+            // themselves stay where they are in the image, for drawing.
+            targetPoint = params.pointUndistorter.undistort(targetPoint);
+            robotPoint = params.pointUndistorter.undistort(robotPoint);
+        }
         m_pitch =
                 TargetCalculations.calculatePitch(
-                        m_targetOffsetPoint.y, m_robotOffsetPoint.y, params.verticalFocalLength);
+                        targetPoint.y, robotPoint.y, params.verticalFocalLength);
         m_yaw =
                 TargetCalculations.calculateYaw(
-                        m_targetOffsetPoint.x, m_robotOffsetPoint.x, params.horizontalFocalLength);
+                        targetPoint.x, robotPoint.x, params.horizontalFocalLength);
         m_area = m_mainContour.getMinAreaRect().size.area() / params.imageArea;
     }
 
@@ -144,6 +157,27 @@ public class TrackedTarget implements Releasable {
         cameraRelativeRvec.copyTo(this.m_cameraRelativeRvec);
     }
 
+    /**
+    * Record how solving for this target's pose went.
+    *
+    * @param solveNanos How long solving took, including any retries.
+    * @param solveMethod The method the pose finally came from. Warm starts and IPPE fall back to
+    *     solving from scratch when they can't be used.
+    */
+    public void setPoseSolveStats(long solveNanos, SolvePNPPipe.SolveMethod solveMethod) {
+        m_poseSolveNanos = solveNanos;
+        m_poseSolveMethod = solveMethod;
+    }
+
+    public long getPoseSolveNanos() {
+        return m_poseSolveNanos;
+    }
+
+    /** @return The method the pose came from, or null if none was solved for. */
+    public SolvePNPPipe.SolveMethod getPoseSolveMethod() {
+        return m_poseSolveMethod;
+    }
+
     public static class TargetCalculationParameters {
         // TargetOffset calculation values
         final boolean isLandscape;
@@ -164,6 +198,9 @@ public class TrackedTarget implements Releasable {
         // area calculation values
         final double imageArea;
 
+        // removes lens distortion from the offset points before finding angles, if not null
+        final PointUndistorter pointUndistorter;
+
         public TargetCalculationParameters(
                 boolean isLandscape,
                 TargetOffsetPointEdge targetOffsetPointEdge,
@@ -174,6 +211,30 @@ public class TrackedTarget implements Releasable {
                 double horizontalFocalLength,
                 double verticalFocalLength,
                 double imageArea) {
+            this(
+                    isLandscape,
+                    targetOffsetPointEdge,
+                    userOffsetPoint,
+                    cameraCenterPoint,
+                    offsetEquationValues,
+                    robotOffsetPointMode,
+                    horizontalFocalLength,
+                    verticalFocalLength,
+                    imageArea,
+                    null);
+        }
+
+        public TargetCalculationParameters(
+                boolean isLandscape,
+                TargetOffsetPointEdge targetOffsetPointEdge,
+                Point userOffsetPoint,
+                Point cameraCenterPoint,
+                DoubleCouple offsetEquationValues,
+                RobotOffsetPointMode robotOffsetPointMode,
+                double horizontalFocalLength,
+                double verticalFocalLength,
+                double imageArea,
+                PointUndistorter pointUndistorter) {
             this.isLandscape = isLandscape;
             this.targetOffsetPointEdge = targetOffsetPointEdge;
             this.userOffsetPoint = userOffsetPoint;
@@ -183,6 +244,7 @@ public class TrackedTarget implements Releasable {
             this.horizontalFocalLength = horizontalFocalLength;
             this.verticalFocalLength = verticalFocalLength;
             this.imageArea = imageArea;
+            this.pointUndistorter = pointUndistorter;
         }
     }
 }
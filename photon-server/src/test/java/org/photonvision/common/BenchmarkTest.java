@@ -3,17 +3,24 @@ package org.photonvision.common;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
+import org.photonvision.common.metrics.MetricsRegistry;
 import org.photonvision.common.util.TestUtils;
 import org.photonvision.common.util.math.MathUtils;
 import org.photonvision.common.util.numbers.NumberListUtils;
 import org.photonvision.vision.frame.FrameProvider;
+import org.photonvision.vision.frame.FrameStaticProperties;
 import org.photonvision.vision.frame.provider.FileFrameProvider;
 import org.photonvision.vision.opencv.CVMat;
 import org.photonvision.vision.opencv.ContourGroupingMode;
 import org.photonvision.vision.opencv.ContourIntersectionDirection;
+import org.photonvision.vision.opencv.ContourSortMode;
+import org.photonvision.vision.pipe.impl.MorphologyPipe;
+import org.photonvision.vision.pipe.impl.SortContoursPipe;
+import org.photonvision.vision.pipe.impl.SortContoursPipeTest;
 import org.photonvision.vision.pipeline.CVPipeline;
 import org.photonvision.vision.pipeline.CVPipelineResult;
 import org.photonvision.vision.pipeline.ReflectivePipeline;
@@ -107,9 +114,77 @@ public class BenchmarkTest {
         benchmarkPipeline(frameProvider, pipeline, 5);
     }
 
+    @Test
+    @Order(5)
+    public void SortContoursBenchmark() {
+        CVMat.enablePrint(false);
+        var properties = new FrameStaticProperties(640, 480, 68.5);
+        var pipe = new SortContoursPipe();
+        pipe.setParams(
+                new SortContoursPipe.SortContoursParams(ContourSortMode.Centermost, properties, 5));
+        var targets = SortContoursPipeTest.randomTargets(new Random(0), 200);
+
+        // the first call fits the rectangles, which is cached from then on, so warm up both
+        for (int i = 0; i < 1000; i++) {
+            pipe.apply(targets);
+            SortContoursPipeTest.fullSort(targets, ContourSortMode.Centermost, 5);
+        }
+
+        int iterations = 20000;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            pipe.apply(targets);
+        }
+        double topK = (System.nanoTime() - start) / 1e3 / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            SortContoursPipeTest.fullSort(targets, ContourSortMode.Centermost, 5);
+        }
+        double fullSort = (System.nanoTime() - start) / 1e3 / iterations;
+
+        System.out.println(
+                "Sorting 200 targets - Top 5: "
+                        + MathUtils.roundTo(topK, 3)
+                        + "us, Full sort: "
+                        + MathUtils.roundTo(fullSort, 3)
+                        + "us");
+    }
+
+    @Test
+    @Order(6)
+    public void MorphologyPlacementBenchmark() {
+        var frameProvider =
+                new FileFrameProvider(
+                        TestUtils.getWPIImagePath(TestUtils.WPI2020Image.kBlueGoal_084in_Center_720p),
+                        TestUtils.WPI2020Image.FOV);
+        frameProvider.setImageReloading(true);
+
+        // eroding then dilating the color image, as before, against opening the mask
+        var beforeThreshold = new ReflectivePipeline();
+        beforeThreshold.getSettings().erode = true;
+        beforeThreshold.getSettings().dilate = true;
+        var afterThreshold = new ReflectivePipeline();
+        afterThreshold.getSettings().maskMorphology = MorphologyPipe.Operation.Open;
+
+        for (var pipeline : List.of(beforeThreshold, afterThreshold)) {
+            pipeline.getSettings().hsvHue.set(60, 100);
+            pipeline.getSettings().hsvSaturation.set(200, 255);
+            pipeline.getSettings().hsvValue.set(200, 255);
+            pipeline.getSettings().outputShowThresholded = true;
+        }
+
+        System.out.println("Erode and dilate before thresholding:");
+        benchmarkPipeline(frameProvider, beforeThreshold, 5);
+        System.out.println("Open after thresholding:");
+        benchmarkPipeline(frameProvider, afterThreshold, 5);
+    }
+
     private static <P extends CVPipeline> void benchmarkPipeline(
             FrameProvider frameProvider, P pipeline, int secondsToRun) {
         CVMat.enablePrint(false);
+        var metricsScope = "Benchmark-" + frameProvider.getName();
+        pipeline.setMetricsScope(metricsScope);
         // warmup for 5 loops.
         System.out.println("Warming up for 5 loops...");
         for (int i = 0; i < 5; i++) {
@@ -129,6 +204,7 @@ public class BenchmarkTest {
                         + frameProps.imageWidth
                         + "x"
                         + frameProps.imageHeight);
+        MetricsRegistry.getInstance().resetHistograms();
         var benchmarkStartMillis = System.currentTimeMillis();
         do {
             CVPipelineResult pipelineResult = pipeline.run(frameProvider.get());
@@ -182,5 +258,10 @@ public class BenchmarkTest {
                         + MathUtils.roundTo(1000 / latencyMax, 3)
                         + " FPS)";
         System.out.println(latencyResult);
+
+        System.out.println("Per-pipe latencies:");
+        MetricsRegistry.getInstance()
+                .snapshot(metricsScope)
+                .forEach((name, snapshot) -> System.out.println("  " + name + ": " + snapshot));
     }
 }
@@ -0,0 +1,44 @@
+package org.photonvision.common.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void bucketsCoverEveryValue() {
+        for (long nanos = 0; nanos < 1 << 20; nanos += 7) {
+            int bucket = LatencyHistogram.bucketOf(nanos);
+            assertTrue(LatencyHistogram.upperBoundOf(bucket) >= nanos);
+            if (bucket > 0) assertTrue(LatencyHistogram.upperBoundOf(bucket - 1) < nanos);
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinBucketError() {
+        var histogram = new LatencyHistogram();
+        // 1 to 100 ms
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+
+        var snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count);
+        assertEquals(100_000_000L, snapshot.maxNanos);
+        assertWithinBucketError(50_000_000L, snapshot.p50Nanos);
+        assertWithinBucketError(95_000_000L, snapshot.p95Nanos);
+        assertWithinBucketError(99_000_000L, snapshot.p99Nanos);
+        assertEquals(50_500_000L, snapshot.meanNanos);
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().count);
+    }
+
+    private static void assertWithinBucketError(long expected, long actual) {
+        assertTrue(actual >= expected, "expected at least " + expected + " but was " + actual);
+        assertTrue(
+                actual <= expected + expected / LatencyHistogram.SUB_BUCKETS,
+                "expected at most " + (expected + expected / LatencyHistogram.SUB_BUCKETS) + " but was " + actual);
+    }
+}
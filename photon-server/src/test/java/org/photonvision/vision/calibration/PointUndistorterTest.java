@@ -0,0 +1,73 @@
+package org.photonvision.vision.calibration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.util.TestUtils;
+
+public class PointUndistorterTest {
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    private static CameraCalibrationCoefficients lifecam480p() throws IOException {
+        return new ObjectMapper()
+                .readValue(
+                        Path.of(TestUtils.getCalibrationPath().toString(), "lifecam480p.json").toFile(),
+                        CameraCalibrationCoefficients.class);
+    }
+
+    @Test
+    public void matchesUndistortPoints() throws IOException {
+        var calibration = lifecam480p();
+        var undistorter = calibration.getPointUndistorter(640, 480);
+
+        var random = new Random(20);
+        var points = new Point[200];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new Point(random.nextDouble() * 639, random.nextDouble() * 479);
+        }
+        var distorted = new MatOfPoint2f(points);
+        var undistorted = new MatOfPoint2f();
+        Imgproc.undistortPoints(
+                distorted,
+                undistorted,
+                calibration.getCameraIntrinsicsMat(),
+                calibration.getCameraExtrinsicsMat(),
+                new Mat(),
+                calibration.getCameraIntrinsicsMat());
+
+        var expected = undistorted.toArray();
+        for (int i = 0; i < points.length; i++) {
+            var actual = undistorter.undistort(points[i]);
+            assertEquals(expected[i].x, actual.x, 0.02);
+            assertEquals(expected[i].y, actual.y, 0.02);
+        }
+
+        distorted.release();
+        undistorted.release();
+    }
+
+    @Test
+    public void cachedPerResolution() throws IOException {
+        var calibration = lifecam480p();
+        var undistorter = calibration.getPointUndistorter(320, 240);
+        assertSame(undistorter, calibration.getPointUndistorter(320, 240));
+
+        // the intrinsics scale with the resolution
+        assertEquals(
+                calibration.cameraIntrinsics.data[0] / 2, undistorter.getFocalLengthX(), 1e-9);
+        assertEquals(640, calibration.getPointUndistorter(640, 480).width);
+    }
+}
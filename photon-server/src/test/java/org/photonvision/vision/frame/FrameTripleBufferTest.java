@@ -0,0 +1,90 @@
+package org.photonvision.vision.frame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.photonvision.common.util.TestUtils;
+
+public class FrameTripleBufferTest {
+    private static final FrameStaticProperties props = new FrameStaticProperties(320, 240, 70);
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    @Test
+    public void latestFrameWins() {
+        var buffer = new FrameTripleBuffer();
+
+        buffer.publish(1);
+        buffer.publish(2);
+        buffer.publish(3);
+
+        var frame = buffer.take(0, props);
+        assertEquals(3, frame.timestampNanos);
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(0, buffer.getTimedOutCount());
+
+        // nothing new was published, and the previous frame may have been modified since
+        assertNull(buffer.take(0, props));
+        assertEquals(1, buffer.getTimedOutCount());
+
+        buffer.release();
+    }
+
+    @Test
+    public void nothingBeforeFirstPublish() {
+        var buffer = new FrameTripleBuffer();
+
+        // the buffers are still empty, so there's no frame to hand out
+        assertNull(buffer.take(10, props));
+        assertEquals(1, buffer.getTimedOutCount());
+
+        buffer.publish(1);
+        assertEquals(1, buffer.take(0, props).timestampNanos);
+
+        buffer.release();
+    }
+
+    @Test
+    public void writerNeverTouchesReaderBuffer() {
+        var buffer = new FrameTripleBuffer();
+
+        buffer.publish(1);
+        var frame = buffer.take(0, props);
+        for (int i = 0; i < 10; i++) {
+            assertNotSame(frame.image, buffer.getBackBuffer());
+            buffer.publish(i + 2);
+        }
+
+        buffer.release();
+    }
+
+    @Test
+    public void readerWakesOnPublish() throws InterruptedException {
+        var buffer = new FrameTripleBuffer();
+
+        var writer =
+                new Thread(
+                        () -> {
+                            try {
+                                Thread.sleep(50);
+                            } catch (InterruptedException ignored) {
+                            }
+                            buffer.publish(42);
+                        });
+        writer.start();
+
+        var frame = buffer.take(5000, props);
+        writer.join();
+
+        assertEquals(42, frame.timestampNanos);
+        assertEquals(0, buffer.getTimedOutCount());
+
+        buffer.release();
+    }
+}
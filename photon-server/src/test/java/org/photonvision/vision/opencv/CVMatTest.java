@@ -0,0 +1,56 @@
+package org.photonvision.vision.opencv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.photonvision.common.util.TestUtils;
+
+public class CVMatTest {
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    @Test
+    public void lastReleaseFreesMat() {
+        var cvMat = new CVMat(new Mat(4, 4, CvType.CV_8UC1));
+        cvMat.retain();
+        assertEquals(2, cvMat.getRefCount());
+
+        cvMat.release();
+        assertFalse(cvMat.getMat().empty());
+
+        cvMat.release();
+        assertTrue(cvMat.getMat().empty());
+        assertThrows(IllegalStateException.class, cvMat::retain);
+    }
+
+    @Test
+    public void pooledMatIsGivenBackOnce() {
+        var pool = MatPool.getInstance();
+        pool.clear();
+
+        var cvMat = CVMat.borrow(7, 3, CvType.CV_8UC1);
+        cvMat.retain();
+        cvMat.release();
+        assertEquals(0, pool.getRetainedCount());
+
+        cvMat.release();
+        // over-releasing must not hand the Mat out twice
+        MatTracker.setThrowOnOverRelease(true);
+        try {
+            assertThrows(IllegalStateException.class, cvMat::release);
+        } finally {
+            MatTracker.setThrowOnOverRelease(false);
+        }
+        assertEquals(1, pool.getRetainedCount());
+
+        pool.clear();
+    }
+}
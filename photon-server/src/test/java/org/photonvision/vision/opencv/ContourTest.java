@@ -4,10 +4,14 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
+import java.util.Random;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
 import org.photonvision.common.util.TestUtils;
 
 public class ContourTest {
@@ -26,6 +30,42 @@ public class ContourTest {
         assertEquals(new Point(5, 5), contour.getCenterPoint());
     }
 
+    @Test
+    public void geometryMatchesOpenCV() {
+        var random = new Random(3512);
+        for (int n = 0; n < 200; n++) {
+            // random polygons, including self-intersecting and clockwise ones
+            int count = 1 + random.nextInt(40);
+            var points = new int[count * 2];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = random.nextInt(2000);
+            }
+            var contour = new Contour(points);
+            MatOfPoint mat = contour.getMat();
+            var mat2f = new MatOfPoint2f(mat.toArray());
+
+            assertEquals(Imgproc.contourArea(mat), contour.getArea());
+            assertEquals(Imgproc.arcLength(mat2f, true), contour.getPerimeter());
+            assertEquals(Imgproc.boundingRect(mat), contour.getBoundingRect());
+
+            Moments expected = Imgproc.moments(mat);
+            Moments actual = contour.getMoments();
+            assertEquals(expected.m00, actual.m00);
+            assertEquals(expected.m10, actual.m10);
+            assertEquals(expected.m01, actual.m01);
+            assertEquals(expected.m20, actual.m20);
+            assertEquals(expected.m11, actual.m11);
+            assertEquals(expected.m02, actual.m02);
+            assertEquals(expected.m30, actual.m30);
+            assertEquals(expected.m21, actual.m21);
+            assertEquals(expected.m12, actual.m12);
+            assertEquals(expected.m03, actual.m03);
+
+            mat2f.release();
+            contour.release();
+        }
+    }
+
     @Test
     public void test2019() {
         var firstMat = new MatOfPoint();
@@ -0,0 +1,77 @@
+package org.photonvision.vision.opencv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.util.TestUtils;
+
+public class HSVLookupTableTest {
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    /** @return A 4096x4096 image containing every 8-bit BGR color exactly once. */
+    private static Mat allColors() {
+        var image = new Mat(4096, 4096, CvType.CV_8UC3);
+        byte[] row = new byte[4096 * 3];
+        for (int y = 0; y < 4096; y++) {
+            for (int x = 0; x < 4096; x++) {
+                int color = y * 4096 + x;
+                row[x * 3] = (byte) (color >> 16);
+                row[x * 3 + 1] = (byte) (color >> 8);
+                row[x * 3 + 2] = (byte) color;
+            }
+            image.put(y, 0, row);
+        }
+        return image;
+    }
+
+    private static void assertMatchesOpenCV(Mat image, Scalar lower, Scalar upper) {
+        var hsv = new Mat();
+        var expected = new Mat();
+        Imgproc.cvtColor(image, hsv, Imgproc.COLOR_BGR2HSV, 3);
+        Core.inRange(hsv, lower, upper, expected);
+
+        var table = new HSVLookupTable();
+        table.setBounds(lower, upper);
+        var actual = new Mat();
+        table.apply(image, actual);
+
+        var difference = new Mat();
+        Core.compare(expected, actual, difference, Core.CMP_NE);
+        assertEquals(0, Core.countNonZero(difference), "Mask differs from cvtColor + inRange");
+
+        hsv.release();
+        expected.release();
+        actual.release();
+        difference.release();
+    }
+
+    @Test
+    public void matchesOpenCVForEveryColor() {
+        var image = allColors();
+
+        assertMatchesOpenCV(image, new Scalar(60, 100, 190), new Scalar(100, 255, 255));
+        assertMatchesOpenCV(image, new Scalar(0, 0, 0), new Scalar(180, 255, 255));
+        assertMatchesOpenCV(image, new Scalar(170, 50, 20), new Scalar(180, 120, 90));
+
+        image.release();
+    }
+
+    @Test
+    public void oddSizedImages() {
+        var image = new Mat(37, 53, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+
+        assertMatchesOpenCV(image, new Scalar(10, 40, 40), new Scalar(90, 255, 255));
+
+        image.release();
+    }
+}
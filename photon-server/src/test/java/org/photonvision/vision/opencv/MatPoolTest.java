@@ -0,0 +1,71 @@
+package org.photonvision.vision.opencv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.photonvision.common.util.TestUtils;
+
+public class MatPoolTest {
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    @Test
+    public void reusesMatsOfSameShape() {
+        var pool = new MatPool(2);
+
+        var first = pool.borrow(3, 1, CvType.CV_64FC1);
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+
+        pool.giveBack(first);
+        var second = pool.borrow(3, 1, CvType.CV_64FC1);
+        assertSame(first, second);
+        assertEquals(1, pool.getHitCount());
+
+        // a different type is a different shape
+        var other = pool.borrow(3, 1, CvType.CV_32FC1);
+        assertEquals(2, pool.getMissCount());
+
+        pool.giveBack(second);
+        pool.giveBack(other);
+        pool.clear();
+    }
+
+    @Test
+    public void retentionIsBounded() {
+        var pool = new MatPool(2);
+
+        var a = pool.borrow(10, 10, CvType.CV_8UC1);
+        var b = pool.borrow(10, 10, CvType.CV_8UC1);
+        var c = pool.borrow(10, 10, CvType.CV_8UC1);
+        pool.giveBack(a);
+        pool.giveBack(b);
+        pool.giveBack(c);
+
+        assertEquals(2, pool.getRetainedCount());
+        assertEquals(1, pool.getEvictionCount());
+        pool.clear();
+        assertEquals(0, pool.getRetainedCount());
+    }
+
+    @Test
+    public void steadyStateIsAllocationFree() {
+        var pool = new MatPool(4);
+
+        // warm up
+        pool.giveBack(pool.borrow(480, 640, CvType.CV_8UC3));
+        long misses = pool.getMissCount();
+
+        for (int i = 0; i < 100; i++) {
+            pool.giveBack(pool.borrow(480, 640, CvType.CV_8UC3));
+        }
+
+        assertEquals(misses, pool.getMissCount());
+        pool.clear();
+    }
+}
@@ -0,0 +1,82 @@
+package org.photonvision.vision.opencv;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.photonvision.common.util.TestUtils;
+
+public class MatTrackerTest {
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+        MatTracker.reset();
+    }
+
+    @AfterEach
+    public void restoreMode() {
+        MatTracker.setMode(MatTracker.Mode.COUNT);
+        MatTracker.setSampleInterval(16);
+        MatTracker.setThrowOnOverRelease(false);
+    }
+
+    @Test
+    public void offTracksNothing() {
+        MatTracker.setMode(MatTracker.Mode.OFF);
+
+        var cvMat = new CVMat(new Mat(2, 2, CvType.CV_8UC1));
+        assertEquals(0, MatTracker.getAllocatedCount());
+        cvMat.release();
+        assertEquals(0, MatTracker.getReleasedCount());
+    }
+
+    @Test
+    public void countsLiveMats() {
+        MatTracker.setMode(MatTracker.Mode.COUNT);
+
+        var a = new CVMat(new Mat(2, 2, CvType.CV_8UC1));
+        var b = new CVMat(new Mat(2, 2, CvType.CV_8UC1));
+        assertEquals(2, MatTracker.getLiveCount());
+
+        a.release();
+        b.release();
+        assertEquals(0, MatTracker.getLiveCount());
+        assertTrue(MatTracker.getLiveBytesByClass().isEmpty());
+    }
+
+    @Test
+    public void samplesReportLiveBytesByClass() {
+        MatTracker.setMode(MatTracker.Mode.SAMPLED);
+        MatTracker.setSampleInterval(1);
+
+        var cvMat = new CVMat(new Mat(10, 10, CvType.CV_8UC3));
+        var bytesByClass = MatTracker.getLiveBytesByClass();
+        assertEquals(300L, bytesByClass.get(MatTrackerTest.class.getName()));
+        assertEquals(1, MatTracker.getLiveSamplesBySite().size());
+
+        cvMat.release();
+        assertTrue(MatTracker.getLiveBytesByClass().isEmpty());
+    }
+
+    @Test
+    public void overReleaseIsReported() {
+        MatTracker.setMode(MatTracker.Mode.SAMPLED);
+        MatTracker.setSampleInterval(1);
+
+        var cvMat = new CVMat(new Mat(2, 2, CvType.CV_8UC1));
+        cvMat.release();
+        cvMat.release();
+        assertEquals(1, MatTracker.getOverReleasedCount());
+        assertEquals(1, MatTracker.getReleasedCount());
+
+        MatTracker.setThrowOnOverRelease(true);
+        var error = assertThrows(IllegalStateException.class, cvMat::release);
+        assertTrue(error.getMessage().contains(MatTrackerTest.class.getName()), error.getMessage());
+        assertEquals(2, MatTracker.getOverReleasedCount());
+    }
+}
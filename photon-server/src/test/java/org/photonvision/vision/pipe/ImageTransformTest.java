@@ -0,0 +1,69 @@
+package org.photonvision.vision.pipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.vision.frame.FrameStaticProperties;
+import org.photonvision.vision.pipe.impl.RotateImagePipe;
+
+public class ImageTransformTest {
+    private static final FrameStaticProperties PROPERTIES = new FrameStaticProperties(64, 48, 68.5);
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    @Test
+    public void pointsMatchRotatedImage() {
+        var pipe = new RotateImagePipe();
+        for (var rotation : ImageRotationMode.values()) {
+            for (var flip : ImageFlipMode.values()) {
+                var transform = new ImageTransform(rotation, flip, PROPERTIES);
+                pipe.setParams(new RotateImagePipe.RotateImageParams(rotation, flip));
+
+                // light a single pixel, and see where rotating the image moves it to
+                var image =
+                        Mat.zeros(PROPERTIES.imageHeight, PROPERTIES.imageWidth, CvType.CV_8UC1);
+                image.put(5, 10, 255);
+                var rotated = pipe.apply(image).result;
+                var lit = Core.minMaxLoc(rotated).maxLoc;
+
+                int[] point = {10, 5};
+                transform.apply(point);
+                var message = rotation + ", " + flip;
+                assertEquals(lit.x, point[0], message);
+                assertEquals(lit.y, point[1], message);
+                var properties = transform.getTransformedProperties();
+                assertEquals(rotated.cols(), properties.imageWidth, message);
+                assertEquals(rotated.rows(), properties.imageHeight, message);
+
+                var back = new Point();
+                transform.invert(point[0], point[1], back);
+                assertEquals(10, back.x, message);
+                assertEquals(5, back.y, message);
+
+                var rect = transform.invert(new Rect(point[0], point[1], 1, 1));
+                assertEquals(new Rect(10, 5, 1, 1), rect, message);
+
+                image.release();
+            }
+        }
+    }
+
+    @Test
+    public void rotatingSwapsFocalLengths() {
+        var transform =
+                new ImageTransform(ImageRotationMode.DEG_90, ImageFlipMode.NONE, PROPERTIES);
+        var rotated = transform.getTransformedProperties();
+        assertEquals(PROPERTIES.horizontalFocalLength, rotated.verticalFocalLength, 1e-9);
+        assertEquals(PROPERTIES.verticalFocalLength, rotated.horizontalFocalLength, 1e-9);
+    }
+}
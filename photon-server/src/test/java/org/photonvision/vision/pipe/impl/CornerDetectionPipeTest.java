@@ -0,0 +1,112 @@
+package org.photonvision.vision.pipe.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.common.util.numbers.DoubleCouple;
+import org.photonvision.vision.opencv.Contour;
+import org.photonvision.vision.target.PotentialTarget;
+import org.photonvision.vision.target.RobotOffsetPointMode;
+import org.photonvision.vision.target.TargetOffsetPointEdge;
+import org.photonvision.vision.target.TrackedTarget;
+
+public class CornerDetectionPipeTest {
+    // top left, top right, bottom right, bottom left
+    private static final int[] TRAPEZOID = {100, 100, 200, 100, 210, 180, 90, 180};
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    private static TrackedTarget target(int[] points) {
+        var params =
+                new TrackedTarget.TargetCalculationParameters(
+                        false,
+                        TargetOffsetPointEdge.Center,
+                        new Point(0, 0),
+                        new Point(150, 150),
+                        new DoubleCouple(0.0, 0.0),
+                        RobotOffsetPointMode.None,
+                        61,
+                        34.3,
+                        300 * 300);
+        return new TrackedTarget(new PotentialTarget(new Contour(points)), params);
+    }
+
+    private static CornerDetectionPipe pipe(CornerDetectionPipe.DetectionStrategy strategy) {
+        var pipe = new CornerDetectionPipe();
+        pipe.setParams(
+                new CornerDetectionPipe.CornerDetectionPipeParameters(strategy, true, false, 4, 10));
+        return pipe;
+    }
+
+    private static void assertCorners(List<Point> corners, double delta) {
+        // left top, left bottom, right bottom, right top
+        int[] order = {0, 3, 2, 1};
+        for (int i = 0; i < 4; i++) {
+            assertEquals(TRAPEZOID[2 * order[i]], corners.get(i).x, delta);
+            assertEquals(TRAPEZOID[2 * order[i] + 1], corners.get(i).y, delta);
+        }
+    }
+
+    @Test
+    public void extremeCorners() {
+        var pipe = pipe(CornerDetectionPipe.DetectionStrategy.APPROX_POLY_DP_AND_EXTREME_CORNERS);
+        var outcomes = new ArrayList<CornerDetectionPipe.Outcome>();
+        pipe.setDebugListener((target, outcome, corners) -> outcomes.add(outcome));
+
+        var target = target(TRAPEZOID);
+        pipe.apply(List.of(target));
+
+        assertCorners(target.getTargetCorners(), 0);
+        assertEquals(List.of(CornerDetectionPipe.Outcome.FOUND), outcomes);
+    }
+
+    @Test
+    public void tooFewSides() {
+        var pipe = pipe(CornerDetectionPipe.DetectionStrategy.APPROX_POLY_DP_AND_EXTREME_CORNERS);
+        var outcomes = new ArrayList<CornerDetectionPipe.Outcome>();
+        pipe.setDebugListener((target, outcome, corners) -> outcomes.add(outcome));
+
+        var target = target(new int[] {100, 100, 200, 180, 0, 180});
+        pipe.apply(List.of(target));
+
+        assertNull(target.getTargetCorners());
+        assertEquals(List.of(CornerDetectionPipe.Outcome.TOO_FEW_SIDES), outcomes);
+    }
+
+    @Test
+    public void subpixelRefinement() {
+        var mask = Mat.zeros(300, 300, CvType.CV_8UC1);
+        var polygon = new MatOfPoint();
+        polygon.fromArray(
+                new Point(TRAPEZOID[0], TRAPEZOID[1]),
+                new Point(TRAPEZOID[2], TRAPEZOID[3]),
+                new Point(TRAPEZOID[4], TRAPEZOID[5]),
+                new Point(TRAPEZOID[6], TRAPEZOID[7]));
+        Imgproc.fillConvexPoly(mask, polygon, new Scalar(255));
+
+        var pipe = pipe(CornerDetectionPipe.DetectionStrategy.SUBPIXEL_REFINED);
+        pipe.setImage(mask);
+        var target = target(TRAPEZOID);
+        pipe.apply(List.of(target));
+
+        // refinement settles on the corners of the drawn edges, which are within a pixel or so
+        assertCorners(target.getTargetCorners(), 1.5);
+
+        polygon.release();
+        mask.release();
+    }
+}
@@ -0,0 +1,175 @@
+package org.photonvision.vision.pipe.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.common.util.math.MathUtils;
+import org.photonvision.common.util.numbers.DoubleCouple;
+import org.photonvision.vision.frame.FrameStaticProperties;
+import org.photonvision.vision.opencv.Contour;
+
+public class FilterContoursPipeTest {
+    private static final FrameStaticProperties PROPERTIES =
+            new FrameStaticProperties(640, 480, 68.5);
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    private static List<Contour> randomRectangles(Random random, int count) {
+        var contours = new ArrayList<Contour>();
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(600);
+            int y = random.nextInt(440);
+            int w = 1 + random.nextInt(40);
+            int h = 1 + random.nextInt(40);
+            // a notch in one corner keeps the extent below 100%
+            int notch = Math.min(w, h) / 3;
+            contours.add(
+                    new Contour(
+                            new int[] {
+                                x, y, x + w, y, x + w, y + h - notch, x + w - notch, y + h, x, y + h
+                            }));
+        }
+        return contours;
+    }
+
+    /**
+    * The filtering FilterContoursPipe did before it also rejected speckles, with its area ratio
+    * made a percentage to match the sigmoid of the limits.
+    */
+    private static List<Contour> filterLikeBefore(
+            List<Contour> in, DoubleCouple area, DoubleCouple ratio, DoubleCouple extent) {
+        var filtered = new ArrayList<Contour>();
+        for (Contour contour : in) {
+            // Area Filtering.
+            double contourArea = contour.getArea();
+            double areaRatio = (contourArea / PROPERTIES.imageArea) * 100;
+            double minArea = MathUtils.sigmoid(area.getFirst());
+            double maxArea = MathUtils.sigmoid(area.getSecond());
+            if (areaRatio < minArea || areaRatio > maxArea) continue;
+
+            // Extent Filtering.
+            RotatedRect minAreaRect = contour.getMinAreaRect();
+            double minExtent = extent.getFirst() * minAreaRect.size.area() / 100;
+            double maxExtent = extent.getSecond() * minAreaRect.size.area() / 100;
+            if (contourArea <= minExtent || contourArea >= maxExtent) continue;
+
+            // Aspect Ratio Filtering.
+            Rect boundingRect = contour.getBoundingRect();
+            double aspectRatio = (double) boundingRect.width / boundingRect.height;
+            if (aspectRatio < ratio.getFirst() || aspectRatio > ratio.getSecond()) continue;
+
+            filtered.add(contour);
+        }
+        return filtered;
+    }
+
+    @Test
+    public void sameAsSpeckleRejectThenFilter() {
+        var random = new Random(1337);
+        var area = new DoubleCouple(0.0, 100.0);
+        var ratio = new DoubleCouple(0.5, 2.0);
+        var extent = new DoubleCouple(60.0, 100.0);
+
+        var specklePipe = new SpeckleRejectPipe();
+        specklePipe.setParams(new SpeckleRejectPipe.SpeckleRejectParams(20));
+        var fusedPipe = new FilterContoursPipe();
+        fusedPipe.setParams(
+                new FilterContoursPipe.FilterContoursParams(area, ratio, extent, PROPERTIES, 20));
+
+        long kept = 0;
+        for (int frame = 0; frame < 20; frame++) {
+            var contours = randomRectangles(random, 300);
+
+            var despeckled = specklePipe.apply(contours).result;
+            var expected = filterLikeBefore(despeckled, area, ratio, extent);
+            var actual = fusedPipe.apply(contours).result;
+            assertEquals(expected, actual);
+            kept += actual.size();
+        }
+
+        long rejected = 0;
+        for (var rule : FilterContoursPipe.Rule.values()) {
+            rejected += fusedPipe.getRejectedCount(rule);
+        }
+        assertEquals(20 * 300 - kept, rejected);
+    }
+
+    @Test
+    public void sameAsSpeckleRejectWithoutFiltering() {
+        var random = new Random(1337);
+        // limits that would reject most contours, if they were applied
+        var area = new DoubleCouple(90.0, 100.0);
+        var ratio = new DoubleCouple(0.9, 1.1);
+        var extent = new DoubleCouple(99.0, 100.0);
+
+        var specklePipe = new SpeckleRejectPipe();
+        specklePipe.setParams(new SpeckleRejectPipe.SpeckleRejectParams(20));
+        var fusedPipe = new FilterContoursPipe();
+        fusedPipe.setParams(
+                new FilterContoursPipe.FilterContoursParams(
+                        area, ratio, extent, PROPERTIES, 20, false));
+
+        for (int frame = 0; frame < 20; frame++) {
+            var contours = randomRectangles(random, 300);
+
+            // the speckle pipe's list is reused, so compare before the next frame
+            var expected = new ArrayList<>(specklePipe.apply(contours).result);
+            assertEquals(expected, fusedPipe.apply(contours).result);
+        }
+        assertEquals(0, fusedPipe.getRejectedCount(FilterContoursPipe.Rule.AREA));
+        assertEquals(0, fusedPipe.getRejectedCount(FilterContoursPipe.Rule.ASPECT_RATIO));
+        assertEquals(0, fusedPipe.getRejectedCount(FilterContoursPipe.Rule.EXTENT));
+    }
+
+    @Test
+    public void areaLimitsGoThroughSigmoid() {
+        // covers just under 1% of the image, and most of its min area rect
+        var contour = new Contour(new int[] {100, 100, 164, 100, 164, 132, 148, 148, 100, 148});
+
+        // a slider value of 10 is about 0.86% of the image
+        var pipe = new FilterContoursPipe();
+        pipe.setParams(
+                new FilterContoursPipe.FilterContoursParams(
+                        new DoubleCouple(10.0, 100.0),
+                        new DoubleCouple(0.0, 20.0),
+                        new DoubleCouple(0.0, 100.0),
+                        PROPERTIES));
+        assertEquals(List.of(contour), pipe.apply(List.of(contour)).result);
+
+        // and 12 about 1.09%
+        pipe.setParams(
+                new FilterContoursPipe.FilterContoursParams(
+                        new DoubleCouple(12.0, 100.0),
+                        new DoubleCouple(0.0, 20.0),
+                        new DoubleCouple(0.0, 100.0),
+                        PROPERTIES));
+        assertEquals(0, pipe.apply(List.of(contour)).result.size());
+        assertEquals(1, pipe.getRejectedCount(FilterContoursPipe.Rule.AREA));
+    }
+
+    @Test
+    public void extentLimitsAreExclusive() {
+        // fills its min area rect exactly
+        var rectangle = new Contour(new int[] {100, 100, 164, 100, 164, 148, 100, 148});
+
+        var pipe = new FilterContoursPipe();
+        pipe.setParams(
+                new FilterContoursPipe.FilterContoursParams(
+                        new DoubleCouple(0.0, 100.0),
+                        new DoubleCouple(0.0, 20.0),
+                        new DoubleCouple(0.0, 100.0),
+                        PROPERTIES));
+        assertEquals(0, pipe.apply(List.of(rectangle)).result.size());
+        assertEquals(1, pipe.getRejectedCount(FilterContoursPipe.Rule.EXTENT));
+    }
+}
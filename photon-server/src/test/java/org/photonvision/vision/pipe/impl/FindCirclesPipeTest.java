@@ -0,0 +1,67 @@
+package org.photonvision.vision.pipe.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.vision.opencv.CVShape;
+import org.photonvision.vision.opencv.Contour;
+
+public class FindCirclesPipeTest {
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    private static List<Contour> findContours(Mat mask) {
+        var found = new ArrayList<MatOfPoint>();
+        var hierarchy = new Mat();
+        Imgproc.findContours(
+                mask, found, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_TC89_L1);
+        hierarchy.release();
+        var contours = new ArrayList<Contour>();
+        for (var m : found) {
+            contours.add(Contour.copyOf(m));
+            m.release();
+        }
+        return contours;
+    }
+
+    private static List<Contour> contoursOf(List<CVShape> shapes) {
+        return shapes.stream().map(CVShape::getContour).collect(Collectors.toList());
+    }
+
+    @Test
+    public void nearContoursMatchesWholeImage() {
+        var mask = Mat.zeros(480, 640, CvType.CV_8UC1);
+        Imgproc.circle(mask, new Point(100, 100), 30, new Scalar(255), -1);
+        Imgproc.circle(mask, new Point(400, 300), 40, new Scalar(255), -1);
+        var contours = findContours(mask);
+        assertEquals(2, contours.size());
+
+        var wholeImage = new FindCirclesPipe();
+        wholeImage.setParams(new FindCirclesPipe.FindCirclePipeParams(5, 0, 10, 0, 90, 20, false));
+        var nearContours = new FindCirclesPipe();
+        nearContours.setParams(new FindCirclesPipe.FindCirclePipeParams(5, 0, 10, 0, 90, 20, true));
+
+        var expected = contoursOf(wholeImage.apply(Pair.of(mask, contours)).result);
+        var actual = contoursOf(nearContours.apply(Pair.of(mask, contours)).result);
+
+        assertTrue(expected.containsAll(contours), "Both circles should be found");
+        assertEquals(expected, actual);
+
+        mask.release();
+    }
+}
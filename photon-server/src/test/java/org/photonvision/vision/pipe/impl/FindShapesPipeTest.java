@@ -0,0 +1,133 @@
+package org.photonvision.vision.pipe.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.vision.opencv.CVShape;
+import org.photonvision.vision.opencv.Contour;
+import org.photonvision.vision.opencv.ContourShape;
+
+public class FindShapesPipeTest {
+    // one of each shape, in the order findContours returns them
+    private List<Contour> contours;
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+
+        var mask = Mat.zeros(480, 640, CvType.CV_8UC1);
+        var triangle = new MatOfPoint(new Point(100, 50), new Point(160, 150), new Point(40, 150));
+        Imgproc.fillConvexPoly(mask, triangle, new Scalar(255));
+        Imgproc.rectangle(mask, new Point(250, 200), new Point(350, 280), new Scalar(255), -1);
+        Imgproc.circle(mask, new Point(500, 350), 50, new Scalar(255), -1);
+        var pentagon =
+                new MatOfPoint(
+                        new Point(100, 300),
+                        new Point(220, 300),
+                        new Point(220, 340),
+                        new Point(160, 370),
+                        new Point(100, 340));
+        Imgproc.fillConvexPoly(mask, pentagon, new Scalar(255));
+
+        var found = new ArrayList<MatOfPoint>();
+        var hierarchy = new Mat();
+        Imgproc.findContours(
+                mask, found, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_TC89_L1);
+        contours = new ArrayList<>();
+        for (var m : found) {
+            contours.add(Contour.copyOf(m));
+            m.release();
+        }
+
+        hierarchy.release();
+        triangle.release();
+        pentagon.release();
+        mask.release();
+    }
+
+    private List<Contour> find(ContourShape shape, double minArea, int bandCount) {
+        var pipe = new FindShapesPipe();
+        pipe.setParams(
+                new FindShapesPipe.FindShapesParams(
+                        shape,
+                        10,
+                        minArea,
+                        Integer.MAX_VALUE,
+                        0,
+                        Integer.MAX_VALUE,
+                        0.8,
+                        bandCount));
+        return pipe.apply(contours).result.stream()
+                .map(CVShape::getContour)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void classifiesEachShape() {
+        assertEquals(4, contours.size());
+        // the pentagon has more than 4 sides, but isn't round enough to be a circle
+        for (var shape :
+                List.of(ContourShape.Triangle, ContourShape.Quadrilateral, ContourShape.Circle)) {
+            var found = find(shape, 0, 1);
+            assertEquals(1, found.size(), "Expected exactly one " + shape);
+        }
+        // when circles aren't wanted, the circle is just another many sided shape
+        assertEquals(2, find(ContourShape.Custom, 0, 1).size());
+        var circle = find(ContourShape.Circle, 0, 1).get(0);
+        assertEquals(500, circle.getCentroid().x, 1);
+        assertEquals(350, circle.getCentroid().y, 1);
+    }
+
+    @Test
+    public void regularPolygonsAreCustom() {
+        // a regular hexagon is round enough to pass the circularity check
+        var mask = Mat.zeros(480, 640, CvType.CV_8UC1);
+        var points = new Point[6];
+        for (int i = 0; i < points.length; i++) {
+            double angle = i * Math.PI / 3;
+            points[i] = new Point(320 + 100 * Math.cos(angle), 240 + 100 * Math.sin(angle));
+        }
+        var hexagon = new MatOfPoint(points);
+        Imgproc.fillConvexPoly(mask, hexagon, new Scalar(255));
+
+        var found = new ArrayList<MatOfPoint>();
+        var hierarchy = new Mat();
+        Imgproc.findContours(
+                mask, found, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_TC89_L1);
+        contours = List.of(Contour.copyOf(found.get(0)));
+
+        var custom = find(ContourShape.Custom, 0, 1);
+        assertEquals(1, custom.size());
+        assertEquals(320, custom.get(0).getCentroid().x, 1);
+
+        found.forEach(Mat::release);
+        hierarchy.release();
+        hexagon.release();
+        mask.release();
+    }
+
+    @Test
+    public void filtersByArea() {
+        // the rectangle is 8000 square pixels, the circle about 7850
+        assertEquals(1, find(ContourShape.Quadrilateral, 7900, 1).size());
+        assertEquals(0, find(ContourShape.Circle, 7900, 1).size());
+    }
+
+    @Test
+    public void parallelMatchesSerial() {
+        for (var shape : ContourShape.values()) {
+            assertEquals(find(shape, 0, 1), find(shape, 0, 3));
+        }
+    }
+}
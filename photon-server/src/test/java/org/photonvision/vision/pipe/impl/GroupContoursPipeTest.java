@@ -0,0 +1,200 @@
+package org.photonvision.vision.pipe.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Rect;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.vision.opencv.Contour;
+import org.photonvision.vision.opencv.ContourGroupingMode;
+import org.photonvision.vision.opencv.ContourIntersectionDirection;
+
+public class GroupContoursPipeTest {
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    private static List<Contour> squares(int count) {
+        var contours = new ArrayList<Contour>();
+        for (int i = 0; i < count; i++) {
+            int x = i * 20;
+            contours.add(new Contour(new int[] {x, 0, x + 10, 0, x + 10, 10, x, 10}));
+        }
+        return contours;
+    }
+
+    @Test
+    public void groupsOfThree() {
+        var pipe = new GroupContoursPipe();
+        pipe.setParams(
+                new GroupContoursPipe.GroupContoursParams(
+                        ContourGroupingMode.Triple, ContourIntersectionDirection.None));
+
+        var input = squares(7);
+        var inputOrder = new ArrayList<>(input);
+        var targets = pipe.apply(input).result;
+
+        // grouped from the right, leaving the leftmost square over
+        assertEquals(2, targets.size());
+        assertEquals(3, targets.get(0).m_subContours.size());
+        assertEquals(new Rect(80, 0, 51, 11), targets.get(0).m_mainContour.getBoundingRect());
+        assertEquals(inputOrder.get(6), targets.get(0).m_subContours.get(0));
+        assertEquals(inputOrder, input, "The input list must not be reordered");
+    }
+
+    @Test
+    public void exactlyEnoughContours() {
+        var pipe = new GroupContoursPipe();
+        pipe.setParams(
+                new GroupContoursPipe.GroupContoursParams(
+                        ContourGroupingMode.Dual, ContourIntersectionDirection.None));
+
+        assertEquals(1, pipe.apply(squares(2)).result.size());
+    }
+
+    /** Counts how many times it is tested against each other contour. */
+    private static class CountingContour extends Contour {
+        private final Map<List<Contour>, Integer> m_tests;
+
+        CountingContour(int[] points, Map<List<Contour>, Integer> tests) {
+            super(points);
+            m_tests = tests;
+        }
+
+        @Override
+        public boolean isIntersecting(
+                Contour secondContour, ContourIntersectionDirection intersectionDirection) {
+            m_tests.merge(List.of(this, secondContour), 1, Integer::sum);
+            return super.isIntersecting(secondContour, intersectionDirection);
+        }
+    }
+
+    /** A 6x40 strip, tilted from vertical, with points along its sides so it can fit an ellipse. */
+    private static int[] strip(double centerX, double centerY, double tiltDegrees) {
+        double[] outline = {-3, -20, 0, -20, 3, -20, 3, 0, 3, 20, 0, 20, -3, 20, -3, 0};
+        double sin = Math.sin(Math.toRadians(tiltDegrees));
+        double cos = Math.cos(Math.toRadians(tiltDegrees));
+        var points = new int[outline.length];
+        for (int i = 0; i < outline.length; i += 2) {
+            points[i] = (int) Math.round(centerX + outline[i] * cos - outline[i + 1] * sin);
+            points[i + 1] = (int) Math.round(centerY + outline[i] * sin + outline[i + 1] * cos);
+        }
+        return points;
+    }
+
+    private static List<Contour> randomStrips(
+            Random random, int count, Map<List<Contour>, Integer> tests) {
+        var contours = new ArrayList<Contour>();
+        for (int i = 0; i < count; i++) {
+            // never upright or parallel to a neighbour by construction, so every pair has a side
+            double tilt = (10 + random.nextInt(30)) * (random.nextBoolean() ? 1 : -1);
+            contours.add(new CountingContour(strip(30 + i * 50, 100, tilt), tests));
+        }
+        return contours;
+    }
+
+    /**
+    * Group the way the pipe is documented to, testing every window from scratch and sliding it by
+    * a single contour whenever it doesn't group.
+    *
+    * @param groups Filled with the groups, rightmost first.
+    * @return The number of windows that were only broken after their first pair.
+    */
+    private static int groupNaively(
+            List<Contour> input,
+            int count,
+            ContourIntersectionDirection direction,
+            List<List<Contour>> groups) {
+        var sorted = new ArrayList<>(input);
+        sorted.sort(Contour.SortByMomentsX);
+        Collections.reverse(sorted);
+
+        int brokenInMiddle = 0;
+        int start = 0;
+        while (start + count <= sorted.size()) {
+            int linkedPairs = 0;
+            while (linkedPairs < count - 1
+                    && Contour.areIntersecting(
+                            sorted.get(start + linkedPairs),
+                            sorted.get(start + linkedPairs + 1),
+                            direction)) {
+                linkedPairs++;
+            }
+            if (linkedPairs == count - 1) {
+                groups.add(sorted.subList(start, start + count));
+                start += count;
+            } else {
+                if (linkedPairs > 0) brokenInMiddle++;
+                start++;
+            }
+        }
+        return brokenInMiddle;
+    }
+
+    @Test
+    public void intersectingGroupsMatchSlidingWindow() {
+        var random = new Random(2019);
+        var tests = new HashMap<List<Contour>, Integer>();
+        int groupCount = 0;
+        int brokenInMiddle = 0;
+
+        for (var direction :
+                List.of(ContourIntersectionDirection.Up, ContourIntersectionDirection.Down)) {
+            for (var mode : List.of(ContourGroupingMode.Dual, ContourGroupingMode.Triple)) {
+                var pipe = new GroupContoursPipe();
+                pipe.setParams(new GroupContoursPipe.GroupContoursParams(mode, direction));
+
+                for (int frame = 0; frame < 50; frame++) {
+                    var contours = randomStrips(random, 12, tests);
+                    var expected = new ArrayList<List<Contour>>();
+                    int broken = groupNaively(contours, mode.count, direction, expected);
+                    if (mode == ContourGroupingMode.Triple) brokenInMiddle += broken;
+
+                    var targets = pipe.apply(contours).result;
+                    assertEquals(expected.size(), targets.size(), direction + " " + mode);
+                    for (int i = 0; i < targets.size(); i++) {
+                        assertEquals(expected.get(i), targets.get(i).m_subContours);
+                    }
+                    groupCount += targets.size();
+                }
+            }
+        }
+
+        // the strips must have both grouped, and broken triples after their first pair, for the
+        // sweep's jumps to have been compared at all
+        assertTrue(groupCount > 0);
+        assertTrue(brokenInMiddle > 0);
+    }
+
+    @Test
+    public void eachNeighbouringPairIsTestedOnce() {
+        var random = new Random(2020);
+        var tests = new HashMap<List<Contour>, Integer>();
+        var pipe = new GroupContoursPipe();
+        pipe.setParams(
+                new GroupContoursPipe.GroupContoursParams(
+                        ContourGroupingMode.Triple, ContourIntersectionDirection.Up));
+
+        for (int frame = 0; frame < 50; frame++) {
+            var contours = randomStrips(random, 12, tests);
+            tests.clear();
+            pipe.apply(contours);
+
+            // a pair that intersects one way round isn't tested the other way, so at most one test
+            // each way round, and only between the 11 neighbouring pairs
+            assertTrue(tests.size() <= 2 * 11, "tested " + tests.size() + " ordered pairs");
+            for (var entry : tests.entrySet()) {
+                assertEquals(1, entry.getValue(), "pair tested " + entry.getValue() + " times");
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.photonvision.vision.pipe.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.util.TestUtils;
+
+public class MorphologyPipeTest {
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    // a 100x100 square with a hole in it, and a speckle off to the side
+    private static Mat mask() {
+        var mask = Mat.zeros(200, 200, CvType.CV_8UC1);
+        Imgproc.rectangle(mask, new Point(50, 50), new Point(149, 149), new Scalar(255), -1);
+        Imgproc.rectangle(mask, new Point(99, 99), new Point(100, 100), new Scalar(0), -1);
+        Imgproc.rectangle(mask, new Point(10, 10), new Point(11, 11), new Scalar(255), -1);
+        return mask;
+    }
+
+    private static Mat apply(MorphologyPipe.Operation operation, Mat mask) {
+        var pipe = new MorphologyPipe();
+        pipe.setParams(
+                new MorphologyPipe.MorphologyParams(
+                        operation, MorphologyPipe.KernelShape.Rectangle, 5, 1));
+        return pipe.apply(mask).result;
+    }
+
+    @Test
+    public void openRemovesSpeckles() {
+        var mask = apply(MorphologyPipe.Operation.Open, mask());
+        assertEquals(0, mask.get(10, 10)[0]);
+        // the hole is left, as is the square around it
+        assertEquals(0, mask.get(99, 99)[0]);
+        assertEquals(100 * 100 - 4, Core.countNonZero(mask));
+        mask.release();
+    }
+
+    @Test
+    public void closeFillsHoles() {
+        var mask = apply(MorphologyPipe.Operation.Close, mask());
+        assertEquals(255, mask.get(99, 99)[0]);
+        assertEquals(255, mask.get(10, 10)[0]);
+        assertEquals(100 * 100 + 4, Core.countNonZero(mask));
+        mask.release();
+    }
+
+    @Test
+    public void noneLeavesMask() {
+        var mask = apply(MorphologyPipe.Operation.None, mask());
+        // the hole and the speckle are the same size, so cancel out
+        assertEquals(100 * 100, Core.countNonZero(mask));
+        mask.release();
+    }
+}
@@ -0,0 +1,87 @@
+package org.photonvision.vision.pipe.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.vision.frame.FrameStaticProperties;
+import org.photonvision.vision.opencv.Contour;
+import org.photonvision.vision.opencv.ContourSortMode;
+import org.photonvision.vision.target.PotentialTarget;
+
+public class SortContoursPipeTest {
+    private static final FrameStaticProperties PROPERTIES =
+            new FrameStaticProperties(640, 480, 68.5);
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    public static List<PotentialTarget> randomTargets(Random random, int count) {
+        var targets = new ArrayList<PotentialTarget>();
+        for (int i = 0; i < count; i++) {
+            // a coarse grid, so plenty of targets tie
+            int x = random.nextInt(16) * 40;
+            int y = random.nextInt(12) * 40;
+            int w = 4 + random.nextInt(4) * 8;
+            int h = 4 + random.nextInt(4) * 8;
+            var points = new int[] {x, y, x + w, y, x + w, y + h, x, y + h};
+            targets.add(new PotentialTarget(new Contour(points)));
+        }
+        return targets;
+    }
+
+    /** What the pipe used to do: a stable sort of the whole list. */
+    public static List<PotentialTarget> fullSort(
+            List<PotentialTarget> in, ContourSortMode sortMode, int maxTargets) {
+        var sorted = new ArrayList<>(in);
+        if (sortMode != ContourSortMode.Centermost) {
+            sorted.sort(sortMode.getComparator());
+        } else {
+            sorted.sort(Comparator.comparingDouble(SortContoursPipeTest::centerDistance));
+        }
+        return new ArrayList<>(sorted.subList(0, Math.min(in.size(), maxTargets)));
+    }
+
+    private static double centerDistance(PotentialTarget target) {
+        return FastMath.sqrt(
+                FastMath.pow(PROPERTIES.centerX - target.getMinAreaRect().center.x, 2)
+                        + FastMath.pow(PROPERTIES.centerY - target.getMinAreaRect().center.y, 2));
+    }
+
+    @Test
+    public void matchesFullSort() {
+        var random = new Random(17);
+        var pipe = new SortContoursPipe();
+        for (var sortMode : ContourSortMode.values()) {
+            for (int maxTargets : new int[] {1, 5, 100}) {
+                pipe.setParams(
+                        new SortContoursPipe.SortContoursParams(sortMode, PROPERTIES, maxTargets));
+                for (int trial = 0; trial < 20; trial++) {
+                    var targets = randomTargets(random, random.nextInt(40));
+                    var expected = fullSort(targets, sortMode, maxTargets);
+                    var actual = new ArrayList<>(pipe.apply(targets).result);
+                    assertEquals(expected, actual, sortMode + ", max " + maxTargets);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keepsAtMostMaxTargets() {
+        var pipe = new SortContoursPipe();
+        pipe.setParams(
+                new SortContoursPipe.SortContoursParams(ContourSortMode.Largest, PROPERTIES, 5));
+
+        assertEquals(5, pipe.apply(randomTargets(new Random(3), 12)).result.size());
+        assertEquals(2, pipe.apply(randomTargets(new Random(3), 2)).result.size());
+        assertEquals(0, pipe.apply(new ArrayList<>()).result.size());
+    }
+}
@@ -0,0 +1,104 @@
+package org.photonvision.vision.pipe.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.common.util.numbers.IntegerCouple;
+import org.photonvision.vision.opencv.Contour;
+
+public class TiledProcessingTest {
+    // deliberately not a divisor of any test image height
+    private static final int BAND_COUNT = 7;
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    @Test
+    public void matchesSingleThreadedOnTestImages() {
+        var images = new ArrayList<String>();
+        for (var image : TestUtils.WPI2019Image.values()) {
+            images.add(TestUtils.getWPIImagePath(image).toString());
+        }
+        for (var image : TestUtils.WPI2020Image.values()) {
+            images.add(TestUtils.getWPIImagePath(image).toString());
+        }
+
+        for (var path : images) {
+            Mat image = Imgcodecs.imread(path);
+            Mat singleMask = process(image.clone(), 1);
+            Mat tiledMask = process(image.clone(), BAND_COUNT);
+
+            var difference = new Mat();
+            Core.compare(singleMask, tiledMask, difference, Core.CMP_NE);
+            assertEquals(0, Core.countNonZero(difference), "Mask differs for " + path);
+
+            assertSameContours(singleMask, path);
+            image.release();
+        }
+    }
+
+    @Test
+    public void blobsAcrossAndInsideOtherBlobs() {
+        var mask = Mat.zeros(350, 400, CvType.CV_8UC1);
+        // a ring spanning several bands, with a blob in its hole that is wholly inside one band
+        Imgproc.circle(mask, new Point(200, 175), 120, new Scalar(255), 20);
+        Imgproc.rectangle(mask, new Point(190, 160), new Point(210, 190), new Scalar(255), -1);
+        // a blob ending exactly on a band boundary, and one starting on the next row
+        Imgproc.rectangle(mask, new Point(10, 10), new Point(30, 49), new Scalar(255), -1);
+        Imgproc.rectangle(mask, new Point(35, 50), new Point(55, 70), new Scalar(255), -1);
+        // a thin diagonal line crossing every band
+        Imgproc.line(mask, new Point(360, 0), new Point(390, 349), new Scalar(255), 1);
+
+        assertSameContours(mask, "synthetic mask");
+    }
+
+    private static Mat process(Mat image, int bandCount) {
+        var erodeDilatePipe = new ErodeDilatePipe();
+        erodeDilatePipe.setParams(new ErodeDilatePipe.ErodeDilateParams(true, true, 5, bandCount));
+        var hsvPipe = new HSVPipe();
+        hsvPipe.setParams(
+                new HSVPipe.HSVParams(
+                        new IntegerCouple(60, 100),
+                        new IntegerCouple(100, 255),
+                        new IntegerCouple(100, 255),
+                        false,
+                        bandCount));
+
+        return hsvPipe.apply(erodeDilatePipe.apply(image).result).result;
+    }
+
+    private static void assertSameContours(Mat mask, String name) {
+        var singlePipe = new FindContoursPipe();
+        singlePipe.setParams(new FindContoursPipe.FindContoursParams(1));
+        var tiledPipe = new FindContoursPipe();
+        tiledPipe.setParams(new FindContoursPipe.FindContoursParams(BAND_COUNT));
+
+        // in the same order too, not just the same set
+        List<String> single = describe(singlePipe.apply(mask).result);
+        assertEquals(single, describe(tiledPipe.apply(mask).result), "Contours differ for " + name);
+        // and again, with the buffers from the first run reused
+        assertEquals(single, describe(tiledPipe.apply(mask).result), "Contours differ for " + name);
+    }
+
+    private static List<String> describe(List<Contour> contours) {
+        var descriptions = new ArrayList<String>();
+        for (var contour : contours) {
+            descriptions.add(Arrays.toString(contour.getPoints()));
+        }
+        return descriptions;
+    }
+}
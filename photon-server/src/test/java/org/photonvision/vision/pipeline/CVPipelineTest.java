@@ -0,0 +1,93 @@
+package org.photonvision.vision.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.photonvision.common.metrics.MetricsRegistry;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.vision.frame.FrameStaticProperties;
+import org.photonvision.vision.pipe.impl.HSVPipe;
+
+public class CVPipelineTest {
+    private static final FrameStaticProperties props = new FrameStaticProperties(320, 240, 70);
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    @Test
+    public void paramsAreOnlyRebuiltWhenDirty() {
+        var pipeline = new ReflectivePipeline();
+
+        assertTrue(pipeline.updatePipeParams(props));
+        assertFalse(pipeline.updatePipeParams(props));
+
+        pipeline.getSettings().hsvHue.set(10, 20);
+        pipeline.getSettings().markDirty();
+        assertTrue(pipeline.updatePipeParams(props));
+        assertFalse(pipeline.updatePipeParams(props));
+
+        // a new resolution needs new params too
+        assertTrue(pipeline.updatePipeParams(new FrameStaticProperties(640, 480, 70)));
+    }
+
+    @Test
+    public void paramsAreRebuiltWhenChangedInPlace() {
+        var pipeline = new ReflectivePipeline();
+        assertTrue(pipeline.updatePipeParams(props));
+
+        // settings are public fields, and the UI may change them without marking them dirty
+        pipeline.getSettings().hsvHue.set(10, 20);
+        assertTrue(pipeline.updatePipeParams(props));
+        assertFalse(pipeline.updatePipeParams(props));
+
+        pipeline.getSettings().contourSpecklePercentage = 20;
+        assertTrue(pipeline.updatePipeParams(props));
+        assertFalse(pipeline.updatePipeParams(props));
+
+        var driverMode = new DriverModePipeline();
+        assertTrue(driverMode.updatePipeParams(props));
+        driverMode.getSettings().offsetPoint.set(1.0, 2.0);
+        assertTrue(driverMode.updatePipeParams(props));
+        assertFalse(driverMode.updatePipeParams(props));
+    }
+
+    /** Two pipes of the same class, which must not share a histogram. */
+    private static class TwoThresholdPipeline extends DriverModePipeline {
+        private final HSVPipe firstHsvPipe = new HSVPipe();
+        private final HSVPipe secondHsvPipe = new HSVPipe();
+    }
+
+    @Test
+    public void pipesAreTimedByFieldName() {
+        new TwoThresholdPipeline().setMetricsScope("CVPipelineTest");
+
+        var prefix = "CVPipelineTest/TwoThresholdPipeline#0/";
+        var names = MetricsRegistry.getInstance().snapshot(prefix).keySet();
+        assertTrue(names.contains(prefix + "firstHsvPipe"), names.toString());
+        assertTrue(names.contains(prefix + "secondHsvPipe"), names.toString());
+    }
+
+    @Test
+    public void steadyStateParamsSetupIsAllocationFree() {
+        var pipeline = new ReflectivePipeline();
+        pipeline.updatePipeParams(props);
+
+        var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        int frames = 100_000;
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < frames; i++) {
+            pipeline.updatePipeParams(props);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        // allow for the measurement itself, which is far less than a byte per frame
+        assertTrue(allocated < frames, "params setup allocated " + allocated + " bytes");
+    }
+}
@@ -1,13 +1,21 @@
 package org.photonvision.vision.pipeline;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.photonvision.common.util.TestUtils;
+import org.photonvision.vision.calibration.CameraCalibrationCoefficients;
 import org.photonvision.vision.frame.Frame;
+import org.photonvision.vision.frame.FrameDivisor;
 import org.photonvision.vision.frame.provider.FileFrameProvider;
 import org.photonvision.vision.opencv.CVMat;
 import org.photonvision.vision.opencv.ContourGroupingMode;
 import org.photonvision.vision.opencv.ContourIntersectionDirection;
+import org.photonvision.vision.pipe.ImageRotationMode;
 
 public class ReflectivePipelineTest {
 
@@ -41,6 +49,231 @@ public class ReflectivePipelineTest {
         TestUtils.showImage(pipelineResult.outputFrame.image.getMat(), "Pipeline output");
     }
 
+    @Test
+    public void targetsWithoutOutput() {
+        TestUtils.loadLibraries();
+        var pipeline = new ReflectivePipeline();
+        pipeline.getSettings().hsvHue.set(60, 100);
+        pipeline.getSettings().hsvSaturation.set(100, 255);
+        pipeline.getSettings().hsvValue.set(190, 255);
+        pipeline.getSettings().contourGroupingMode = ContourGroupingMode.Dual;
+        pipeline.getSettings().contourIntersection = ContourIntersectionDirection.Up;
+
+        var frameProvider =
+                new FileFrameProvider(
+                        TestUtils.getWPIImagePath(TestUtils.WPI2019Image.kCargoStraightDark72in_HighRes),
+                        TestUtils.WPI2019Image.FOV);
+
+        CVPipelineResult pipelineResult = pipeline.run(frameProvider.get(), false);
+        printTestResults(pipelineResult);
+
+        Assertions.assertFalse(pipelineResult.hasOutputFrame());
+        Assertions.assertEquals(2, pipelineResult.targets.size(), "Target count wrong!");
+        pipelineResult.release();
+    }
+
+    @Test
+    public void regionOfInterestTracking() {
+        TestUtils.loadLibraries();
+        var pipeline = new ReflectivePipeline();
+        pipeline.getSettings().hsvHue.set(60, 100);
+        pipeline.getSettings().hsvSaturation.set(100, 255);
+        pipeline.getSettings().hsvValue.set(190, 255);
+        pipeline.getSettings().contourGroupingMode = ContourGroupingMode.Dual;
+        pipeline.getSettings().contourIntersection = ContourIntersectionDirection.Up;
+        pipeline.getSettings().roiTrackingEnabled = true;
+
+        var frameProvider =
+                new FileFrameProvider(
+                        TestUtils.getWPIImagePath(TestUtils.WPI2019Image.kCargoStraightDark72in_HighRes),
+                        TestUtils.WPI2019Image.FOV);
+
+        // the first frame is a full scan, the second only looks around the first one's targets
+        CVPipelineResult fullScan = pipeline.run(frameProvider.get(), false);
+        CVPipelineResult windowed = pipeline.run(frameProvider.get(), false);
+        printTestResults(windowed);
+
+        Assertions.assertEquals(2, fullScan.targets.size(), "Target count wrong!");
+        Assertions.assertEquals(fullScan.targets.size(), windowed.targets.size());
+        for (int i = 0; i < fullScan.targets.size(); i++) {
+            Assertions.assertEquals(
+                    fullScan.targets.get(i).getYaw(), windowed.targets.get(i).getYaw(), 1e-9);
+            Assertions.assertEquals(
+                    fullScan.targets.get(i).getPitch(), windowed.targets.get(i).getPitch(), 1e-9);
+        }
+        fullScan.release();
+        windowed.release();
+    }
+
+    @Test
+    public void coarseToFine() {
+        TestUtils.loadLibraries();
+        var fullPipeline = new ReflectivePipeline();
+        var coarsePipeline = new ReflectivePipeline();
+        for (var settings : List.of(fullPipeline.getSettings(), coarsePipeline.getSettings())) {
+            settings.hsvHue.set(60, 100);
+            settings.hsvSaturation.set(100, 255);
+            settings.hsvValue.set(190, 255);
+            settings.contourGroupingMode = ContourGroupingMode.Dual;
+            settings.contourIntersection = ContourIntersectionDirection.Up;
+        }
+        coarsePipeline.getSettings().coarseDetectionDivisor = FrameDivisor.QUARTER;
+
+        var frameProvider =
+                new FileFrameProvider(
+                        TestUtils.getWPIImagePath(TestUtils.WPI2019Image.kCargoStraightDark72in_HighRes),
+                        TestUtils.WPI2019Image.FOV);
+
+        CVPipelineResult full = fullPipeline.run(frameProvider.get(), false);
+        CVPipelineResult coarse = coarsePipeline.run(frameProvider.get(), false);
+        printTestResults(coarse);
+
+        // the contours are still found at full resolution, so the targets are exactly the same
+        Assertions.assertEquals(2, coarse.targets.size(), "Target count wrong!");
+        for (int i = 0; i < full.targets.size(); i++) {
+            Assertions.assertEquals(full.targets.get(i).getYaw(), coarse.targets.get(i).getYaw(), 1e-9);
+            Assertions.assertEquals(
+                    full.targets.get(i).getPitch(), coarse.targets.get(i).getPitch(), 1e-9);
+        }
+        full.release();
+        coarse.release();
+    }
+
+    @Test
+    public void transformedCoordinates() {
+        TestUtils.loadLibraries();
+        var rotatedPipeline = new ReflectivePipeline();
+        var transformedPipeline = new ReflectivePipeline();
+        for (var pipeline : List.of(rotatedPipeline, transformedPipeline)) {
+            var settings = pipeline.getSettings();
+            settings.hsvHue.set(60, 100);
+            settings.hsvSaturation.set(100, 255);
+            settings.hsvValue.set(190, 255);
+            settings.inputImageRotationMode = ImageRotationMode.DEG_180;
+        }
+        transformedPipeline.getSettings().inputImageTransformCoordinates = true;
+
+        // rotating modifies the frame, so each pipeline gets its own
+        var path = TestUtils.getWPIImagePath(TestUtils.WPI2019Image.kCargoStraightDark72in_HighRes);
+        var rotatedFrames = new FileFrameProvider(path, TestUtils.WPI2019Image.FOV);
+        var transformedFrames = new FileFrameProvider(path, TestUtils.WPI2019Image.FOV);
+
+        CVPipelineResult rotated = rotatedPipeline.run(rotatedFrames.get());
+        CVPipelineResult transformed = transformedPipeline.run(transformedFrames.get());
+        printTestResults(transformed);
+
+        // a 180 degree rotation moves every pixel exactly, so the targets are exactly the same
+        Assertions.assertTrue(transformed.hasTargets());
+        Assertions.assertEquals(rotated.targets.size(), transformed.targets.size());
+        for (int i = 0; i < rotated.targets.size(); i++) {
+            Assertions.assertEquals(
+                    rotated.targets.get(i).getYaw(), transformed.targets.get(i).getYaw(), 1e-9);
+            Assertions.assertEquals(
+                    rotated.targets.get(i).getPitch(), transformed.targets.get(i).getPitch(), 1e-9);
+        }
+        rotated.release();
+        transformed.release();
+    }
+
+    @Test
+    public void undistortedTransformedCoordinates() throws IOException {
+        TestUtils.loadLibraries();
+        var calibrationFile =
+                Path.of(TestUtils.getCalibrationPath().toString(), "lifecam480p.json").toFile();
+        var calibration =
+                new ObjectMapper().readValue(calibrationFile, CameraCalibrationCoefficients.class);
+        var path = TestUtils.getWPIImagePath(TestUtils.WPI2019Image.kCargoStraightDark72in_HighRes);
+
+        var rotations =
+                List.of(
+                        ImageRotationMode.DEG_0,
+                        ImageRotationMode.DEG_90,
+                        ImageRotationMode.DEG_180,
+                        ImageRotationMode.DEG_270);
+        var results = new ArrayList<CVPipelineResult>();
+        for (var rotation : rotations) {
+            var pipeline = new ReflectivePipeline();
+            var settings = pipeline.getSettings();
+            settings.hsvHue.set(60, 100);
+            settings.hsvSaturation.set(100, 255);
+            settings.hsvValue.set(190, 255);
+            settings.inputImageRotationMode = rotation;
+            settings.inputImageTransformCoordinates = true;
+            settings.cameraCalibration = calibration;
+            settings.undistortTargetPoints = true;
+            var frameProvider = new FileFrameProvider(path, TestUtils.WPI2019Image.FOV);
+            results.add(pipeline.run(frameProvider.get()));
+        }
+
+        // the lens is undistorted where it was calibrated, in the native image, so rotating only
+        // swaps and negates the angles
+        var upright = results.get(0).targets;
+        Assertions.assertFalse(upright.isEmpty());
+        for (int r = 1; r < rotations.size(); r++) {
+            var rotation = rotations.get(r);
+            var rotated = results.get(r).targets;
+            Assertions.assertEquals(upright.size(), rotated.size(), rotation.name());
+            for (int i = 0; i < upright.size(); i++) {
+                double yaw = upright.get(i).getYaw();
+                double pitch = upright.get(i).getPitch();
+                double expectedYaw, expectedPitch;
+                switch (rotation) {
+                    case DEG_90: // clockwise, so what was above the center is now right of it
+                        expectedYaw = pitch;
+                        expectedPitch = -yaw;
+                        break;
+                    case DEG_180:
+                        expectedYaw = -yaw;
+                        expectedPitch = -pitch;
+                        break;
+                    default:
+                        expectedYaw = -pitch;
+                        expectedPitch = yaw;
+                        break;
+                }
+                Assertions.assertEquals(
+                        expectedYaw, rotated.get(i).getYaw(), 1e-3, rotation.name());
+                Assertions.assertEquals(
+                        expectedPitch, rotated.get(i).getPitch(), 1e-3, rotation.name());
+            }
+        }
+        results.forEach(CVPipelineResult::release);
+    }
+
+    @Test
+    public void downscaledOutput() {
+        TestUtils.loadLibraries();
+        var pipeline = new ReflectivePipeline();
+        pipeline.getSettings().hsvHue.set(60, 100);
+        pipeline.getSettings().hsvSaturation.set(100, 255);
+        pipeline.getSettings().hsvValue.set(190, 255);
+        pipeline.getSettings().outputShowThresholded = true;
+        pipeline.getSettings().contourGroupingMode = ContourGroupingMode.Dual;
+        pipeline.getSettings().contourIntersection = ContourIntersectionDirection.Up;
+        pipeline.getSettings().outputFrameDivisor = FrameDivisor.HALF;
+
+        var frameProvider =
+                new FileFrameProvider(
+                        TestUtils.getWPIImagePath(TestUtils.WPI2019Image.kCargoStraightDark72in_HighRes),
+                        TestUtils.WPI2019Image.FOV);
+        var input = frameProvider.get();
+        int inputWidth = input.image.getMat().cols();
+        int inputHeight = input.image.getMat().rows();
+
+        CVPipelineResult pipelineResult = pipeline.run(input);
+        printTestResults(pipelineResult);
+
+        // targets are still found at full resolution, only the stream is smaller
+        Assertions.assertEquals(2, pipelineResult.targets.size(), "Target count wrong!");
+        var output = pipelineResult.outputFrame;
+        Assertions.assertEquals(inputWidth / 2, output.image.getMat().cols());
+        Assertions.assertEquals(inputHeight / 2, output.image.getMat().rows());
+        Assertions.assertEquals(inputWidth / 2, output.frameStaticProperties.imageWidth);
+
+        TestUtils.showImage(output.image.getMat(), "Pipeline output");
+        pipelineResult.release();
+    }
+
     @Test
     public void test2020() {
         TestUtils.loadLibraries();
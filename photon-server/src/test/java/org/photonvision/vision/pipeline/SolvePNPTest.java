@@ -18,6 +18,7 @@ import org.photonvision.vision.frame.provider.FileFrameProvider;
 import org.photonvision.vision.opencv.CVMat;
 import org.photonvision.vision.opencv.ContourGroupingMode;
 import org.photonvision.vision.opencv.ContourIntersectionDirection;
+import org.photonvision.vision.pipe.impl.SolvePNPPipe;
 import org.photonvision.vision.target.TargetModel;
 import org.photonvision.vision.target.TrackedTarget;
 
@@ -145,6 +146,57 @@ public class SolvePNPTest {
         TestUtils.showImage(pipelineResult.outputFrame.image.getMat(), "Pipeline output", 999999);
     }
 
+    private ReflectivePipeline pipeline2020(SolvePNPPipe.SolveMethod solveMethod) {
+        var pipeline = new ReflectivePipeline();
+        pipeline.getSettings().hsvHue.set(60, 100);
+        pipeline.getSettings().hsvSaturation.set(100, 255);
+        pipeline.getSettings().hsvValue.set(60, 255);
+        pipeline.getSettings().solvePNPEnabled = true;
+        pipeline.getSettings().cornerDetectionAccuracyPercentage = 4;
+        pipeline.getSettings().cornerDetectionUseConvexHulls = true;
+        pipeline.getSettings().cameraCalibration = getCoeffs(LIFECAM_480P_CAL_FILE);
+        pipeline.getSettings().targetModel = TargetModel.get2020Target(36);
+        pipeline.getSettings().solvePNPMethod = solveMethod;
+        return pipeline;
+    }
+
+    @Test
+    public void warmStarted2020() {
+        var pipeline = pipeline2020(SolvePNPPipe.SolveMethod.WARM_STARTED);
+        var frameProvider =
+                new FileFrameProvider(
+                        TestUtils.getWPIImagePath(TestUtils.WPI2020Image.kBlueGoal_224in_Left),
+                        TestUtils.WPI2020Image.FOV);
+
+        // nothing to start from on the first frame
+        var first = pipeline.run(frameProvider.get()).targets.get(0);
+        assertEquals(SolvePNPPipe.SolveMethod.ITERATIVE, first.getPoseSolveMethod());
+
+        var second = pipeline.run(frameProvider.get()).targets.get(0);
+        assertEquals(SolvePNPPipe.SolveMethod.WARM_STARTED, second.getPoseSolveMethod());
+        var pose = second.getRobotRelativePose();
+        Assertions.assertEquals(260.26, pose.getTranslation().getX(), 0.05);
+        Assertions.assertEquals(64.26, pose.getTranslation().getY(), 0.05);
+        Assertions.assertEquals(36.88, pose.getRotation().getDegrees(), 0.05);
+    }
+
+    @Test
+    public void ippe2020() {
+        var pipeline = pipeline2020(SolvePNPPipe.SolveMethod.IPPE);
+        var frameProvider =
+                new FileFrameProvider(
+                        TestUtils.getWPIImagePath(TestUtils.WPI2020Image.kBlueGoal_224in_Left),
+                        TestUtils.WPI2020Image.FOV);
+
+        var target = pipeline.run(frameProvider.get()).targets.get(0);
+        assertEquals(SolvePNPPipe.SolveMethod.IPPE, target.getPoseSolveMethod());
+        // IPPE solves the planar case directly rather than iterating, so only about the same pose
+        var pose = target.getRobotRelativePose();
+        Assertions.assertEquals(260.26, pose.getTranslation().getX(), 2);
+        Assertions.assertEquals(64.26, pose.getTranslation().getY(), 2);
+        Assertions.assertEquals(36.88, pose.getRotation().getDegrees(), 2);
+    }
+
     //    @Test
     //    public void junk() {
     //        var frameProvider =
@@ -0,0 +1,35 @@
+package org.photonvision.vision.processes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.photonvision.common.configuration.StreamDivisor;
+
+public class OutputSchedulerTest {
+    private static int countEmitted(OutputScheduler scheduler, double cameraFps, int frames) {
+        long frameNanos = (long) (1e9 / cameraFps);
+        int emitted = 0;
+        for (int i = 0; i < frames; i++) {
+            if (scheduler.shouldEmit(i * frameNanos)) emitted++;
+        }
+        return emitted;
+    }
+
+    @Test
+    public void streamsEveryNthFrame() {
+        var scheduler = new OutputScheduler();
+        scheduler.setStreamDivisor(StreamDivisor.QUARTER);
+
+        assertEquals(25, countEmitted(scheduler, 90, 100));
+    }
+
+    @Test
+    public void capsStreamRate() {
+        var scheduler = new OutputScheduler();
+        scheduler.setMaxFps(15);
+
+        // ten seconds of 90 fps processing
+        int emitted = countEmitted(scheduler, 90, 900);
+        assertEquals(150, emitted, 1);
+    }
+}
@@ -0,0 +1,155 @@
+package org.photonvision.vision.processes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.photonvision.common.util.TestUtils;
+import org.photonvision.vision.frame.Frame;
+import org.photonvision.vision.frame.FrameProvider;
+import org.photonvision.vision.frame.FrameStaticProperties;
+import org.photonvision.vision.opencv.CVMat;
+import org.photonvision.vision.pipeline.CVPipeline;
+import org.photonvision.vision.pipeline.CVPipelineResult;
+import org.photonvision.vision.pipeline.CVPipelineSettings;
+
+public class PipelinedVisionRunnerTest {
+    private static final FrameStaticProperties props = new FrameStaticProperties(1, 1, 70);
+
+    /** Frames of one pixel holding their sequence number, which is also their timestamp. */
+    private static class CountingFrameProvider implements FrameProvider {
+        private final CVMat image = new CVMat(new Mat(1, 1, CvType.CV_32S));
+        private final AtomicLong latest = new AtomicLong();
+
+        @Override
+        public String getName() {
+            return "PipelinedVisionRunnerTest";
+        }
+
+        @Override
+        public Frame get() {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long sequence = latest.incrementAndGet();
+            image.getMat().put(0, 0, new int[] {(int) sequence});
+            return new Frame(image, sequence, props);
+        }
+    }
+
+    /** Slower than the camera, and checks nobody writes to its frame while it works on it. */
+    private static class SlowPipeline extends CVPipeline<CVPipelineResult, CVPipelineSettings> {
+        private final CountingFrameProvider provider;
+        private final ConcurrentLinkedQueue<Long> processed = new ConcurrentLinkedQueue<>();
+        // how many frames newer than the one being processed had already been captured
+        private final AtomicLong maxStaleness = new AtomicLong();
+        private final AtomicLong overwritten = new AtomicLong();
+
+        SlowPipeline(CountingFrameProvider provider) {
+            this.provider = provider;
+            this.settings = new CVPipelineSettings();
+        }
+
+        @Override
+        protected void setPipeParams(
+                FrameStaticProperties frameStaticProperties, CVPipelineSettings settings) {}
+
+        @Override
+        protected CVPipelineResult process(
+                Frame frame, CVPipelineSettings settings, boolean produceOutput) {
+            long staleness = provider.latest.get() - frame.timestampNanos;
+            maxStaleness.accumulateAndGet(staleness, Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int[] pixel = new int[1];
+            frame.image.getMat().get(0, 0, pixel);
+            if (pixel[0] != frame.timestampNanos) overwritten.incrementAndGet();
+            processed.add(frame.timestampNanos);
+            return new CVPipelineResult(0, List.of(), null);
+        }
+    }
+
+    @BeforeEach
+    public void Init() {
+        TestUtils.loadLibraries();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean(), "timed out");
+    }
+
+    @Test
+    public void dropsOldestFramesAndRecyclesTheirMats() throws InterruptedException {
+        var provider = new CountingFrameProvider();
+        var pipeline = new SlowPipeline(provider);
+        var results = new AtomicLong();
+        var runner =
+                new PipelinedVisionRunner(
+                        provider,
+                        () -> pipeline,
+                        result -> results.incrementAndGet(),
+                        () -> true,
+                        2);
+        var captureStats = runner.getStageStats().get(0);
+
+        runner.startProcess();
+        // far more frames than there are pooled Mats, so dropped Mats must have been reused
+        waitFor(() -> results.get() >= 20);
+        runner.stopProcess();
+
+        assertTrue(captureStats.getDroppedCount() > 0);
+        long previous = 0;
+        for (long sequence : pipeline.processed) {
+            assertTrue(sequence > previous, "frame " + sequence + " processed after " + previous);
+            previous = sequence;
+        }
+        // the camera is ~20x faster, so keeping the oldest frames would put them ~20 frames behind
+        assertTrue(pipeline.maxStaleness.get() < 10, "staleness " + pipeline.maxStaleness.get());
+    }
+
+    @Test
+    public void pooledMatsAreOnlyHeldByOneStage() throws InterruptedException {
+        var provider = new CountingFrameProvider();
+        var pipeline = new SlowPipeline(provider);
+        var runner =
+                new PipelinedVisionRunner(provider, () -> pipeline, result -> {}, () -> true, 1);
+
+        runner.startProcess();
+        waitFor(() -> pipeline.processed.size() >= 20);
+        runner.stopProcess();
+
+        // capture never copied into the Mat the pipeline was working on
+        assertEquals(0, pipeline.overwritten.get());
+    }
+
+    @Test
+    public void stopProcessStopsEveryStage() throws InterruptedException {
+        var provider = new CountingFrameProvider();
+        var pipeline = new SlowPipeline(provider);
+        var runner = new PipelinedVisionRunner(provider, () -> pipeline, result -> {});
+
+        runner.startProcess();
+        waitFor(() -> pipeline.processed.size() >= 2);
+        assertTrue(runner.isRunning());
+
+        runner.stopProcess();
+        assertFalse(runner.isRunning());
+    }
+}